@@ -0,0 +1,94 @@
+package wildme.org.ratelimiter.controller;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import wildme.org.ratelimiter.RateLimiterApplication;
+import wildme.org.ratelimiter.controller.request.LoginAttemptRequest;
+import wildme.org.ratelimiter.controller.response.LoginAttemptDecision;
+
+// Decisions per second and per-decision latency of the POST endpoint, one exchange per login, against the NDJSON
+// stream endpoint, STREAM_SIZE logins per exchange. The in-memory storage keeps the service cost out of the comparison.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Threads(8)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class LoginEndpointBenchmark {
+
+    private static final int STREAM_SIZE = 1000;
+    private static final int KEYS = 100_000;
+
+    private ConfigurableApplicationContext context;
+    private WebClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(RateLimiterApplication.class)
+                .properties(Map.of(
+                        "server.port", 0,
+                        "spring.r2dbc.url", "r2dbc:h2:mem:///benchmark?options=DB_CLOSE_DELAY=-1",
+                        "spring.flyway.url", "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "rate-limiter.retention.enabled", false,
+                        "rate-limiter.storage", "in-memory"))
+                .run();
+        var port = ((ReactiveWebServerApplicationContext) context).getWebServer().getPort();
+        client = WebClient.create("http://localhost:" + port + "/rate-limiter");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Integer post() {
+        return client.post()
+                .uri("/login")
+                .bodyValue(randomAttempt())
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode().value()))
+                .block();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(STREAM_SIZE)
+    public List<LoginAttemptDecision> stream() {
+        return client.post()
+                .uri("/login/stream")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .body(Flux.range(0, STREAM_SIZE).map(i -> randomAttempt()), LoginAttemptRequest.class)
+                .retrieve()
+                .bodyToFlux(LoginAttemptDecision.class)
+                .collectList()
+                .block();
+    }
+
+    private static LoginAttemptRequest randomAttempt() {
+        var key = ThreadLocalRandom.current().nextInt(KEYS);
+        return new LoginAttemptRequest("ip-" + key, "cookie-" + key, "user-" + key);
+    }
+}
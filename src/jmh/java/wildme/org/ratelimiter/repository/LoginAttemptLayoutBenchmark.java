@@ -0,0 +1,231 @@
+package wildme.org.ratelimiter.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import wildme.org.ratelimiter.RateLimiterApplication;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.rule.DimensionPlan;
+import wildme.org.ratelimiter.rule.KeyEncoding;
+import wildme.org.ratelimiter.rule.KeyField;
+import wildme.org.ratelimiter.rule.RuleDimension;
+import wildme.org.ratelimiter.service.RateLimiterPolicyHolder;
+import wildme.org.ratelimiter.time.TimeSource;
+
+// Insert and ip check latency of the single LOGIN_ATTEMPT table against the hourly ring, and of the raw against the
+// hashed key encoding, all holding the same history spread over the last 22 hours. The disk space of the tables and
+// their indexes is printed once the history is written, the raw encoding giving the size before the hashed keys and
+// the hashed one the size after, without the raw columns and their indexes. The history is written once per layout,
+// encoding and size into a file database under build/jmh and reused by the next runs; 100M rows take several GB and a
+// long first setup.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class LoginAttemptLayoutBenchmark {
+
+    private static final int HISTORY_HOURS = 22;
+
+    @Param({"single", "hourly"})
+    private String layout;
+
+    @Param({"raw", "hashed"})
+    private String encoding;
+
+    @Param({"100000000"})
+    private long rows;
+
+    @Param({"100000"})
+    private int keys;
+
+    private ConfigurableApplicationContext context;
+    private LoginAttemptRepository repository;
+    private DimensionPlan ipPlan;
+    private TimeSource timeSource;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        var database = "./build/jmh/login-attempt-" + layout + "-" + encoding + "-" + rows;
+        context = new SpringApplicationBuilder(RateLimiterApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(properties(database))
+                .run();
+        repository = context.getBean(LoginAttemptRepository.class);
+        timeSource = context.getBean(TimeSource.class);
+        ipPlan = context.getBean(RateLimiterPolicyHolder.class).current().plan().getDimensions().stream()
+                .filter(dimension -> dimension.getDimension().equals(RuleDimension.parse("ip")))
+                .findFirst()
+                .orElseThrow();
+        writeHistory("jdbc:h2:file:" + database);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public LoginAttempt insert() {
+        return repository.insert(LoginAttempt.builder()
+                        .ip(randomIp())
+                        .username("user-" + ThreadLocalRandom.current().nextInt(keys) + "@example.org")
+                        .createdAt(timeSource.toLocalDateTime(timeSource.currentTimeMillis()))
+                        .build())
+                .block();
+    }
+
+    @Benchmark
+    public long[] check() {
+        return repository.countWindows(ipPlan, List.of(randomIp()), timeSource.currentTimeMillis()).block();
+    }
+
+    private String randomIp() {
+        return ip(ThreadLocalRandom.current().nextInt(keys));
+    }
+
+    private static String ip(int index) {
+        return "10." + (index >>> 16 & 0xff) + "." + (index >>> 8 & 0xff) + "." + (index & 0xff);
+    }
+
+    // The keys are encoded once into BENCHMARK_KEY, then one INSERT ... SELECT per past hour copies them into the
+    // table the layout stores that hour in.
+    private void writeHistory(String url) throws SQLException {
+        var tables = context.getBean(LoginAttemptTables.class);
+        var keyEncoding = context.getBean(KeyEncoding.class);
+        var hourStart = timeSource.toLocalDateTime(timeSource.currentTimeMillis()).truncatedTo(ChronoUnit.HOURS);
+        var history = tables.tablesBetween(hourStart.minusHours(HISTORY_HOURS), hourStart);
+        try (var connection = DriverManager.getConnection(url, "sa", "")) {
+            if (count(connection, history) < rows) {
+                writeKeys(connection, keyEncoding);
+                var perHour = rows / HISTORY_HOURS;
+                for (int hour = 1; hour <= HISTORY_HOURS; hour++) {
+                    var start = hourStart.minusHours(hour);
+                    try (var insert = connection.prepareStatement("INSERT INTO " + tables.tableFor(start) + " ("
+                            + keyEncoding.column(KeyField.IP) + ", " + keyEncoding.column(KeyField.COOKIE_ID) + ", "
+                            + keyEncoding.column(KeyField.USERNAME) + ", created_at)"
+                            + " SELECT i.ip, c.cookie_id, u.username, DATEADD(MILLISECOND, MOD(X * 7919, 3600000), ?)"
+                            + " FROM SYSTEM_RANGE(1, ?) JOIN BENCHMARK_KEY i ON i.id = MOD(X, ?)"
+                            + " JOIN BENCHMARK_KEY c ON c.id = MOD(X * 17, ?)"
+                            + " JOIN BENCHMARK_KEY u ON u.id = MOD(X * 31, ?)")) {
+                        insert.setObject(1, start);
+                        insert.setLong(2, perHour);
+                        insert.setInt(3, keys);
+                        insert.setInt(4, keys);
+                        insert.setInt(5, keys);
+                        insert.executeUpdate();
+                    }
+                }
+            }
+            var bytes = 0L;
+            for (var table : history) {
+                try (var statement = connection.prepareStatement("SELECT DISK_SPACE_USED(?)")) {
+                    statement.setString(1, table);
+                    try (var result = statement.executeQuery()) {
+                        result.next();
+                        bytes += result.getLong(1);
+                    }
+                }
+            }
+            System.out.printf("%n%s layout, %s keys: %,d bytes of tables and indexes for %,d rows, %.1f bytes "
+                    + "per row, key indexes on %s%n", layout, encoding, bytes, rows, (double) bytes / rows,
+                    keyIndexColumns(connection, history.get(0)));
+        }
+    }
+
+    // The leading column of each key index, which tells the raw ones from the hashed ones: the raw encoding keeps
+    // the text indexes of V1_0_0, the hashed one drops them for those of V1_0_3.
+    private static List<String> keyIndexColumns(Connection connection, String table) throws SQLException {
+        try (var statement = connection.prepareStatement("SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.INDEX_COLUMNS"
+                + " WHERE TABLE_NAME = ? AND ORDINAL_POSITION = 1 AND COLUMN_NAME NOT IN ('ID', 'CREATED_AT')"
+                + " ORDER BY COLUMN_NAME")) {
+            statement.setString(1, table);
+            try (var result = statement.executeQuery()) {
+                var columns = new ArrayList<String>();
+                while (result.next()) {
+                    columns.add(result.getString(1).toLowerCase());
+                }
+                return columns;
+            }
+        }
+    }
+
+    private void writeKeys(Connection connection, KeyEncoding keyEncoding) throws SQLException {
+        var types = "hashed".equals(encoding)
+                ? List.of("varbinary(16)", "bigint", "bigint")
+                : List.of("text", "text", "text");
+        try (var statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS BENCHMARK_KEY");
+            statement.execute("CREATE TABLE BENCHMARK_KEY (id int PRIMARY KEY, ip " + types.get(0) + ", cookie_id "
+                    + types.get(1) + ", username " + types.get(2) + ")");
+        }
+        try (var insert = connection.prepareStatement("INSERT INTO BENCHMARK_KEY VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < keys; i++) {
+                insert.setInt(1, i);
+                insert.setObject(2, keyEncoding.encode(KeyField.IP, ip(i)));
+                // Cookie ids and usernames about as long as real ones, which is what the hashes save on.
+                insert.setObject(3, keyEncoding.encode(KeyField.COOKIE_ID, "cookie-" + UUID.nameUUIDFromBytes(
+                        Integer.toString(i).getBytes(StandardCharsets.UTF_8))));
+                insert.setObject(4, keyEncoding.encode(KeyField.USERNAME, "user-" + i + "@example.org"));
+                insert.addBatch();
+                if (i % 1000 == 999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private static long count(Connection connection, List<String> tables) throws SQLException {
+        var count = 0L;
+        for (var table : tables) {
+            try (var statement = connection.createStatement();
+                    var result = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                result.next();
+                count += result.getLong(1);
+            }
+        }
+        return count;
+    }
+
+    private Map<String, Object> properties(String database) {
+        var properties = new HashMap<String, Object>();
+        properties.put("spring.r2dbc.url", "r2dbc:h2:file:///" + database);
+        properties.put("spring.flyway.url", "jdbc:h2:file:" + database);
+        properties.put("rate-limiter.storage", "database");
+        properties.put("rate-limiter.database.layout", layout);
+        properties.put("rate-limiter.database.key-encoding", encoding);
+        properties.put("rate-limiter.database.key-hash.secret", "benchmark");
+        properties.put("rate-limiter.retention.enabled", false);
+        return properties;
+    }
+}
@@ -0,0 +1,134 @@
+package wildme.org.ratelimiter.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import wildme.org.ratelimiter.RateLimiterApplication;
+
+// Cost of one loginRateLimiter decision for each storage backend, key distribution and thread count. Throughput and
+// SampleTime (which reports p0.99) run back to back; the gc profiler configured in build.gradle adds allocation rates.
+// The services are taken from a real application context, the database one backed by an in-memory H2 over R2DBC.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class LoginRateLimiterBenchmark {
+
+    @Param({"database", "database-combined", "in-memory-sliding-log", "in-memory-bucketed", "in-memory-striped",
+            "in-memory-sketch"})
+    private String backend;
+
+    @Param({"HOT_KEY", "UNIFORM", "ZIPFIAN"})
+    private KeyWorkload workload;
+
+    @Param({"100000"})
+    private int keys;
+
+    private ConfigurableApplicationContext context;
+    private IRateLimiterService service;
+    private String[] ips;
+    private String[] cookieIds;
+    private String[] usernames;
+    private double[] cumulativeWeights;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(RateLimiterApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(properties(backend))
+                .run();
+        service = context.getBean(IRateLimiterService.class);
+
+        ips = new String[keys];
+        cookieIds = new String[keys];
+        usernames = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            ips[i] = "10." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff);
+            cookieIds[i] = "cookie-" + i;
+            usernames[i] = "user-" + i;
+        }
+        if (workload == KeyWorkload.ZIPFIAN) {
+            cumulativeWeights = KeyWorkload.zipfianCumulativeWeights(keys);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Boolean oneThread() {
+        return loginRateLimiter();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Boolean fourThreads() {
+        return loginRateLimiter();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Boolean sixteenThreads() {
+        return loginRateLimiter();
+    }
+
+    private Boolean loginRateLimiter() {
+        var index = workload.nextIndex(cumulativeWeights, keys);
+        return service.loginRateLimiter(ips[index], cookieIds[index], usernames[index]).block();
+    }
+
+    private static Map<String, Object> properties(String backend) {
+        var properties = new HashMap<String, Object>();
+        properties.put("spring.r2dbc.url", "r2dbc:h2:mem:///benchmark?options=DB_CLOSE_DELAY=-1");
+        properties.put("spring.flyway.url", "jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+        properties.put("rate-limiter.retention.enabled", false);
+        switch (backend) {
+            case "database" -> properties.put("rate-limiter.storage", "database");
+            case "database-combined" -> {
+                properties.put("rate-limiter.storage", "database");
+                properties.put("rate-limiter.database.query-mode", "combined");
+            }
+            case "in-memory-sliding-log" -> {
+                properties.put("rate-limiter.storage", "in-memory");
+                properties.put("rate-limiter.in-memory.algorithm", "sliding-log");
+            }
+            case "in-memory-bucketed" -> {
+                properties.put("rate-limiter.storage", "in-memory");
+                properties.put("rate-limiter.in-memory.algorithm", "bucketed");
+            }
+            case "in-memory-striped" -> {
+                properties.put("rate-limiter.storage", "in-memory");
+                properties.put("rate-limiter.in-memory.algorithm", "bucketed");
+                properties.put("rate-limiter.in-memory.key-store", "striped");
+            }
+            case "in-memory-sketch" -> {
+                properties.put("rate-limiter.storage", "in-memory");
+                properties.put("rate-limiter.in-memory.sketch.enabled", true);
+            }
+            default -> throw new IllegalArgumentException("Unknown backend " + backend);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,96 @@
+package wildme.org.ratelimiter.window;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares the striped primitive store with a per-key deque of LocalDateTime, the shape LoginAttempt rows have in
+// memory. The footprint of each store is printed once its keys are populated.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class KeyStoreBenchmark {
+
+    @Param({"1000000", "10000000"})
+    private int keys;
+
+    @Param({"striped", "concurrent-map-deque"})
+    private String store;
+
+    private String[] keyNames;
+    private boolean striped;
+    private StripedWindowCounter stripedCounter;
+    private ConcurrentHashMap<String, Deque<LocalDateTime>> deques;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keyNames = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            keyNames[i] = "user-" + i;
+        }
+        striped = "striped".equals(store);
+
+        var before = usedMemory();
+        if (striped) {
+            stripedCounter = new StripedWindowCounter(Duration.ofHours(1), 12, keys, 256);
+        } else {
+            deques = new ConcurrentHashMap<>();
+        }
+        for (var key : keyNames) {
+            incrementAndCount(key);
+        }
+        var footprint = usedMemory() - before;
+        System.out.printf("%n%s footprint with %,d keys: %,d bytes, %.1f bytes per key%n",
+                store, keys, footprint, (double) footprint / keys);
+    }
+
+    @Benchmark
+    public int incrementAndCount() {
+        return incrementAndCount(keyNames[ThreadLocalRandom.current().nextInt(keys)]);
+    }
+
+    private int incrementAndCount(String key) {
+        if (striped) {
+            return stripedCounter.incrementAndCount(key, System.currentTimeMillis(), Integer.MAX_VALUE);
+        }
+        var now = LocalDateTime.now();
+        var windowStart = now.minusHours(1);
+        var deque = deques.computeIfAbsent(key, k -> new ArrayDeque<>());
+        synchronized (deque) {
+            deque.addLast(now);
+            while (!deque.peekFirst().isAfter(windowStart)) {
+                deque.pollFirst();
+            }
+            return deque.size();
+        }
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        var runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
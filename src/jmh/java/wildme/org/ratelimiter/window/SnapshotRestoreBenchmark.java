@@ -0,0 +1,80 @@
+package wildme.org.ratelimiter.window;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import wildme.org.ratelimiter.snapshot.WindowCounterSnapshots;
+import wildme.org.ratelimiter.time.MonotonicTimeSource;
+
+// Time to a warm start: restoring a snapshot of a one hour window with every key seen once, into a new counter.
+// The snapshot size is printed once it is written.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SnapshotRestoreBenchmark {
+
+    @Param({"1000000"})
+    private int keys;
+
+    @Param({"striped", "concurrent-map"})
+    private String store;
+
+    private Path directory;
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("snapshot-benchmark");
+        path = directory.resolve("in-memory-snapshot.bin");
+        var counter = newCounter();
+        var now = System.currentTimeMillis();
+        for (int i = 0; i < keys; i++) {
+            counter.incrementAndCount("user-" + i, now, Integer.MAX_VALUE);
+        }
+        var snapshots = new WindowCounterSnapshots(path, Duration.ofMinutes(1),
+                new MonotonicTimeSource(Clock.systemUTC()));
+        snapshots.register(Map.of("ip-last-hour", (Snapshottable) counter));
+        snapshots.write();
+        System.out.printf("%n%s snapshot with %,d keys: %,d bytes%n", store, keys, Files.size(path));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public KeyedWindowCounter restore() {
+        var counter = newCounter();
+        new WindowCounterSnapshots(path, Duration.ofMinutes(1), new MonotonicTimeSource(Clock.systemUTC()))
+                .register(Map.of("ip-last-hour", (Snapshottable) counter));
+        return counter;
+    }
+
+    private KeyedWindowCounter newCounter() {
+        return "striped".equals(store)
+                ? new StripedWindowCounter(Duration.ofHours(1), 12, keys, 256)
+                : new ConcurrentMapWindowCounter(Duration.ofHours(1), SlidingWindowAlgorithm.BUCKETED, 12);
+    }
+}
@@ -0,0 +1,24 @@
+package wildme.org.ratelimiter.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// How the attempts are spaced at a given mean rate. The schedule never waits for responses: an open model, like
+// real clients that keep arriving however slow the service gets.
+enum ArrivalProcess {
+
+    CONSTANT {
+        @Override
+        long nextIntervalNanos(double meanIntervalNanos) {
+            return Math.round(meanIntervalNanos);
+        }
+    },
+    // Exponentially distributed gaps, so bursts and lulls of independent clients.
+    POISSON {
+        @Override
+        long nextIntervalNanos(double meanIntervalNanos) {
+            return Math.round(-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanIntervalNanos);
+        }
+    };
+
+    abstract long nextIntervalNanos(double meanIntervalNanos);
+}
@@ -0,0 +1,38 @@
+package wildme.org.ratelimiter.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+// How the normal users are drawn from the key space, like the KeyWorkload of the benchmarks.
+enum KeyDistribution {
+
+    UNIFORM {
+        @Override
+        int nextIndex(double[] cumulativeWeights, int keys) {
+            return ThreadLocalRandom.current().nextInt(keys);
+        }
+    },
+    // Rank k is drawn with probability proportional to 1 / k^0.99, the skew YCSB uses for its zipfian workloads.
+    ZIPFIAN {
+        @Override
+        int nextIndex(double[] cumulativeWeights, int keys) {
+            var target = ThreadLocalRandom.current().nextDouble() * cumulativeWeights[keys - 1];
+            var index = Arrays.binarySearch(cumulativeWeights, target);
+            return index >= 0 ? index : Math.min(-index - 1, keys - 1);
+        }
+    };
+
+    private static final double ZIPFIAN_EXPONENT = 0.99;
+
+    abstract int nextIndex(double[] cumulativeWeights, int keys);
+
+    static double[] zipfianCumulativeWeights(int keys) {
+        var cumulativeWeights = new double[keys];
+        var sum = 0.0;
+        for (int rank = 1; rank <= keys; rank++) {
+            sum += 1 / Math.pow(rank, ZIPFIAN_EXPONENT);
+            cumulativeWeights[rank - 1] = sum;
+        }
+        return cumulativeWeights;
+    }
+}
@@ -0,0 +1,181 @@
+package wildme.org.ratelimiter.loadtest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import wildme.org.ratelimiter.loadtest.LoadTestReport.Interval;
+import wildme.org.ratelimiter.loadtest.LoadTestReport.Latency;
+import wildme.org.ratelimiter.loadtest.LoadTestReport.Outcome;
+import wildme.org.ratelimiter.loadtest.TrafficMix.TrafficClass;
+
+// Sends every attempt at its scheduled instant from a single thread and never waits for the responses, which are
+// recorded as they complete. Attempts past max-in-flight are shed rather than delayed, so the arrival rate holds; a
+// shed attempt counts as a failed request at the drain timeout, so an overloaded service shows up in the percentiles.
+@Slf4j
+final class LoadGenerator {
+
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(30);
+    private static final long SHED_LATENCY_MICROS = DRAIN_TIMEOUT.toNanos() / 1000;
+    private static final int FAILED = -1;
+
+    private final WebClient client;
+    private final LoadTestSettings settings;
+    private final TrafficMix mix;
+    private final Map<TrafficClass, Recorder> recorders = new EnumMap<>(TrafficClass.class);
+    private final Map<TrafficClass, Histogram> latencies = new EnumMap<>(TrafficClass.class);
+    private final Map<TrafficClass, Counts> counts = new EnumMap<>(TrafficClass.class);
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final List<Interval> intervals = new ArrayList<>();
+
+    LoadGenerator(WebClient client, LoadTestSettings settings) {
+        this.client = client;
+        this.settings = settings;
+        this.mix = new TrafficMix(settings);
+        for (var trafficClass : TrafficClass.values()) {
+            recorders.put(trafficClass, new Recorder(3));
+            latencies.put(trafficClass, new Histogram(3));
+            counts.put(trafficClass, new Counts());
+        }
+    }
+
+    // Attempts scheduled during the warmup are sent but never recorded.
+    LoadTestReport run(String storage, boolean hybrid, List<String> rules) {
+        var startedAt = Instant.now();
+        var meanIntervalNanos = TimeUnit.SECONDS.toNanos(1) / (double) settings.rate();
+        var reportIntervalNanos = settings.reportInterval().toNanos();
+        var start = System.nanoTime();
+        var measureFrom = start + settings.warmup().toNanos();
+        var end = measureFrom + settings.duration().toNanos();
+        var nextReport = measureFrom + reportIntervalNanos;
+        var scheduled = start;
+        while (scheduled < end) {
+            var now = System.nanoTime();
+            if (now >= nextReport) {
+                recordInterval(nextReport - measureFrom);
+                nextReport += reportIntervalNanos;
+            }
+            if (scheduled > now) {
+                LockSupport.parkNanos(Math.min(scheduled, nextReport) - now);
+                continue;
+            }
+            send(scheduled, scheduled >= measureFrom);
+            scheduled += settings.arrival().nextIntervalNanos(meanIntervalNanos);
+        }
+        var measuredSeconds = (System.nanoTime() - measureFrom) / 1e9;
+        var drainUntil = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < drainUntil) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        recordInterval(System.nanoTime() - measureFrom);
+
+        var outcomes = new LinkedHashMap<String, Outcome>();
+        var all = new Counts();
+        var allLatencies = new Histogram(3);
+        for (var trafficClass : TrafficClass.values()) {
+            outcomes.put(trafficClass.name().toLowerCase(), counts.get(trafficClass)
+                    .outcome(latencies.get(trafficClass)));
+            all.add(counts.get(trafficClass));
+            allLatencies.add(latencies.get(trafficClass));
+        }
+        outcomes.put("all", all.outcome(allLatencies));
+        return new LoadTestReport(startedAt.toString(), storage, hybrid, rules, settings, measuredSeconds,
+                sent.sum() / measuredSeconds, shed.sum(), inFlight.get(), outcomes, List.copyOf(intervals));
+    }
+
+    private void send(long scheduledNanos, boolean measured) {
+        var trafficClass = mix.nextClass();
+        if (inFlight.incrementAndGet() > settings.maxInFlight()) {
+            inFlight.decrementAndGet();
+            if (measured) {
+                shed.increment();
+                recorders.get(trafficClass).recordValue(SHED_LATENCY_MICROS);
+                counts.get(trafficClass).shed.increment();
+            }
+            return;
+        }
+        if (measured) {
+            sent.increment();
+        }
+        client.post()
+                .uri("/login")
+                .bodyValue(mix.nextAttempt(trafficClass))
+                .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode().value()))
+                .subscribe(status -> complete(trafficClass, scheduledNanos, measured, status),
+                        e -> complete(trafficClass, scheduledNanos, measured, FAILED));
+    }
+
+    private void complete(TrafficClass trafficClass, long scheduledNanos, boolean measured, int status) {
+        inFlight.decrementAndGet();
+        if (measured) {
+            recorders.get(trafficClass).recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduledNanos));
+            counts.get(trafficClass).record(status);
+        }
+    }
+
+    private void recordInterval(long elapsedNanos) {
+        var interval = new Histogram(3);
+        for (var trafficClass : TrafficClass.values()) {
+            var histogram = recorders.get(trafficClass).getIntervalHistogram();
+            latencies.get(trafficClass).add(histogram);
+            interval.add(histogram);
+        }
+        var latency = Latency.of(interval);
+        intervals.add(new Interval(elapsedNanos / 1e9, interval.getTotalCount(), latency));
+        log.info("{}s: {} attempts, p50 {}us, p99 {}us, max {}us, {} in flight", elapsedNanos / 1_000_000_000,
+                interval.getTotalCount(), latency.p50(), latency.p99(), latency.max(), inFlight.get());
+    }
+
+    private static final class Counts {
+
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder limited = new LongAdder();
+        private final LongAdder otherStatus = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder shed = new LongAdder();
+
+        void record(int status) {
+            if (status == HttpStatus.OK.value()) {
+                allowed.increment();
+            } else if (status == HttpStatus.TOO_MANY_REQUESTS.value()) {
+                limited.increment();
+            } else if (status == FAILED) {
+                errors.increment();
+            } else {
+                otherStatus.increment();
+            }
+        }
+
+        void add(Counts other) {
+            allowed.add(other.allowed.sum());
+            limited.add(other.limited.sum());
+            otherStatus.add(other.otherStatus.sum());
+            errors.add(other.errors.sum());
+            shed.add(other.shed.sum());
+        }
+
+        Outcome outcome(Histogram latencies) {
+            var requests = allowed.sum() + limited.sum() + otherStatus.sum() + errors.sum() + shed.sum();
+            return new Outcome(requests, allowed.sum(), limited.sum(), otherStatus.sum(), errors.sum(), shed.sum(),
+                    ratio(allowed.sum(), requests), ratio(limited.sum(), requests), Latency.of(latencies));
+        }
+
+        private static double ratio(long count, long requests) {
+            return requests == 0 ? 0 : (double) count / requests;
+        }
+    }
+}
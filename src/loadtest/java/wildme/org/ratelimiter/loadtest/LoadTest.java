@@ -0,0 +1,92 @@
+package wildme.org.ratelimiter.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+import wildme.org.ratelimiter.RateLimiterApplication;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+import wildme.org.ratelimiter.service.RateLimiterPolicyHolder;
+
+// Boots the service on a random port and drives /rate-limiter/login with the traffic of the loadtest.* properties,
+// then writes the report to loadtest.report-dir as <storage>-<time>.json. Every --name=value argument, loadtest.* or
+// of the service, replaces the defaults below, so runs differ only by the storage under test.
+@Slf4j
+public class LoadTest {
+
+    private static final Map<String, Object> DEFAULTS = Map.of(
+            "server.port", 0,
+            "spring.r2dbc.url", "r2dbc:h2:mem:///loadtest?options=DB_CLOSE_DELAY=-1",
+            "spring.flyway.url", "jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+            "rate-limiter.retention.enabled", false,
+            "loadtest.report-dir", "build/loadtest");
+
+    public static void main(String[] args) throws IOException {
+        // Command line arguments rank above application.yml, which the defaults have to override as well.
+        var arguments = new LinkedHashMap<>(DEFAULTS);
+        for (var arg : args) {
+            var separator = arg.indexOf('=');
+            if (separator < 0) {
+                arguments.put(arg.substring(2), "");
+            } else {
+                arguments.put(arg.substring(2, separator), arg.substring(separator + 1));
+            }
+        }
+        var context = new SpringApplicationBuilder(RateLimiterApplication.class)
+                .run(arguments.entrySet().stream()
+                        .map(argument -> "--" + argument.getKey() + "=" + argument.getValue())
+                        .toArray(String[]::new));
+        // The client runs on its own event loops, so it does not compete with the server for them.
+        var loops = LoopResources.create("loadtest-client");
+        try {
+            var environment = context.getEnvironment();
+            var settings = LoadTestSettings.from(environment);
+            var port = ((ReactiveWebServerApplicationContext) context).getWebServer().getPort();
+            var connections = ConnectionProvider.builder("loadtest")
+                    .maxConnections(settings.connections())
+                    .pendingAcquireMaxCount(-1)
+                    .build();
+            var client = WebClient.builder()
+                    .baseUrl("http://localhost:" + port + "/rate-limiter")
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections).runOn(loops)))
+                    .build();
+            var storage = environment.getProperty("rate-limiter.storage", "database");
+            var rules = context.getBean(RateLimiterPolicyHolder.class).current().plan().getRules().stream()
+                    .map(RateLimitRule::toString)
+                    .toList();
+            log.info("Load test of the {} storage at {} attempts/s: {} warmup, then {}", storage, settings.rate(),
+                    settings.warmup(), settings.duration());
+
+            var report = new LoadGenerator(client, settings)
+                    .run(storage, environment.getProperty("rate-limiter.hybrid.enabled", Boolean.class, false), rules);
+
+            var reportDir = Path.of(environment.getRequiredProperty("loadtest.report-dir"));
+            Files.createDirectories(reportDir);
+            var reportFile = reportDir.resolve(storage + (report.hybrid() ? "-hybrid-" : "-")
+                    + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".json");
+            context.getBean(ObjectMapper.class).copy()
+                    .enable(SerializationFeature.INDENT_OUTPUT)
+                    .writeValue(reportFile.toFile(), report);
+            var all = report.outcomes().get("all");
+            log.info("{} attempts at {} attempts/s, {} allowed, {} limited, {} errors, {} shed, p99 {}us, report in {}",
+                    all.requests(), Math.round(report.achievedRate()), all.allowed(), all.limited(), all.errors(),
+                    report.shed(), all.latencyMicros().p99(), reportFile);
+        } finally {
+            context.close();
+            loops.dispose();
+        }
+    }
+}
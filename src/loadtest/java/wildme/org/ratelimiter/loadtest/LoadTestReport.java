@@ -0,0 +1,41 @@
+package wildme.org.ratelimiter.loadtest;
+
+import java.util.List;
+import java.util.Map;
+import org.HdrHistogram.Histogram;
+
+// The machine-readable result of a run, written as JSON. Only the attempts scheduled after the warmup are counted.
+// Latencies are in microseconds from the instant an attempt was scheduled, not sent, so a stalled service shows up
+// in the percentiles instead of silently lowering the rate.
+record LoadTestReport(
+        String startedAt,
+        String storage,
+        boolean hybrid,
+        List<String> rules,
+        LoadTestSettings settings,
+        double measuredSeconds,
+        double achievedRate,
+        long shed,
+        long unfinished,
+        Map<String, Outcome> outcomes,
+        List<Interval> intervals) {
+
+    // 200 is allowed and 429 limited; errors are failed exchanges and shed the attempts never sent, past max-in-flight.
+    // Shed attempts are requests too, so they lower the ratios, and their latency is the drain timeout.
+    record Outcome(long requests, long allowed, long limited, long otherStatus, long errors, long shed,
+            double allowedRatio, double limitedRatio, Latency latencyMicros) {
+    }
+
+    record Latency(double mean, long p50, long p90, long p99, long p999, long max) {
+
+        static Latency of(Histogram histogram) {
+            return new Latency(histogram.getMean(), histogram.getValueAtPercentile(50),
+                    histogram.getValueAtPercentile(90), histogram.getValueAtPercentile(99),
+                    histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+        }
+    }
+
+    // All the traffic classes together over one report-interval, to see a long run drift.
+    record Interval(double elapsedSeconds, long requests, Latency latencyMicros) {
+    }
+}
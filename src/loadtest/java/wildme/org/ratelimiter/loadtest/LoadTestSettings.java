@@ -0,0 +1,35 @@
+package wildme.org.ratelimiter.loadtest;
+
+import java.time.Duration;
+import org.springframework.core.env.Environment;
+
+// The loadtest.* properties of a run, all copied into its report.
+record LoadTestSettings(
+        int rate,
+        ArrivalProcess arrival,
+        Duration warmup,
+        Duration duration,
+        Duration reportInterval,
+        int normalKeys,
+        KeyDistribution normalDistribution,
+        double attackFraction,
+        int attackIps,
+        int maxInFlight,
+        int connections) {
+
+    static LoadTestSettings from(Environment environment) {
+        return new LoadTestSettings(
+                environment.getProperty("loadtest.rate", Integer.class, 1000),
+                environment.getProperty("loadtest.arrival", ArrivalProcess.class, ArrivalProcess.POISSON),
+                environment.getProperty("loadtest.warmup", Duration.class, Duration.ofSeconds(10)),
+                environment.getProperty("loadtest.duration", Duration.class, Duration.ofSeconds(60)),
+                environment.getProperty("loadtest.report-interval", Duration.class, Duration.ofSeconds(10)),
+                environment.getProperty("loadtest.normal-keys", Integer.class, 1_000_000),
+                environment.getProperty("loadtest.normal-distribution", KeyDistribution.class,
+                        KeyDistribution.UNIFORM),
+                environment.getProperty("loadtest.attack-fraction", Double.class, 0.2),
+                environment.getProperty("loadtest.attack-ips", Integer.class, 16),
+                environment.getProperty("loadtest.max-in-flight", Integer.class, 10_000),
+                environment.getProperty("loadtest.connections", Integer.class, 512));
+    }
+}
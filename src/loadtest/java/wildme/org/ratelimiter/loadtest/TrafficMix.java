@@ -0,0 +1,47 @@
+package wildme.org.ratelimiter.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import wildme.org.ratelimiter.controller.request.LoginAttemptRequest;
+
+// Normal users log in from their own ip with their own cookie, drawn from normal-keys by the normal distribution.
+// attack-fraction of the attempts come from attack-ips addresses without cookie, each trying a random username of the
+// normal users: credential stuffing, which should be limited without limiting the users it targets.
+final class TrafficMix {
+
+    enum TrafficClass {
+        NORMAL, ATTACK
+    }
+
+    private final LoadTestSettings settings;
+    private final double[] cumulativeWeights;
+
+    TrafficMix(LoadTestSettings settings) {
+        this.settings = settings;
+        this.cumulativeWeights = settings.normalDistribution() == KeyDistribution.ZIPFIAN
+                ? KeyDistribution.zipfianCumulativeWeights(settings.normalKeys())
+                : null;
+    }
+
+    TrafficClass nextClass() {
+        return ThreadLocalRandom.current().nextDouble() < settings.attackFraction()
+                ? TrafficClass.ATTACK
+                : TrafficClass.NORMAL;
+    }
+
+    LoginAttemptRequest nextAttempt(TrafficClass trafficClass) {
+        var random = ThreadLocalRandom.current();
+        if (trafficClass == TrafficClass.ATTACK) {
+            // 198.18.0.0/15 is reserved for benchmarks, so attackers never share an address with a normal user.
+            var attacker = random.nextInt(settings.attackIps());
+            return new LoginAttemptRequest("198.18." + (attacker >>> 8 & 0xff) + "." + (attacker & 0xff), null,
+                    username(random.nextInt(settings.normalKeys())));
+        }
+        var key = settings.normalDistribution().nextIndex(cumulativeWeights, settings.normalKeys());
+        var ip = "10." + (key >>> 16 & 0xff) + "." + (key >>> 8 & 0xff) + "." + (key & 0xff);
+        return new LoginAttemptRequest(ip, "cookie-" + key, username(key));
+    }
+
+    private static String username(int key) {
+        return "user-" + key + "@example.org";
+    }
+}
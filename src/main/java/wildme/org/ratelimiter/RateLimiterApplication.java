@@ -1,26 +1,31 @@
 package wildme.org.ratelimiter;
 
+import java.time.Clock;
 import org.flywaydb.core.Flyway;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.env.Environment;
-import org.springframework.data.r2dbc.config.EnableR2dbcAuditing;
 import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
 
 @SpringBootApplication
 @EnableR2dbcRepositories
-@EnableR2dbcAuditing
 public class RateLimiterApplication {
 
 	public static void main(String[] args) {
 		SpringApplication.run(RateLimiterApplication.class, args);
 	}
 
+	// The hashed key encoding adds its own migrations, out of order when a database is switched to it later.
 	@Bean(initMethod = "migrate")
 	public Flyway flyway(Environment env) {
+		var hashed = "hashed".equals(env.getProperty("rate-limiter.database.key-encoding"));
 		return new Flyway(Flyway.configure()
 				.baselineOnMigrate(true)
+				.locations(hashed
+						? new String[] {"classpath:db/migration", "classpath:db/hashed"}
+						: new String[] {"classpath:db/migration"})
+				.outOfOrder(hashed)
 				.dataSource(
 						env.getRequiredProperty("spring.flyway.url"),
 						env.getRequiredProperty("spring.flyway.user"),
@@ -28,4 +33,9 @@ public class RateLimiterApplication {
 		);
 	}
 
+	@Bean
+	public Clock clock() {
+		return Clock.systemUTC();
+	}
+
 }
@@ -1,23 +1,46 @@
 package wildme.org.ratelimiter.controller;
 
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
-import lombok.RequiredArgsConstructor;
+import jakarta.validation.Validator;
+import java.util.Set;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.controller.request.LoginAttemptBatchRequest;
 import wildme.org.ratelimiter.controller.request.LoginAttemptRequest;
+import wildme.org.ratelimiter.controller.response.LoginAttemptBatchResponse;
+import wildme.org.ratelimiter.controller.response.LoginAttemptDecision;
+import wildme.org.ratelimiter.model.LoginAttempt;
 import wildme.org.ratelimiter.service.IRateLimiterService;
 
-@RequiredArgsConstructor
+@Slf4j
 @RestController
 @RequestMapping("/rate-limiter")
 public class RateLimiterController {
 
     private final IRateLimiterService rateLimiterService;
+    private final Validator validator;
+    private final int streamConcurrency;
+
+    public RateLimiterController(
+            IRateLimiterService rateLimiterService,
+            Validator validator,
+            @Value("${rate-limiter.stream.concurrency:16}")
+                    int streamConcurrency) {
+        this.rateLimiterService = rateLimiterService;
+        this.validator = validator;
+        this.streamConcurrency = streamConcurrency;
+    }
 
     @PostMapping("/login")
     public Mono<ResponseEntity> loginRateLimiter(@Valid @RequestBody LoginAttemptRequest request) {
@@ -26,4 +49,47 @@ public class RateLimiterController {
                         ResponseEntity.ok().build()
                         : ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build());
     }
+
+    @PostMapping("/login/batch")
+    public Mono<LoginAttemptBatchResponse> loginRateLimiterBatch(@Valid @RequestBody LoginAttemptBatchRequest request) {
+        var loginAttempts = request.getAttempts().stream()
+                .map(attempt -> LoginAttempt.builder()
+                        .ip(attempt.getIp())
+                        .cookieId(attempt.getCookieId())
+                        .username(attempt.getUsername())
+                        .build())
+                .toList();
+        return rateLimiterService.loginRateLimiter(loginAttempts)
+                .map(LoginAttemptBatchResponse::new);
+    }
+
+    // One decision per attempt, in order, for as long as the client keeps the request body open. Up to
+    // stream-concurrency attempts are decided at once, like as many concurrent requests; flatMapSequential only
+    // requests more attempts as decisions are written, so backpressure reaches the client connection. An invalid
+    // attempt, or one the service fails on, gets a denied decision with the error, and the stream goes on.
+    @PostMapping(value = "/login/stream",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<LoginAttemptDecision> loginRateLimiterStream(@RequestBody Flux<LoginAttemptRequest> requests) {
+        return requests.flatMapSequential(request -> {
+            var violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                return Mono.just(new LoginAttemptDecision(false, describe(violations)));
+            }
+            return rateLimiterService
+                    .loginRateLimiter(request.getIp(), request.getCookieId(), request.getUsername())
+                    .map(LoginAttemptDecision::new)
+                    .onErrorResume(e -> {
+                        log.warn("Failed to decide on a streamed login attempt", e);
+                        return Mono.just(new LoginAttemptDecision(false, "rate limiter error"));
+                    });
+        }, streamConcurrency);
+    }
+
+    private static String describe(Set<ConstraintViolation<LoginAttemptRequest>> violations) {
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
 }
@@ -0,0 +1,62 @@
+package wildme.org.ratelimiter.controller;
+
+import java.util.List;
+import java.util.Set;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementPortType;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import wildme.org.ratelimiter.controller.response.RateLimiterPolicyResponse;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+import wildme.org.ratelimiter.service.RateLimiterPolicy;
+import wildme.org.ratelimiter.service.RateLimiterPolicyHolder;
+
+// Admin access to the limits, over JMX by default. Anyone who can write to it can switch the limiter off, so it is
+// only ever served over HTTP on a management port of its own, which is meant to be bound to a private address.
+@Component
+@Endpoint(id = "ratelimiterpolicy")
+public class RateLimiterPolicyEndpoint {
+
+    private final RateLimiterPolicyHolder policyHolder;
+
+    public RateLimiterPolicyEndpoint(RateLimiterPolicyHolder policyHolder, Environment environment) {
+        this.policyHolder = policyHolder;
+        var webExposure = Binder.get(environment)
+                .bind("management.endpoints.web.exposure.include", Bindable.setOf(String.class))
+                .orElse(Set.of());
+        if ((webExposure.contains("ratelimiterpolicy") || webExposure.contains("*"))
+                && ManagementPortType.get(environment) == ManagementPortType.SAME) {
+            throw new IllegalStateException("The ratelimiterpolicy endpoint can only be exposed over HTTP on a "
+                    + "management.server.port other than the login API port");
+        }
+    }
+
+    @ReadOperation
+    public RateLimiterPolicyResponse policy() {
+        return response(policyHolder.current());
+    }
+
+    // Replaces the rules with the given ones, or reloads them from the configuration when there are none.
+    @WriteOperation
+    public RateLimiterPolicyResponse update(@Nullable List<String> rules) {
+        try {
+            return response(rules == null
+                    ? policyHolder.reload()
+                    : policyHolder.update(rules.stream().map(RateLimitRule::parse).toList()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidEndpointRequestException(e.getMessage(), e.getMessage());
+        }
+    }
+
+    private static RateLimiterPolicyResponse response(RateLimiterPolicy policy) {
+        return new RateLimiterPolicyResponse(policy.version(), policy.plan().getRules().stream()
+                .map(RateLimitRule::toString)
+                .toList());
+    }
+}
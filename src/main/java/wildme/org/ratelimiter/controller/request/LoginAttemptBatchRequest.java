@@ -0,0 +1,18 @@
+package wildme.org.ratelimiter.controller.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoginAttemptBatchRequest {
+    @NotEmpty
+    @Size(max = 1000)
+    private List<@Valid LoginAttemptRequest> attempts;
+}
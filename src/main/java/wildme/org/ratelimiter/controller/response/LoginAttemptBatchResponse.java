@@ -0,0 +1,14 @@
+package wildme.org.ratelimiter.controller.response;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoginAttemptBatchResponse {
+    // In the order of the request attempts, false for an attempt that is rate limited.
+    private List<Boolean> allowed;
+}
@@ -0,0 +1,20 @@
+package wildme.org.ratelimiter.controller.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LoginAttemptDecision {
+    private boolean allowed;
+    // Set, with allowed false, for an attempt that was not valid and so not checked.
+    private String error;
+
+    public LoginAttemptDecision(boolean allowed) {
+        this(allowed, null);
+    }
+}
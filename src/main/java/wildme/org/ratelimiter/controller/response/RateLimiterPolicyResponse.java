@@ -0,0 +1,15 @@
+package wildme.org.ratelimiter.controller.response;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RateLimiterPolicyResponse {
+    private long version;
+    // dimension/window/limit, like rate-limiter.rules.
+    private List<String> rules;
+}
@@ -0,0 +1,134 @@
+package wildme.org.ratelimiter.denycache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.repository.LoginAttemptRepository;
+import wildme.org.ratelimiter.rule.RuleDimension;
+import wildme.org.ratelimiter.service.RateLimiterPolicy;
+import wildme.org.ratelimiter.time.TimeSource;
+import wildme.org.ratelimiter.writebehind.LoginAttemptWriteBehindQueue;
+
+// Keys known to be over a threshold, each kept until the instant it falls back under it, so their attempts can be
+// denied without a query. Entries expire at that instant; past max-size the least valuable ones are evicted, which
+// only sends those keys back to the database.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "rate-limiter.deny-cache.enabled", havingValue = "true")
+public class BlockedKeyCache {
+
+    private final Cache<BlockedKey, Long> blockedUntil;
+    private final boolean recordAttempts;
+    private final Optional<LoginAttemptWriteBehindQueue> writeBehindQueue;
+    private final LoginAttemptRepository loginAttemptRepository;
+    private final TimeSource timeSource;
+    private final Semaphore pendingInserts;
+    private final Counter droppedAttempts;
+
+    public BlockedKeyCache(
+            @Value("${rate-limiter.deny-cache.max-size:100000}")
+                    long maxSize,
+            @Value("${rate-limiter.deny-cache.record-attempts:true}")
+                    boolean recordAttempts,
+            @Value("${rate-limiter.deny-cache.max-pending-inserts:4}")
+                    int maxPendingInserts,
+            Optional<LoginAttemptWriteBehindQueue> writeBehindQueue,
+            LoginAttemptRepository loginAttemptRepository,
+            TimeSource timeSource,
+            MeterRegistry meterRegistry) {
+        this.recordAttempts = recordAttempts;
+        this.writeBehindQueue = writeBehindQueue;
+        this.loginAttemptRepository = loginAttemptRepository;
+        this.timeSource = timeSource;
+        this.pendingInserts = new Semaphore(maxPendingInserts);
+        this.droppedAttempts = Counter.builder("ratelimiter.deny-cache.dropped")
+                .description("Denied login attempts dropped because too many inserts were pending")
+                .register(meterRegistry);
+        this.blockedUntil = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new UntilExpiry(timeSource))
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(timeSource.currentTimeMillis()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, blockedUntil, "ratelimiter.deny-cache");
+    }
+
+    // Until is in epoch milliseconds.
+    public void block(RuleDimension dimension, List<String> key, long until) {
+        if (until > timeSource.currentTimeMillis()) {
+            blockedUntil.asMap().merge(new BlockedKey(dimension, key), until, Math::max);
+        }
+    }
+
+    public boolean isBlocked(RuleDimension dimension, List<String> key) {
+        return blockedUntil.getIfPresent(new BlockedKey(dimension, key)) != null;
+    }
+
+    // Stores an attempt denied from the cache without waiting for it, through the write-behind queue when enabled.
+    // Without it at most max-pending-inserts are in flight, so an attack denied from the cache can not take the
+    // connection pool from allowed attempts; past that attempts are dropped and counted.
+    public void record(LoginAttempt loginAttempt) {
+        if (!recordAttempts) {
+            return;
+        }
+        writeBehindQueue
+                .map(queue -> queue.enqueue(loginAttempt))
+                .orElseGet(() -> insert(loginAttempt))
+                .subscribe(null, e -> log.warn("Failed to record a login attempt denied from the deny cache", e));
+    }
+
+    private Mono<Void> insert(LoginAttempt loginAttempt) {
+        if (!pendingInserts.tryAcquire()) {
+            droppedAttempts.increment();
+            return Mono.empty();
+        }
+        return loginAttemptRepository.insert(loginAttempt)
+                .doFinally(signal -> pendingInserts.release())
+                .then();
+    }
+
+    // Keys were blocked until they fall back under the previous limits, which may no longer hold.
+    @EventListener
+    public void onPolicyChange(RateLimiterPolicy policy) {
+        blockedUntil.invalidateAll();
+    }
+
+    public long size() {
+        return blockedUntil.estimatedSize();
+    }
+
+    private record BlockedKey(RuleDimension dimension, List<String> key) {
+    }
+
+    private record UntilExpiry(TimeSource timeSource) implements Expiry<BlockedKey, Long> {
+
+        @Override
+        public long expireAfterCreate(BlockedKey key, Long until, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, until - timeSource.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(BlockedKey key, Long until, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, until, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(BlockedKey key, Long until, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
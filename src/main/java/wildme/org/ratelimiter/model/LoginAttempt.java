@@ -7,7 +7,6 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
-import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Table;
 
@@ -22,11 +21,17 @@ public class LoginAttempt {
     @Id
     private UUID id;
 
+    // The raw keys, stored as they are with the raw key encoding. With the hashed one these columns are dropped, the
+    // keys are encoded from them when written and an attempt read back only holds the three below.
     private String ip;
     private String cookieId;
     private String username;
 
-    @CreatedDate
+    private byte[] ipBin;
+    private Long cookieIdHash;
+    private Long usernameHash;
+
+    // Set from the TimeSource by whoever records the attempt, never by auditing, so it matches the windows counted.
     private LocalDateTime createdAt;
 
 }
@@ -0,0 +1,17 @@
+package wildme.org.ratelimiter.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoginAttemptCounts {
+
+    private long ipLastHour;
+    private long ipLastMinute;
+    private long cookieIdLastTenSeconds;
+    private long usernameLastHour;
+
+}
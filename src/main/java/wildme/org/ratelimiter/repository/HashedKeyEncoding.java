@@ -0,0 +1,112 @@
+package wildme.org.ratelimiter.repository;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.regex.Pattern;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import wildme.org.ratelimiter.rule.KeyEncoding;
+import wildme.org.ratelimiter.rule.KeyField;
+
+// Fixed-width keys in place of the raw strings: the ip as its 4 or 16 address bytes in ip_bin, the cookie id and the
+// username as the first 64 bits of their HMAC-SHA256 under rate-limiter.database.key-hash.secret in cookie_id_hash and
+// username_hash. A colliding pair of keys shares its counts, which can only deny earlier, never let an attempt through.
+// An ip that is not an address literal is stored as its 8-byte hash, a length no address has.
+@Component
+@ConditionalOnProperty(name = "rate-limiter.database.key-encoding", havingValue = "hashed")
+public class HashedKeyEncoding implements KeyEncoding {
+
+    private static final String ALGORITHM = "HmacSHA256";
+    // Starting with a hex digit or a colon, InetAddress.getByName parses the value as a literal and throws rather than
+    // resolving it; the scope after % may only be numeric, a name would be looked up among the network interfaces.
+    private static final Pattern IPV6_LITERAL = Pattern.compile("[0-9a-fA-F:][0-9a-fA-F:.]*(%[0-9]+)?");
+
+    private final SecretKeySpec secret;
+    private final ThreadLocal<Mac> macs;
+
+    public HashedKeyEncoding(
+            @Value("${rate-limiter.database.key-hash.secret:}")
+                    String secret) {
+        if (secret.isBlank()) {
+            throw new IllegalStateException("rate-limiter.database.key-hash.secret is needed with the hashed key "
+                    + "encoding");
+        }
+        this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    @Override
+    public String column(KeyField field) {
+        return switch (field) {
+            case IP -> "ip_bin";
+            case COOKIE_ID -> "cookie_id_hash";
+            case USERNAME -> "username_hash";
+        };
+    }
+
+    @Override
+    public Object encode(KeyField field, String value) {
+        if (field != KeyField.IP) {
+            return hash64(value);
+        }
+        var address = addressBytes(value);
+        return address != null ? address : ByteBuffer.allocate(Long.BYTES).putLong(hash64(value)).array();
+    }
+
+    @Override
+    public Class<?> type(KeyField field) {
+        return field == KeyField.IP ? byte[].class : Long.class;
+    }
+
+    long hash64(String value) {
+        var mac = macs.get();
+        return ByteBuffer.wrap(mac.doFinal(value.getBytes(StandardCharsets.UTF_8))).getLong();
+    }
+
+    // Parses address literals only, never a host name, so encoding a key can not trigger a DNS lookup.
+    static byte[] addressBytes(String ip) {
+        if (ip.indexOf(':') >= 0) {
+            if (!IPV6_LITERAL.matcher(ip).matches()) {
+                return null;
+            }
+            try {
+                return InetAddress.getByName(ip).getAddress();
+            } catch (UnknownHostException | SecurityException e) {
+                return null;
+            }
+        }
+        var parts = ip.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        var bytes = new byte[4];
+        for (int i = 0; i < parts.length; i++) {
+            var part = parts[i];
+            if (part.isEmpty() || part.length() > 3 || !part.chars().allMatch(c -> c >= '0' && c <= '9')) {
+                return null;
+            }
+            var octet = Integer.parseInt(part);
+            if (octet > 255) {
+                return null;
+            }
+            bytes[i] = (byte) octet;
+        }
+        return bytes;
+    }
+
+    private Mac newMac() {
+        try {
+            var mac = Mac.getInstance(ALGORITHM);
+            mac.init(secret);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No " + ALGORITHM + " available", e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package wildme.org.ratelimiter.repository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.EvaluationPlanValidator;
+
+// The LOGIN_ATTEMPT_H00..H23 ring of V1_0_2: an attempt goes to the table of the hour of the day it was created in.
+// A window reads only the tables of the hours it spans, and a table is truncated as a whole once all its attempts
+// are older than the retention max-age. The hours of the max-age, the current and the next one are never truncated,
+// and the max-age, like every rule window, is capped so that at least one table of the ring is free to be.
+@Component
+@ConditionalOnProperty(name = "rate-limiter.database.layout", havingValue = "hourly")
+public class HourlyLoginAttemptTables implements LoginAttemptTables, EvaluationPlanValidator {
+
+    static final int HOURS = 24;
+    private static final Duration MAX_RETENTION = Duration.ofHours(HOURS - 3);
+    private static final List<String> TABLES = tableNames();
+
+    public HourlyLoginAttemptTables(
+            @Value("${rate-limiter.retention.max-age:1h}")
+                    Duration maxAge) {
+        if (maxAge.compareTo(MAX_RETENTION) > 0) {
+            throw new IllegalStateException("The hourly layout keeps at most " + MAX_RETENTION.toHours()
+                    + " hours of attempts, rate-limiter.retention.max-age is " + maxAge);
+        }
+    }
+
+    // Retention keeps the widest rule window when it is longer than the max-age, so the same cap applies to it.
+    @Override
+    public void validate(EvaluationPlan plan) {
+        if (plan.widestWindow().compareTo(MAX_RETENTION) > 0) {
+            throw new IllegalArgumentException("The hourly layout keeps at most " + MAX_RETENTION.toHours()
+                    + " hours of attempts, a rule window of " + plan.widestWindow() + " can not be counted");
+        }
+    }
+
+    @Override
+    public String tableFor(LocalDateTime createdAt) {
+        return TABLES.get(createdAt.getHour());
+    }
+
+    // A range longer than the ring reads all of it; attempts older than the max-age are gone anyway.
+    @Override
+    public List<String> tablesBetween(LocalDateTime from, LocalDateTime to) {
+        var tables = new ArrayList<String>(2);
+        var hour = from.truncatedTo(ChronoUnit.HOURS);
+        while (!hour.isAfter(to) && tables.size() < HOURS) {
+            tables.add(tableFor(hour));
+            hour = hour.plusHours(1);
+        }
+        return tables;
+    }
+
+    @Override
+    public List<String> expiredTables(LocalDateTime createdBefore, LocalDateTime now) {
+        var live = tablesBetween(createdBefore, now.plusHours(1));
+        return TABLES.stream()
+                .filter(table -> !live.contains(table))
+                .toList();
+    }
+
+    private static List<String> tableNames() {
+        var names = new ArrayList<String>(HOURS);
+        for (int hour = 0; hour < HOURS; hour++) {
+            names.add(String.format("LOGIN_ATTEMPT_H%02d", hour));
+        }
+        return List.copyOf(names);
+    }
+}
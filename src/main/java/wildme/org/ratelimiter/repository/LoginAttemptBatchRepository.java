@@ -0,0 +1,15 @@
+package wildme.org.ratelimiter.repository;
+
+import java.util.List;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttempt;
+
+public interface LoginAttemptBatchRepository {
+
+    // Stores the attempt in the table of its createdAt, which must be set.
+    Mono<LoginAttempt> insert(LoginAttempt loginAttempt);
+
+    Mono<Long> insertAll(List<LoginAttempt> loginAttempts);
+
+    Mono<Void> truncate(String table);
+}
@@ -0,0 +1,65 @@
+package wildme.org.ratelimiter.repository;
+
+import io.r2dbc.spi.Result;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.rule.KeyEncoding;
+
+@RequiredArgsConstructor
+public class LoginAttemptBatchRepositoryImpl implements LoginAttemptBatchRepository {
+
+    private final DatabaseClient databaseClient;
+    private final LoginAttemptTables tables;
+    private final KeyEncoding encoding;
+    private final Optional<LoginAttemptKeyAudit> keyAudit;
+
+    @Override
+    public Mono<LoginAttempt> insert(LoginAttempt loginAttempt) {
+        return insertAll(tables.tableFor(loginAttempt.getCreatedAt()), List.of(loginAttempt))
+                .thenReturn(loginAttempt);
+    }
+
+    // One multi-row insert per table, a single one unless the batch straddles two hours of the hourly layout.
+    @Override
+    public Mono<Long> insertAll(List<LoginAttempt> loginAttempts) {
+        if (loginAttempts.isEmpty()) {
+            return Mono.just(0L);
+        }
+        var byTable = loginAttempts.stream()
+                .collect(Collectors.groupingBy(loginAttempt -> tables.tableFor(loginAttempt.getCreatedAt()),
+                        LinkedHashMap::new, Collectors.toList()));
+        if (byTable.size() == 1) {
+            var entry = byTable.entrySet().iterator().next();
+            return insertAll(entry.getKey(), entry.getValue());
+        }
+        return Flux.fromIterable(byTable.entrySet())
+                .concatMap(entry -> insertAll(entry.getKey(), entry.getValue()))
+                .reduce(0L, Long::sum);
+    }
+
+    @Override
+    public Mono<Void> truncate(String table) {
+        return databaseClient.sql("TRUNCATE TABLE " + table).then();
+    }
+
+    private Mono<Long> insertAll(String table, List<LoginAttempt> loginAttempts) {
+        return databaseClient.inConnection(connection -> {
+            var statement = connection.createStatement(LoginAttemptStatements.insertSql(table, encoding,
+                    loginAttempts.size()));
+            for (int row = 0; row < loginAttempts.size(); row++) {
+                LoginAttemptStatements.bindAttempt(statement, row * LoginAttemptStatements.COLUMNS, encoding,
+                        loginAttempts.get(row));
+            }
+            return Flux.from(statement.execute())
+                    .flatMap(Result::getRowsUpdated)
+                    .reduce(0L, Long::sum);
+        }).doOnSuccess(inserted -> keyAudit.ifPresent(audit -> audit.record(loginAttempts)));
+    }
+}
@@ -0,0 +1,12 @@
+package wildme.org.ratelimiter.repository;
+
+import java.time.LocalDateTime;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.model.LoginAttemptCounts;
+
+public interface LoginAttemptCountsRepository {
+
+    Mono<LoginAttemptCounts> saveAndCount(LoginAttempt loginAttempt, LocalDateTime ipLastHour,
+            LocalDateTime ipLastMinute, LocalDateTime cookieIdLastTenSeconds, LocalDateTime usernameLastHour);
+}
@@ -0,0 +1,83 @@
+package wildme.org.ratelimiter.repository;
+
+import io.r2dbc.spi.Result;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.model.LoginAttemptCounts;
+import wildme.org.ratelimiter.rule.KeyEncoding;
+import wildme.org.ratelimiter.rule.KeyField;
+
+@RequiredArgsConstructor
+public class LoginAttemptCountsRepositoryImpl implements LoginAttemptCountsRepository {
+
+    // The id of the new attempt is bound after the four key values and window starts.
+    private static final int ID_INDEX = 8;
+
+    private final DatabaseClient databaseClient;
+    private final LoginAttemptTables tables;
+    private final KeyEncoding encoding;
+    private final Optional<LoginAttemptKeyAudit> keyAudit;
+
+    @Override
+    public Mono<LoginAttemptCounts> saveAndCount(LoginAttempt loginAttempt, LocalDateTime ipLastHour,
+            LocalDateTime ipLastMinute, LocalDateTime cookieIdLastTenSeconds, LocalDateTime usernameLastHour) {
+        // The insert and the count are sent on one connection without waiting for the insert, so a check costs a
+        // single connection checkout and about one round trip. The count leaves the new attempt out by its id,
+        // whichever statement the database runs first, and adds it back for each field it has.
+        return databaseClient.inConnection(connection -> {
+            var now = loginAttempt.getCreatedAt();
+            var id = UUID.randomUUID();
+            var insert = connection.createStatement(LoginAttemptStatements.insertWithIdSql(tables.tableFor(now),
+                    encoding));
+            LoginAttemptStatements.bindAttemptWithId(insert, encoding, loginAttempt, id);
+
+            var count = connection.createStatement("SELECT "
+                    + countSql(KeyField.IP, 1, ipLastHour, now) + " AS ip_last_hour, "
+                    + countSql(KeyField.IP, 3, ipLastMinute, now) + " AS ip_last_minute, "
+                    + countSql(KeyField.COOKIE_ID, 5, cookieIdLastTenSeconds, now) + " AS cookie_id_last_ten_seconds, "
+                    + countSql(KeyField.USERNAME, 7, usernameLastHour, now) + " AS username_last_hour");
+            LoginAttemptStatements.bindKey(count, 0, encoding, KeyField.IP, loginAttempt.getIp());
+            count.bind(1, ipLastHour);
+            LoginAttemptStatements.bindKey(count, 2, encoding, KeyField.IP, loginAttempt.getIp());
+            count.bind(3, ipLastMinute);
+            LoginAttemptStatements.bindKey(count, 4, encoding, KeyField.COOKIE_ID, loginAttempt.getCookieId());
+            count.bind(5, cookieIdLastTenSeconds);
+            LoginAttemptStatements.bindKey(count, 6, encoding, KeyField.USERNAME, loginAttempt.getUsername());
+            count.bind(7, usernameLastHour);
+            count.bind(ID_INDEX, id);
+
+            var inserted = Flux.from(insert.execute())
+                    .flatMap(Result::getRowsUpdated)
+                    .reduce(0L, Long::sum);
+            var counted = Flux.from(count.execute())
+                    .flatMap(result -> result.map((row, metadata) -> new LoginAttemptCounts(
+                            row.get("ip_last_hour", Long.class) + added(loginAttempt.getIp()),
+                            row.get("ip_last_minute", Long.class) + added(loginAttempt.getIp()),
+                            row.get("cookie_id_last_ten_seconds", Long.class) + added(loginAttempt.getCookieId()),
+                            row.get("username_last_hour", Long.class) + added(loginAttempt.getUsername()))))
+                    .next();
+            return Mono.zip(inserted, counted, (rows, counts) -> counts);
+        }).doOnSuccess(counts -> keyAudit.ifPresent(audit -> audit.record(loginAttempt)));
+    }
+
+    // Each sub-select is served by the (dimension, created_at) index of its dimension, in each table of the window.
+    private String countSql(KeyField field, int placeholder, LocalDateTime windowStart, LocalDateTime now) {
+        var condition = encoding.column(field) + " = $" + placeholder + " AND created_at > $" + (placeholder + 1)
+                + " AND id <> $" + (ID_INDEX + 1);
+        return tables.tablesBetween(windowStart, now).stream()
+                .map(table -> "(SELECT COUNT(*) FROM " + table + " WHERE " + condition + ")")
+                .collect(Collectors.joining(" + ", "(", ")"));
+    }
+
+    // A missing field matches no row, the new attempt included.
+    private static long added(String value) {
+        return value == null ? 0 : 1;
+    }
+}
@@ -0,0 +1,106 @@
+package wildme.org.ratelimiter.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.rule.KeyEncoding;
+import wildme.org.ratelimiter.rule.KeyField;
+
+// Maps the encoded keys back to their raw values in LOGIN_ATTEMPT_KEY, once per key, for audits of a hashed key
+// encoding. Written after the attempt without being waited for; keys recorded recently are skipped without a query.
+// At most max-pending audits are in flight so they can not take the connection pool from the attempts themselves; past
+// that an audit is dropped and counted, and its keys are audited on their next attempt.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "rate-limiter.database.key-audit.enabled", havingValue = "true")
+public class LoginAttemptKeyAudit {
+
+    private static final String MERGE = "MERGE INTO LOGIN_ATTEMPT_KEY k USING (VALUES (CAST($1 AS VARCHAR(16)), "
+            + "CAST($2 AS VARBINARY(16)), CAST($3 AS VARCHAR), CAST($4 AS TIMESTAMP WITH TIME ZONE))) "
+            + "AS v(key_field, encoded, raw_value, seen_at) ON k.key_field = v.key_field AND k.encoded = v.encoded "
+            + "WHEN NOT MATCHED THEN INSERT (key_field, encoded, raw_value, first_seen_at) "
+            + "VALUES (v.key_field, v.encoded, v.raw_value, v.seen_at)";
+
+    private final DatabaseClient databaseClient;
+    private final KeyEncoding encoding;
+    private final Cache<String, Boolean> recorded;
+    private final Semaphore pendingAudits;
+    private final Counter droppedAudits;
+
+    public LoginAttemptKeyAudit(
+            @Value("${rate-limiter.database.key-audit.recent-keys:100000}")
+                    long recentKeys,
+            @Value("${rate-limiter.database.key-audit.max-pending:2}")
+                    int maxPending,
+            DatabaseClient databaseClient,
+            KeyEncoding encoding,
+            MeterRegistry meterRegistry) {
+        if (!(encoding instanceof HashedKeyEncoding)) {
+            throw new IllegalStateException("The login attempt key audit needs rate-limiter.database.key-encoding: "
+                    + "hashed, raw keys are stored as they are");
+        }
+        this.databaseClient = databaseClient;
+        this.encoding = encoding;
+        this.recorded = Caffeine.newBuilder()
+                .maximumSize(recentKeys)
+                .build();
+        this.pendingAudits = new Semaphore(maxPending);
+        this.droppedAudits = Counter.builder("ratelimiter.key-audit.dropped")
+                .description("Key audits dropped because too many were pending")
+                .register(meterRegistry);
+    }
+
+    public void record(LoginAttempt loginAttempt) {
+        record(List.of(loginAttempt));
+    }
+
+    public void record(List<LoginAttempt> loginAttempts) {
+        if (!pendingAudits.tryAcquire()) {
+            droppedAudits.increment();
+            return;
+        }
+        Flux.fromIterable(loginAttempts)
+                .flatMapIterable(loginAttempt -> List.of(
+                        new AuditedKey(KeyField.IP, loginAttempt.getIp(), loginAttempt.getCreatedAt()),
+                        new AuditedKey(KeyField.COOKIE_ID, loginAttempt.getCookieId(), loginAttempt.getCreatedAt()),
+                        new AuditedKey(KeyField.USERNAME, loginAttempt.getUsername(), loginAttempt.getCreatedAt())))
+                .filter(key -> key.rawValue() != null && recorded.asMap().putIfAbsent(key.cacheKey(), true) == null)
+                .concatMap(key -> databaseClient.sql(MERGE)
+                        .bind(0, key.field().getName())
+                        .bind(1, encodedBytes(key))
+                        .bind(2, key.rawValue())
+                        .bind(3, key.seenAt())
+                        .fetch()
+                        .rowsUpdated()
+                        .doOnError(e -> recorded.invalidate(key.cacheKey())))
+                .doFinally(signal -> pendingAudits.release())
+                .subscribe(null, e -> log.warn("Failed to record login attempt keys for audit", e));
+    }
+
+    // The ip bytes as stored, a hash as its 8 big-endian bytes.
+    private byte[] encodedBytes(AuditedKey key) {
+        var encoded = encoding.encode(key.field(), key.rawValue());
+        return encoded instanceof byte[] bytes
+                ? bytes
+                : ByteBuffer.allocate(Long.BYTES).putLong((Long) encoded).array();
+    }
+
+    private record AuditedKey(KeyField field, String rawValue, LocalDateTime seenAt) {
+
+        String cacheKey() {
+            return field.getName() + ':' + rawValue;
+        }
+    }
+}
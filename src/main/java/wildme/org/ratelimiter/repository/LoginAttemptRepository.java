@@ -2,15 +2,19 @@ package wildme.org.ratelimiter.repository;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.r2dbc.repository.R2dbcRepository;
 import org.springframework.stereotype.Repository;
-import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import wildme.org.ratelimiter.model.LoginAttempt;
 
 @Repository
-public interface LoginAttemptRepository extends R2dbcRepository<LoginAttempt, UUID> {
+public interface LoginAttemptRepository extends R2dbcRepository<LoginAttempt, UUID>, LoginAttemptCountsRepository,
+        LoginAttemptBatchRepository, LoginAttemptRuleRepository {
 
-    Flux<LoginAttempt> findAllByIpAndCreatedAtAfter(String ip, LocalDateTime localDateTime);
-    Flux<LoginAttempt> findAllByCookieIdAndCreatedAtAfter(String cookieId, LocalDateTime localDateTime);
-    Flux<LoginAttempt> findAllByUsernameAndCreatedAtAfter(String username, LocalDateTime localDateTime);
+    @Modifying
+    @Query("DELETE FROM LOGIN_ATTEMPT WHERE id IN "
+            + "(SELECT id FROM LOGIN_ATTEMPT WHERE created_at < :createdBefore LIMIT :batchSize)")
+    Mono<Integer> deleteBatchCreatedBefore(LocalDateTime createdBefore, int batchSize);
 }
@@ -0,0 +1,19 @@
+package wildme.org.ratelimiter.repository;
+
+import java.util.List;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.rule.DimensionPlan;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+
+public interface LoginAttemptRuleRepository {
+
+    // Attempts of the key in each window of the dimension plan, in its window order.
+    Mono<long[]> countWindows(DimensionPlan plan, List<String> key, long nowMillis);
+
+    // Saves the attempt, then counts every dimension of the plan, in its dimension order, for the attempt keys.
+    Mono<List<long[]>> saveAndCountWindows(LoginAttempt loginAttempt, EvaluationPlan plan);
+
+    // created_at of the (offset + 1)-th newest attempt of the key, in epoch milliseconds.
+    Mono<Long> findNthNewestCreatedAt(DimensionPlan plan, List<String> key, int offset);
+}
@@ -0,0 +1,129 @@
+package wildme.org.ratelimiter.repository;
+
+import io.r2dbc.spi.Readable;
+import io.r2dbc.spi.Result;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import lombok.RequiredArgsConstructor;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.rule.DimensionPlan;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.KeyEncoding;
+import wildme.org.ratelimiter.time.TimeSource;
+
+@RequiredArgsConstructor
+public class LoginAttemptRuleRepositoryImpl implements LoginAttemptRuleRepository {
+
+    private final DatabaseClient databaseClient;
+    private final LoginAttemptTables tables;
+    private final KeyEncoding encoding;
+    private final Optional<LoginAttemptKeyAudit> keyAudit;
+    private final TimeSource timeSource;
+
+    @Override
+    public Mono<long[]> countWindows(DimensionPlan plan, List<String> key, long nowMillis) {
+        var spec = databaseClient.sql(plan.getCountSql(tablesWithin(plan, nowMillis), encoding));
+        var fields = plan.getDimension().fields();
+        var index = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            spec = spec.bind(index++, encoding.encode(fields.get(i), key.get(i)));
+        }
+        for (var windowStart : plan.windowStarts(nowMillis)) {
+            spec = spec.bind(index++, timeSource.toLocalDateTime(windowStart));
+        }
+        return spec.map(row -> counts(row, plan, "c")).one();
+    }
+
+    @Override
+    public Mono<List<long[]>> saveAndCountWindows(LoginAttempt loginAttempt, EvaluationPlan plan) {
+        // Both statements sent without waiting for the insert, the new attempt left out by its id and added back,
+        // like saveAndCount.
+        return databaseClient.inConnection(connection -> {
+            var createdAt = loginAttempt.getCreatedAt();
+            var nowMillis = timeSource.toEpochMillis(createdAt);
+            var id = UUID.randomUUID();
+            var insert = connection.createStatement(LoginAttemptStatements.insertWithIdSql(tables.tableFor(createdAt),
+                    encoding));
+            LoginAttemptStatements.bindAttemptWithId(insert, encoding, loginAttempt, id);
+
+            var count = connection.createStatement(plan.getCombinedCountSql(plan.getDimensions().stream()
+                    .map(dimension -> tablesWithin(dimension, nowMillis))
+                    .toList(), encoding));
+            var index = 0;
+            for (var dimension : plan.getDimensions()) {
+                // A dimension with a missing field matches no row, so it counts zero.
+                for (var field : dimension.getDimension().fields()) {
+                    LoginAttemptStatements.bindKey(count, index++, encoding, field, field.value(loginAttempt.getIp(),
+                            loginAttempt.getCookieId(), loginAttempt.getUsername()));
+                }
+                for (var windowStart : dimension.windowStarts(nowMillis)) {
+                    count.bind(index++, timeSource.toLocalDateTime(windowStart));
+                }
+            }
+
+            count.bind(index, id);
+
+            var inserted = Flux.from(insert.execute())
+                    .flatMap(Result::getRowsUpdated)
+                    .reduce(0L, Long::sum);
+            var counted = Flux.from(count.execute())
+                    .flatMap(result -> result.map(row -> {
+                        var counts = new ArrayList<long[]>(plan.getDimensions().size());
+                        for (int i = 0; i < plan.getDimensions().size(); i++) {
+                            var dimension = plan.getDimensions().get(i);
+                            counts.add(withAttempt(counts(row, dimension, "d" + i + "_"), dimension, loginAttempt));
+                        }
+                        return (List<long[]>) counts;
+                    }))
+                    .next();
+            return Mono.zip(inserted, counted, (rows, counts) -> counts);
+        }).doOnSuccess(counts -> keyAudit.ifPresent(audit -> audit.record(loginAttempt)));
+    }
+
+    @Override
+    public Mono<Long> findNthNewestCreatedAt(DimensionPlan plan, List<String> key, int offset) {
+        // Attempts older than the widest window no longer block the key, so only its tables are read.
+        var spec = databaseClient.sql(plan.getNthNewestCreatedAtSql(tablesWithin(plan, timeSource.currentTimeMillis()),
+                encoding));
+        var fields = plan.getDimension().fields();
+        var index = 0;
+        for (int i = 0; i < fields.size(); i++) {
+            spec = spec.bind(index++, encoding.encode(fields.get(i), key.get(i)));
+        }
+        return spec.bind(index, offset)
+                .map(row -> timeSource.toEpochMillis(row.get("created_at", LocalDateTime.class)))
+                .one();
+    }
+
+    private List<String> tablesWithin(DimensionPlan plan, long nowMillis) {
+        return tables.tablesBetween(timeSource.toLocalDateTime(nowMillis - plan.widestWindow().toMillis()),
+                timeSource.toLocalDateTime(nowMillis));
+    }
+
+    private static long[] counts(Readable row, DimensionPlan plan, String aliasPrefix) {
+        var counts = new long[plan.windowCount()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = row.get(aliasPrefix + i, Long.class);
+        }
+        return counts;
+    }
+
+    // The new attempt counts in every window of a dimension whose fields it all has; a missing one matches no row.
+    private static long[] withAttempt(long[] counts, DimensionPlan plan, LoginAttempt loginAttempt) {
+        for (var field : plan.getDimension().fields()) {
+            if (field.value(loginAttempt.getIp(), loginAttempt.getCookieId(), loginAttempt.getUsername()) == null) {
+                return counts;
+            }
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,63 @@
+package wildme.org.ratelimiter.repository;
+
+import io.r2dbc.spi.Statement;
+import java.util.UUID;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.rule.KeyEncoding;
+import wildme.org.ratelimiter.rule.KeyField;
+
+// The insert shared by the repository fragments, with the key columns and values of the encoding.
+final class LoginAttemptStatements {
+
+    static final int COLUMNS = 4;
+
+    private LoginAttemptStatements() {
+    }
+
+    static String insertSql(String table, KeyEncoding encoding, int rows) {
+        var sql = new StringBuilder("INSERT INTO ").append(table)
+                .append(" (").append(encoding.column(KeyField.IP))
+                .append(", ").append(encoding.column(KeyField.COOKIE_ID))
+                .append(", ").append(encoding.column(KeyField.USERNAME))
+                .append(", created_at) VALUES ");
+        for (int row = 0; row < rows; row++) {
+            var first = row * COLUMNS + 1;
+            sql.append(row == 0 ? "" : ", ")
+                    .append("($").append(first)
+                    .append(", $").append(first + 1)
+                    .append(", $").append(first + 2)
+                    .append(", $").append(first + 3)
+                    .append(')');
+        }
+        return sql.toString();
+    }
+
+    // One attempt with its id, so that a count sent along with the insert can leave it out.
+    static String insertWithIdSql(String table, KeyEncoding encoding) {
+        return "INSERT INTO " + table + " (" + encoding.column(KeyField.IP)
+                + ", " + encoding.column(KeyField.COOKIE_ID)
+                + ", " + encoding.column(KeyField.USERNAME)
+                + ", created_at, id) VALUES ($1, $2, $3, $4, $5)";
+    }
+
+    static void bindAttemptWithId(Statement statement, KeyEncoding encoding, LoginAttempt loginAttempt, UUID id) {
+        bindAttempt(statement, 0, encoding, loginAttempt);
+        statement.bind(COLUMNS, id);
+    }
+
+    static void bindAttempt(Statement statement, int first, KeyEncoding encoding, LoginAttempt loginAttempt) {
+        bindKey(statement, first, encoding, KeyField.IP, loginAttempt.getIp());
+        bindKey(statement, first + 1, encoding, KeyField.COOKIE_ID, loginAttempt.getCookieId());
+        bindKey(statement, first + 2, encoding, KeyField.USERNAME, loginAttempt.getUsername());
+        statement.bind(first + 3, loginAttempt.getCreatedAt());
+    }
+
+    // A missing field binds NULL, which matches no row.
+    static void bindKey(Statement statement, int index, KeyEncoding encoding, KeyField field, String value) {
+        if (value == null) {
+            statement.bindNull(index, encoding.type(field));
+        } else {
+            statement.bind(index, encoding.encode(field, value));
+        }
+    }
+}
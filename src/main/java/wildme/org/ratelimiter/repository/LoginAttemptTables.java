@@ -0,0 +1,17 @@
+package wildme.org.ratelimiter.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Where login attempts are stored, selected with rate-limiter.database.layout.
+public interface LoginAttemptTables {
+
+    String tableFor(LocalDateTime createdAt);
+
+    // Every table that may hold attempts created between from and to, oldest first.
+    List<String> tablesBetween(LocalDateTime from, LocalDateTime to);
+
+    // Tables holding nothing created at or after createdBefore, which can be emptied at once. Always empty when the
+    // layout has a single table, whose rows are deleted instead.
+    List<String> expiredTables(LocalDateTime createdBefore, LocalDateTime now);
+}
@@ -0,0 +1,10 @@
+package wildme.org.ratelimiter.repository;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import wildme.org.ratelimiter.rule.KeyEncoding;
+
+@Component
+@ConditionalOnProperty(name = "rate-limiter.database.key-encoding", havingValue = "raw", matchIfMissing = true)
+public class RawKeyEncoding implements KeyEncoding {
+}
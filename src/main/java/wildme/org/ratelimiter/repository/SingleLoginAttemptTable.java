@@ -0,0 +1,29 @@
+package wildme.org.ratelimiter.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "rate-limiter.database.layout", havingValue = "single", matchIfMissing = true)
+public class SingleLoginAttemptTable implements LoginAttemptTables {
+
+    static final String TABLE = "LOGIN_ATTEMPT";
+    private static final List<String> TABLES = List.of(TABLE);
+
+    @Override
+    public String tableFor(LocalDateTime createdAt) {
+        return TABLE;
+    }
+
+    @Override
+    public List<String> tablesBetween(LocalDateTime from, LocalDateTime to) {
+        return TABLES;
+    }
+
+    @Override
+    public List<String> expiredTables(LocalDateTime createdBefore, LocalDateTime now) {
+        return List.of();
+    }
+}
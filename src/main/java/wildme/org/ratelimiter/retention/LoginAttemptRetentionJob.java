@@ -0,0 +1,136 @@
+package wildme.org.ratelimiter.retention;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.repository.LoginAttemptRepository;
+import wildme.org.ratelimiter.repository.LoginAttemptTables;
+import wildme.org.ratelimiter.service.RateLimiterPolicyHolder;
+import wildme.org.ratelimiter.time.TimeSource;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "rate-limiter.retention.enabled", havingValue = "true", matchIfMissing = true)
+public class LoginAttemptRetentionJob {
+
+    private final Duration maxAge;
+    private final Duration interval;
+    private final int batchSize;
+    private final LoginAttemptRepository loginAttemptRepository;
+    private final LoginAttemptTables tables;
+    private final RateLimiterPolicyHolder policyHolder;
+    private final TimeSource timeSource;
+    private final Counter purgedRows;
+    private final Counter truncatedTables;
+    private final Timer purgeDuration;
+    // Expired tables already emptied, so they are not truncated again every run until they come back into use.
+    private final Set<String> truncated = ConcurrentHashMap.newKeySet();
+    private Disposable schedule;
+
+    public LoginAttemptRetentionJob(
+            @Value("${rate-limiter.retention.max-age:1h}")
+                    Duration maxAge,
+            @Value("${rate-limiter.retention.interval:1m}")
+                    Duration interval,
+            @Value("${rate-limiter.retention.batch-size:1000}")
+                    int batchSize,
+            LoginAttemptRepository loginAttemptRepository,
+            LoginAttemptTables tables,
+            RateLimiterPolicyHolder policyHolder,
+            TimeSource timeSource,
+            MeterRegistry meterRegistry) {
+        this.maxAge = maxAge;
+        this.interval = interval;
+        this.batchSize = batchSize;
+        this.loginAttemptRepository = loginAttemptRepository;
+        this.tables = tables;
+        this.policyHolder = policyHolder;
+        this.timeSource = timeSource;
+        this.purgedRows = Counter.builder("ratelimiter.retention.purged.rows")
+                .description("Login attempts deleted by the retention job")
+                .register(meterRegistry);
+        this.truncatedTables = Counter.builder("ratelimiter.retention.truncated.tables")
+                .description("Expired login attempt tables truncated by the retention job")
+                .register(meterRegistry);
+        this.purgeDuration = Timer.builder("ratelimiter.retention.purge")
+                .description("Duration of a retention job run")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        schedule = Flux.interval(interval, interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> purge()
+                        .onErrorResume(e -> {
+                            log.warn("Login attempt retention run failed", e);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+    }
+
+    public Mono<Long> purge() {
+        return Mono.defer(() -> {
+            var sample = Timer.start();
+            var now = timeSource.toLocalDateTime(timeSource.currentTimeMillis());
+            var createdBefore = now.minus(retention());
+            var expired = tables.expiredTables(createdBefore, now);
+            if (!expired.isEmpty()) {
+                return truncate(expired)
+                        .doFinally(signal -> sample.stop(purgeDuration));
+            }
+            // Small batches keep each delete short so it never holds locks long against the insert path.
+            return deleteBatch(createdBefore)
+                    .expand(deleted -> deleted < batchSize ? Mono.empty() : deleteBatch(createdBefore))
+                    .reduce(0L, Long::sum)
+                    .doOnNext(purgedRows::increment)
+                    .doFinally(signal -> sample.stop(purgeDuration));
+        });
+    }
+
+    // Never shorter than the widest window of the current policy, which a reload may have widened, so no rule ever
+    // counts attempts that were already purged.
+    private Duration retention() {
+        var widestWindow = policyHolder.current().plan().widestWindow();
+        return widestWindow.compareTo(maxAge) > 0 ? widestWindow : maxAge;
+    }
+
+    // A truncate costs the same whatever the number of rows and leaves no index to clean up, unlike deletes. The
+    // rows it drops are not counted, so a run of the hourly layout reports 0 rows.
+    private Mono<Long> truncate(List<String> expired) {
+        truncated.retainAll(expired);
+        return Flux.fromIterable(expired)
+                .filter(table -> !truncated.contains(table))
+                .concatMap(table -> loginAttemptRepository.truncate(table)
+                        .doOnSuccess(done -> {
+                            truncated.add(table);
+                            truncatedTables.increment();
+                        }))
+                .then(Mono.just(0L));
+    }
+
+    private Mono<Long> deleteBatch(LocalDateTime createdBefore) {
+        return loginAttemptRepository.deleteBatchCreatedBefore(createdBefore, batchSize).map(Integer::longValue);
+    }
+}
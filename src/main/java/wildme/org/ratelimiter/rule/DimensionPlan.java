@@ -0,0 +1,139 @@
+package wildme.org.ratelimiter.rule;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Every rule of one dimension, evaluated from a single query that counts all of their windows at once. Windows are
+// kept widest first, with the strictest limit when several rules share one.
+public class DimensionPlan {
+
+    static final List<String> LOGIN_ATTEMPT = List.of("LOGIN_ATTEMPT");
+
+    private final RuleDimension dimension;
+    private final Duration[] windows;
+    private final int[] limits;
+    // Keyed by the tables read, a few hour spans at most with the hourly layout, and the key encoding.
+    private final Map<SqlKey, String> countSql = new ConcurrentHashMap<>();
+    private final Map<SqlKey, String> nthNewestCreatedAtSql = new ConcurrentHashMap<>();
+
+    DimensionPlan(RuleDimension dimension, List<RateLimitRule> rules) {
+        this.dimension = dimension;
+        var windowLimits = rules.stream()
+                .collect(Collectors.toMap(RateLimitRule::window, RateLimitRule::limit, Math::min));
+        this.windows = windowLimits.keySet().stream()
+                .sorted((a, b) -> b.compareTo(a))
+                .toArray(Duration[]::new);
+        this.limits = new int[windows.length];
+        for (int i = 0; i < windows.length; i++) {
+            limits[i] = windowLimits.get(windows[i]);
+        }
+    }
+
+    public RuleDimension getDimension() {
+        return dimension;
+    }
+
+    public int windowCount() {
+        return windows.length;
+    }
+
+    public Duration getWindow(int index) {
+        return windows[index];
+    }
+
+    public int getLimit(int index) {
+        return limits[index];
+    }
+
+    public Duration widestWindow() {
+        return windows[0];
+    }
+
+    // One count per window, in window order; the key values are bound from $1, then the window starts.
+    public String getCountSql() {
+        return getCountSql(LOGIN_ATTEMPT, KeyEncoding.RAW);
+    }
+
+    // Same placeholders, counting the attempts of all the given tables with the key columns of the encoding.
+    public String getCountSql(List<String> tables, KeyEncoding encoding) {
+        return countSql.computeIfAbsent(new SqlKey(tables, encoding),
+                key -> countSql(1, "c", key.tables(), key.encoding(), 0));
+    }
+
+    // created_at of the (offset + 1)-th newest attempt of a key, the offset bound after the key values.
+    public String getNthNewestCreatedAtSql() {
+        return getNthNewestCreatedAtSql(LOGIN_ATTEMPT, KeyEncoding.RAW);
+    }
+
+    public String getNthNewestCreatedAtSql(List<String> tables, KeyEncoding encoding) {
+        return nthNewestCreatedAtSql.computeIfAbsent(new SqlKey(tables, encoding), key -> "SELECT created_at FROM "
+                + from(key.tables(), "created_at", keyCondition(1, key.encoding()))
+                + " ORDER BY created_at DESC LIMIT 1 OFFSET $" + (dimension.fields().size() + 1));
+    }
+
+    public int placeholderCount() {
+        return dimension.fields().size() + windows.length;
+    }
+
+    // In epoch milliseconds, converted to created_at values only when bound.
+    public long[] windowStarts(long nowMillis) {
+        var starts = new long[windows.length];
+        for (int i = 0; i < windows.length; i++) {
+            starts[i] = nowMillis - windows[i].toMillis();
+        }
+        return starts;
+    }
+
+    // Counts include the attempt being checked, so a limit is exceeded once a count goes over it.
+    public boolean allows(long[] counts) {
+        for (int i = 0; i < limits.length; i++) {
+            if (counts[i] > limits[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Rows with the id bound at excludedIdPlaceholder are left out of the counts, unless it is 0.
+    String countSql(int firstPlaceholder, String aliasPrefix, List<String> tables, KeyEncoding encoding,
+            int excludedIdPlaceholder) {
+        var windowPlaceholder = firstPlaceholder + dimension.fields().size();
+        var idCondition = excludedIdPlaceholder == 0 ? "" : " AND id <> $" + excludedIdPlaceholder;
+        var sql = new StringBuilder("SELECT COUNT(*) AS ").append(aliasPrefix).append(0);
+        for (int i = 1; i < windows.length; i++) {
+            sql.append(", COUNT(*) FILTER (WHERE created_at > $").append(windowPlaceholder + i).append(") AS ")
+                    .append(aliasPrefix).append(i);
+        }
+        // The widest window bounds the range scan on the (field, created_at) index of the first field, in each table.
+        return sql.append(" FROM ").append(from(tables, "created_at",
+                        keyCondition(firstPlaceholder, encoding) + " AND created_at > $" + windowPlaceholder
+                                + idCondition))
+                .toString();
+    }
+
+    // The condition is applied inside each table of a union, so each one is still read through its own index.
+    private static String from(List<String> tables, String columns, String condition) {
+        if (tables.size() == 1) {
+            return tables.get(0) + " WHERE " + condition;
+        }
+        return tables.stream()
+                .map(table -> "SELECT " + columns + " FROM " + table + " WHERE " + condition)
+                .collect(Collectors.joining(" UNION ALL ", "(", ") a"));
+    }
+
+    private String keyCondition(int firstPlaceholder, KeyEncoding encoding) {
+        var condition = new StringBuilder();
+        var fields = dimension.fields();
+        for (int i = 0; i < fields.size(); i++) {
+            condition.append(i == 0 ? "" : " AND ").append(encoding.column(fields.get(i))).append(" = $")
+                    .append(firstPlaceholder + i);
+        }
+        return condition.toString();
+    }
+
+    private record SqlKey(List<String> tables, KeyEncoding encoding) {
+    }
+}
@@ -0,0 +1,97 @@
+package wildme.org.ratelimiter.rule;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// The rules compiled into one plan: a DimensionPlan per distinct dimension, ordered cheapest first by their widest
+// window (then in configuration order), and the statement that counts every dimension in a single round trip.
+public class EvaluationPlan {
+
+    public static final int NO_LIMIT = Integer.MAX_VALUE;
+
+    private final List<RateLimitRule> rules;
+    private final List<DimensionPlan> dimensions;
+    private final Map<CombinedSqlKey, String> combinedCountSql = new ConcurrentHashMap<>();
+
+    private EvaluationPlan(List<RateLimitRule> rules, List<DimensionPlan> dimensions) {
+        this.rules = List.copyOf(rules);
+        this.dimensions = List.copyOf(dimensions);
+    }
+
+    public static EvaluationPlan compile(List<RateLimitRule> rules) {
+        if (rules.isEmpty()) {
+            throw new IllegalArgumentException("At least one rate limiter rule is needed");
+        }
+        var byDimension = rules.stream()
+                .collect(Collectors.groupingBy(RateLimitRule::dimension, LinkedHashMap::new, Collectors.toList()));
+        var dimensions = byDimension.entrySet().stream()
+                .map(entry -> new DimensionPlan(entry.getKey(), entry.getValue()))
+                // A stable sort, so dimensions with the same widest window keep the configuration order.
+                .sorted(Comparator.comparing(DimensionPlan::widestWindow))
+                .toList();
+        return new EvaluationPlan(rules, dimensions);
+    }
+
+    public List<RateLimitRule> getRules() {
+        return rules;
+    }
+
+    public List<DimensionPlan> getDimensions() {
+        return dimensions;
+    }
+
+    // The widest window of all the rules, so how long attempts must be kept to count them.
+    public Duration widestWindow() {
+        return dimensions.get(dimensions.size() - 1).widestWindow();
+    }
+
+    // The limit of the rule on that dimension and window, NO_LIMIT when there is none.
+    public int limitOf(RuleDimension dimension, Duration window) {
+        for (var dimensionPlan : dimensions) {
+            if (dimensionPlan.getDimension().equals(dimension)) {
+                for (int i = 0; i < dimensionPlan.windowCount(); i++) {
+                    if (dimensionPlan.getWindow(i).equals(window)) {
+                        return dimensionPlan.getLimit(i);
+                    }
+                }
+            }
+        }
+        return NO_LIMIT;
+    }
+
+    // Every dimension's counts as columns d<dimension>_c<window> of one row, placeholders numbered dimension after
+    // dimension like in DimensionPlan.getCountSql(). The id of an attempt being saved along with the count is bound
+    // last and left out, so the counts are the same whether the insert runs before or after them.
+    public String getCombinedCountSql() {
+        return getCombinedCountSql(Collections.nCopies(dimensions.size(), DimensionPlan.LOGIN_ATTEMPT),
+                KeyEncoding.RAW);
+    }
+
+    // Each dimension counting the tables at the same index.
+    public String getCombinedCountSql(List<List<String>> tables, KeyEncoding encoding) {
+        return combinedCountSql.computeIfAbsent(new CombinedSqlKey(tables, encoding), key -> {
+            var sql = new StringBuilder("SELECT * FROM ");
+            var placeholder = 1;
+            var idPlaceholder = dimensions.stream().mapToInt(DimensionPlan::placeholderCount).sum() + 1;
+            for (int i = 0; i < dimensions.size(); i++) {
+                var dimension = dimensions.get(i);
+                sql.append(i == 0 ? "" : " CROSS JOIN ")
+                        .append('(')
+                        .append(dimension.countSql(placeholder, "d" + i + "_", key.tables().get(i), key.encoding(),
+                                idPlaceholder))
+                        .append(") d").append(i);
+                placeholder += dimension.placeholderCount();
+            }
+            return sql.toString();
+        });
+    }
+
+    private record CombinedSqlKey(List<List<String>> tables, KeyEncoding encoding) {
+    }
+}
@@ -0,0 +1,8 @@
+package wildme.org.ratelimiter.rule;
+
+// Checks a compiled plan against what the storage can count before it becomes the policy, at startup and on every
+// reload. Throws IllegalArgumentException like an invalid rule, so a rejected reload keeps the current policy.
+public interface EvaluationPlanValidator {
+
+    void validate(EvaluationPlan plan);
+}
@@ -0,0 +1,23 @@
+package wildme.org.ratelimiter.rule;
+
+// How the key fields are stored: the column of each field and the value bound for it, selected with
+// rate-limiter.database.key-encoding.
+public interface KeyEncoding {
+
+    // The raw strings in the ip, cookie_id and username columns.
+    KeyEncoding RAW = new KeyEncoding() {
+    };
+
+    default String column(KeyField field) {
+        return field.getColumn();
+    }
+
+    default Object encode(KeyField field, String value) {
+        return value;
+    }
+
+    // The type of a NULL bound for a missing field.
+    default Class<?> type(KeyField field) {
+        return String.class;
+    }
+}
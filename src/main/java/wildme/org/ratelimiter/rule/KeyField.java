@@ -0,0 +1,41 @@
+package wildme.org.ratelimiter.rule;
+
+// A login attempt field a rule can count by.
+public enum KeyField {
+    IP("ip", "ip"),
+    COOKIE_ID("cookie-id", "cookie_id"),
+    USERNAME("username", "username");
+
+    private final String name;
+    private final String column;
+
+    KeyField(String name, String column) {
+        this.name = name;
+        this.column = column;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public String value(String ip, String cookieId, String username) {
+        return switch (this) {
+            case IP -> ip;
+            case COOKIE_ID -> cookieId;
+            case USERNAME -> username;
+        };
+    }
+
+    public static KeyField parse(String name) {
+        for (var field : values()) {
+            if (field.name.equals(name)) {
+                return field;
+            }
+        }
+        throw new IllegalArgumentException("Unknown rate limiter rule field '" + name + "'");
+    }
+}
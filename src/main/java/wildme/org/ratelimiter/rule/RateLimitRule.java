@@ -0,0 +1,43 @@
+package wildme.org.ratelimiter.rule;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import org.springframework.boot.convert.DurationStyle;
+
+// At most limit attempts per key of the dimension within the window, written dimension/window/limit, e.g. ip/1m/5.
+public record RateLimitRule(RuleDimension dimension, Duration window, int limit) {
+
+    public RateLimitRule {
+        if (window.isNegative() || window.isZero() || limit < 0) {
+            throw new IllegalArgumentException("Invalid rate limiter rule " + dimension + "/" + window + "/" + limit);
+        }
+    }
+
+    public static RateLimitRule parse(String rule) {
+        var parts = rule.trim().split("/");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Rate limiter rule '" + rule + "' is not dimension/window/limit");
+        }
+        return new RateLimitRule(RuleDimension.parse(parts[0]), DurationStyle.detectAndParse(parts[1].trim()),
+                Integer.parseInt(parts[2].trim()));
+    }
+
+    // The rule as it is configured, e.g. ip+username/5m/3.
+    @Override
+    public String toString() {
+        return dimension + "/" + format(window) + "/" + limit;
+    }
+
+    private static String format(Duration window) {
+        var units = List.of(ChronoUnit.DAYS, ChronoUnit.HOURS, ChronoUnit.MINUTES, ChronoUnit.SECONDS);
+        var suffixes = List.of("d", "h", "m", "s");
+        for (int i = 0; i < units.size(); i++) {
+            var unitMillis = units.get(i).getDuration().toMillis();
+            if (window.toMillis() % unitMillis == 0) {
+                return window.toMillis() / unitMillis + suffixes.get(i);
+            }
+        }
+        return window.toMillis() + "ms";
+    }
+}
@@ -0,0 +1,38 @@
+package wildme.org.ratelimiter.rule;
+
+import java.time.Duration;
+import java.util.List;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+
+public final class RateLimitRules {
+
+    private RateLimitRules() {
+    }
+
+    // rate-limiter.rules when set, otherwise the four rate-limiter.thresholds.* rules.
+    public static List<RateLimitRule> bind(Binder binder) {
+        return binder.bind("rate-limiter.rules", Bindable.listOf(String.class))
+                .map(configured -> configured.stream().map(RateLimitRule::parse).toList())
+                .orElseGet(() -> defaults(
+                        threshold(binder, "attempts-per-ip-in-last-hour", 15),
+                        threshold(binder, "attempts-per-ip-in-last-minute", 5),
+                        threshold(binder, "attempts-per-cookie-in-last-ten-seconds", 2),
+                        threshold(binder, "attempts-per-username-in-last-hour", 10)));
+    }
+
+    public static List<RateLimitRule> defaults(int attemptsPerIpInLastHour, int attemptsPerIpInLastMinute,
+            int attemptsPerCookieInLastTenSeconds, int attemptsPerUsernameInLastHour) {
+        return List.of(
+                new RateLimitRule(RuleDimension.of(KeyField.IP), Duration.ofHours(1), attemptsPerIpInLastHour),
+                new RateLimitRule(RuleDimension.of(KeyField.IP), Duration.ofMinutes(1), attemptsPerIpInLastMinute),
+                new RateLimitRule(RuleDimension.of(KeyField.COOKIE_ID), Duration.ofSeconds(10),
+                        attemptsPerCookieInLastTenSeconds),
+                new RateLimitRule(RuleDimension.of(KeyField.USERNAME), Duration.ofHours(1),
+                        attemptsPerUsernameInLastHour));
+    }
+
+    private static int threshold(Binder binder, String name, int defaultValue) {
+        return binder.bind("rate-limiter.thresholds." + name, Integer.class).orElse(defaultValue);
+    }
+}
@@ -0,0 +1,51 @@
+package wildme.org.ratelimiter.rule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// The fields attempts are grouped by, like ip or ip+username.
+public record RuleDimension(List<KeyField> fields) {
+
+    public RuleDimension {
+        if (fields.isEmpty() || fields.stream().distinct().count() != fields.size()) {
+            throw new IllegalArgumentException("A rate limiter rule needs distinct fields, got " + fields);
+        }
+        fields = List.copyOf(fields);
+    }
+
+    public static RuleDimension of(KeyField... fields) {
+        return new RuleDimension(Arrays.asList(fields));
+    }
+
+    public static RuleDimension parse(String dimension) {
+        return new RuleDimension(Arrays.stream(dimension.split("\\+"))
+                .map(String::trim)
+                .map(KeyField::parse)
+                .toList());
+    }
+
+    // Metric tag value, the field names and never the key itself.
+    public String tag() {
+        return fields.stream().map(KeyField::getName).collect(Collectors.joining("+"));
+    }
+
+    // The key of an attempt in this dimension, or null when one of its fields is missing and the rules do not apply.
+    public List<String> key(String ip, String cookieId, String username) {
+        var key = new ArrayList<String>(fields.size());
+        for (var field : fields) {
+            var value = field.value(ip, cookieId, username);
+            if (value == null) {
+                return null;
+            }
+            key.add(value);
+        }
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return tag();
+    }
+}
@@ -0,0 +1,8 @@
+package wildme.org.ratelimiter.service;
+
+public enum DatabaseQueryMode {
+    // Save the attempt, then run one count query per dimension.
+    PER_DIMENSION,
+    // Save the attempt and count every dimension with two statements sent together on one connection.
+    COMBINED
+}
@@ -1,90 +1,381 @@
 package wildme.org.ratelimiter.service;
 
-import java.time.LocalDateTime;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.concurrent.Queues;
+import wildme.org.ratelimiter.denycache.BlockedKeyCache;
 import wildme.org.ratelimiter.model.LoginAttempt;
 import wildme.org.ratelimiter.repository.LoginAttemptRepository;
+import wildme.org.ratelimiter.rule.DimensionPlan;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.RuleDimension;
+import wildme.org.ratelimiter.service.RateLimiterMetrics.Stage;
+import wildme.org.ratelimiter.time.TimeSource;
 
 @Service
+@ConditionalOnProperty(name = "rate-limiter.storage", havingValue = "database", matchIfMissing = true)
 public class DefaultRateLimiterService implements IRateLimiterService {
 
-    private final int attemptsPerIpInLastHour;
-    private final int attemptsPerIpInLastMinute;
-    private final int attemptsPerCookieInLastTenSeconds;
-    private final int attemptsPerUsernameInLastHour;
+    private final RateLimiterPolicyHolder policyHolder;
+    private final DatabaseQueryMode queryMode;
+    private final EvaluationStrategy evaluationStrategy;
     private final LoginAttemptRepository loginAttemptRepository;
+    private final TimeSource timeSource;
+    private final RateLimiterMetrics metrics;
+    private final Optional<BlockedKeyCache> blockedKeyCache;
 
     public DefaultRateLimiterService(
-            @Value("${rate-limiter.thresholds.attempts-per-ip-in-last-hour:15}")
-                    int attemptsPerIpInLastHour,
-            @Value("${rate-limiter.thresholds.attempts-per-ip-in-last-minute:5}")
-                    int attemptsPerIpInLastMinute,
-            @Value("${rate-limiter.thresholds.attempts-per-cookie-in-last-ten-seconds:2}")
-                    int attemptsPerCookieInLastTenSeconds,
-            @Value("${rate-limiter.thresholds.attempts-per-username-in-last-hour:10}")
-                    int attemptsPerUsernameInLastHour,
-            LoginAttemptRepository loginAttemptRepository) {
-        this.attemptsPerIpInLastHour = attemptsPerIpInLastHour;
-        this.attemptsPerIpInLastMinute = attemptsPerIpInLastMinute;
-        this.attemptsPerCookieInLastTenSeconds = attemptsPerCookieInLastTenSeconds;
-        this.attemptsPerUsernameInLastHour = attemptsPerUsernameInLastHour;
+            RateLimiterPolicyHolder policyHolder,
+            @Value("${rate-limiter.database.query-mode:per-dimension}")
+                    DatabaseQueryMode queryMode,
+            @Value("${rate-limiter.database.evaluation:parallel}")
+                    EvaluationStrategy evaluationStrategy,
+            LoginAttemptRepository loginAttemptRepository,
+            TimeSource timeSource,
+            RateLimiterMetrics metrics,
+            Optional<BlockedKeyCache> blockedKeyCache) {
+        this.policyHolder = policyHolder;
+        this.queryMode = queryMode;
+        this.evaluationStrategy = evaluationStrategy;
         this.loginAttemptRepository = loginAttemptRepository;
+        this.timeSource = timeSource;
+        this.metrics = metrics;
+        this.blockedKeyCache = blockedKeyCache;
+    }
+
+    // The decision along with the window counts it was made on, for a tier deciding in front of this service.
+    public record CountedDecision(EvaluationPlan plan, boolean allowed, Map<DimensionPlan, long[]> counts) {
     }
 
     @Override
     public Mono<Boolean> loginRateLimiter(@NonNull String ip, String cookieId, @NonNull String username) {
-        return loginAttemptRepository.save(LoginAttempt.builder()
+        return countedDecision(ip, cookieId, username).map(CountedDecision::allowed);
+    }
+
+    // Counts are missing for the dimensions not counted: without a key, denied from the deny cache, or cut short by the
+    // sequential and race strategies.
+    public Mono<CountedDecision> countedDecision(@NonNull String ip, String cookieId, @NonNull String username) {
+        return Mono.defer(() -> {
+            // The whole decision uses the plan current when it started, whatever reloads happen meanwhile.
+            var plan = policyHolder.current().plan();
+            var now = timeSource.currentTimeMillis();
+            var cachedDenial = blockedKeyCache.flatMap(cache -> blockedBy(plan, cache, ip, cookieId, username));
+            if (cachedDenial.isPresent()) {
+                return Mono.just(new CountedDecision(plan,
+                        denyFromCache(cachedDenial.get(), ip, cookieId, username, now), Map.of()));
+            }
+            var counts = new ConcurrentHashMap<DimensionPlan, long[]>();
+            return saveAndCheck(plan, ip, cookieId, username, now, counts)
+                    .flatMap(dimension -> decide(dimension, ip, cookieId, username))
+                    .map(allowed -> new CountedDecision(plan, allowed, counts));
+        });
+    }
+
+    // Saves an attempt a tier in front of this service already allowed, at the time it did, and counts its keys
+    // without deciding on it again.
+    public Mono<Map<DimensionPlan, long[]>> record(EvaluationPlan plan, @NonNull String ip, String cookieId,
+            @NonNull String username, long now) {
+        return Mono.defer(() -> {
+            var counts = new ConcurrentHashMap<DimensionPlan, long[]>();
+            return saveAndCheck(plan, ip, cookieId, username, now, counts)
+                    .thenReturn(counts);
+        });
+    }
+
+    private Mono<Optional<DimensionPlan>> saveAndCheck(EvaluationPlan plan, String ip, String cookieId,
+            String username, long now, Map<DimensionPlan, long[]> counts) {
+        return queryMode == DatabaseQueryMode.COMBINED
+                ? saveAndCheckCombined(plan, ip, cookieId, username, now, counts)
+                : saveAndCheckEach(plan, ip, cookieId, username, now, counts);
+    }
+
+    private Optional<DimensionPlan> blockedBy(EvaluationPlan plan, BlockedKeyCache cache, String ip, String cookieId,
+            String username) {
+        return plan.getDimensions().stream()
+                .filter(dimension -> {
+                    var key = dimension.getDimension().key(ip, cookieId, username);
+                    return key != null && cache.isBlocked(dimension.getDimension(), key);
+                })
+                .findFirst();
+    }
+
+    private boolean denyFromCache(DimensionPlan dimension, String ip, String cookieId, String username, long now) {
+        blockedKeyCache.get().record(LoginAttempt.builder()
+                .ip(ip)
+                .cookieId(cookieId)
+                .username(username)
+                .createdAt(timeSource.toLocalDateTime(now))
+                .build());
+        return metrics.recordDecision(Optional.of(dimension.getDimension()));
+    }
+
+    // A denied key goes into the deny cache until the instant its count falls back under the limits.
+    private Mono<Boolean> decide(Optional<DimensionPlan> deniedBy, String ip, String cookieId, String username) {
+        var allowed = metrics.recordDecision(deniedBy.map(DimensionPlan::getDimension));
+        if (allowed || blockedKeyCache.isEmpty()) {
+            return Mono.just(allowed);
+        }
+        var dimension = deniedBy.get();
+        var key = dimension.getDimension().key(ip, cookieId, username);
+        return blockedUntil(dimension, key)
+                .doOnNext(until -> blockedKeyCache.get().block(dimension.getDimension(), key, until))
+                // Not caching the key only costs the queries of its next attempt.
+                .onErrorResume(e -> Mono.empty())
+                .thenReturn(false);
+    }
+
+    private Mono<Optional<DimensionPlan>> saveAndCheckEach(EvaluationPlan plan, String ip, String cookieId,
+            String username, long now, Map<DimensionPlan, long[]> counts) {
+        return metrics.time(Stage.SAVE, loginAttemptRepository.insert(LoginAttempt.builder()
                         .ip(ip)
                         .cookieId(cookieId)
                         .username(username)
-                        .build())
-                .map(LoginAttempt::getCreatedAt)
-                .flatMap(now -> Mono.zip(
-                                List.of(
-                                        checkByIp(ip, now),
-                                        checkByCookieId(cookieId, now),
-                                        checkByUsername(username, now)
-                                ),
-                                results -> Arrays.stream(results)
-                                        .map(result -> (Boolean) result)
-                                        .reduce(true, (a, b) -> a && b)
-                        )
-                );
-    }
-
-    protected Mono<Boolean> checkByIp(String ip, LocalDateTime now) {
-        var lastHour = now.minusHours(1);
-        var lastMinute = now.minusMinutes(1);
-        return loginAttemptRepository.findAllByIpAndCreatedAtAfter(ip, lastHour)
-                .collectList()
-                .map(results -> {
-                    var countInLastHour = results.size();
-                    var countInLastMinute = results.stream()
-                            .filter(loginAttempt -> loginAttempt.getCreatedAt().isAfter(lastMinute))
-                            .count();
-                    return countInLastMinute <= attemptsPerIpInLastMinute && countInLastHour <= attemptsPerIpInLastHour;
+                        .createdAt(timeSource.toLocalDateTime(now))
+                        .build()))
+                .flatMap(saved -> {
+                    // Dimensions missing a field, like cookie-id without a cookie, have no rule to check.
+                    var checks = plan.getDimensions().stream()
+                            .map(dimension -> Map.entry(dimension, dimension.getDimension().key(ip, cookieId, username)))
+                            .filter(entry -> entry.getValue() != null)
+                            .toList();
+                    return switch (evaluationStrategy) {
+                        case PARALLEL -> checkAll(checks, now, counts);
+                        // The plan orders dimensions cheapest first, by their widest window.
+                        case SEQUENTIAL -> firstDenial(Flux.concat(checks.stream()
+                                .map(check -> denial(check.getKey(), check.getValue(), now, counts))
+                                .toList()));
+                        case RACE -> firstDenial(Flux.merge(checks.stream()
+                                .map(check -> denial(check.getKey(), check.getValue(), now, counts))
+                                .toList()));
+                    };
                 });
     }
 
-    protected Mono<Boolean> checkByCookieId(String cookieId, LocalDateTime now) {
-        if (cookieId == null) {
-            return Mono.just(true);
+    private Mono<Optional<DimensionPlan>> checkAll(List<Map.Entry<DimensionPlan, List<String>>> checks, long now,
+            Map<DimensionPlan, long[]> counts) {
+        if (checks.isEmpty()) {
+            return Mono.just(Optional.empty());
+        }
+        return Mono.zip(
+                checks.stream()
+                        .map(check -> check(check.getKey(), check.getValue(), now, counts))
+                        .toList(),
+                results -> metrics.time(Stage.COMBINE, () -> combine(checks, results))
+        );
+    }
+
+    private Mono<DimensionPlan> denial(DimensionPlan dimension, List<String> key, long now,
+            Map<DimensionPlan, long[]> counts) {
+        return check(dimension, key, now, counts)
+                .filter(allowed -> !allowed)
+                .map(denied -> dimension);
+    }
+
+    // next() cancels the checks still pending once one denies; concat never subscribes to them at all.
+    private Mono<Optional<DimensionPlan>> firstDenial(Flux<DimensionPlan> denials) {
+        return denials.next()
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    // Results are in plan order, so the first false one names the dimension that denied the attempt.
+    private Optional<DimensionPlan> combine(List<Map.Entry<DimensionPlan, List<String>>> checks, Object[] results) {
+        for (int i = 0; i < results.length; i++) {
+            if (!(Boolean) results[i]) {
+                return Optional.of(checks.get(i).getKey());
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Counts the key in every window of its dimension with a single query, whatever the number of rules, and keeps
+    // the counts of the dimension in counts.
+    protected Mono<Boolean> check(DimensionPlan dimension, List<String> key, long now,
+            Map<DimensionPlan, long[]> counts) {
+        return metrics.timeCheck(dimension.getDimension(), loginAttemptRepository.countWindows(dimension, key, now))
+                .doOnNext(windowCounts -> counts.put(dimension, windowCounts))
+                .map(dimension::allows);
+    }
+
+    // Counts every distinct key of every dimension in the batch once, then applies the attempts on top of those
+    // counts in input order, as if they had been checked one after the other. Attempts with a key in the deny cache
+    // are denied without being counted; the others are saved in one insert, and the keys that denied them are cached.
+    @Override
+    public Mono<List<Boolean>> loginRateLimiter(List<LoginAttempt> loginAttempts) {
+        if (loginAttempts.isEmpty()) {
+            return Mono.just(List.of());
+        }
+        return Mono.defer(() -> {
+            var plan = policyHolder.current().plan();
+            var now = timeSource.currentTimeMillis();
+            var cachedDenials = new ArrayList<Optional<DimensionPlan>>(loginAttempts.size());
+            var checked = new ArrayList<LoginAttempt>(loginAttempts.size());
+            for (var loginAttempt : loginAttempts) {
+                var ip = loginAttempt.getIp();
+                var cookieId = loginAttempt.getCookieId();
+                var username = loginAttempt.getUsername();
+                var cachedDenial = blockedKeyCache.flatMap(cache -> blockedBy(plan, cache, ip, cookieId, username));
+                cachedDenial.ifPresentOrElse(
+                        dimension -> denyFromCache(dimension, ip, cookieId, username, now),
+                        () -> checked.add(loginAttempt));
+                cachedDenials.add(cachedDenial);
+            }
+            if (checked.isEmpty()) {
+                return Mono.just(results(cachedDenials, List.of()));
+            }
+            var createdAt = timeSource.toLocalDateTime(now);
+            return countAll(plan, checked, now)
+                    .map(counts -> metrics.time(Stage.COMBINE, () -> applyInOrder(plan, checked, counts)))
+                    .flatMap(deniedBy -> metrics.time(Stage.SAVE, loginAttemptRepository.insertAll(checked.stream()
+                                    .map(loginAttempt -> LoginAttempt.builder()
+                                            .ip(loginAttempt.getIp())
+                                            .cookieId(loginAttempt.getCookieId())
+                                            .username(loginAttempt.getUsername())
+                                            .createdAt(createdAt)
+                                            .build())
+                                    .toList()))
+                            .then(blockDenied(checked, deniedBy))
+                            .thenReturn(results(cachedDenials, deniedBy)));
+        });
+    }
+
+    // A batch needs the counts of every dimension whatever they are, so there is no denial to race or stop at: the
+    // sequential strategy runs one count query at a time, the others all of them at once.
+    private Mono<List<Map<List<String>, long[]>>> countAll(EvaluationPlan plan, List<LoginAttempt> loginAttempts,
+            long now) {
+        var concurrency = evaluationStrategy == EvaluationStrategy.SEQUENTIAL ? 1 : Queues.SMALL_BUFFER_SIZE;
+        return Flux.fromIterable(plan.getDimensions())
+                .flatMapSequential(dimension -> countDistinct(loginAttempts, dimension, now, concurrency), concurrency)
+                .collectList();
+    }
+
+    private Mono<Map<List<String>, long[]>> countDistinct(List<LoginAttempt> loginAttempts, DimensionPlan dimension,
+            long now, int concurrency) {
+        return Flux.fromStream(loginAttempts.stream()
+                        .map(loginAttempt -> key(dimension.getDimension(), loginAttempt))
+                        .filter(Objects::nonNull)
+                        .distinct())
+                .flatMap(key -> metrics.timeCheck(dimension.getDimension(),
+                                loginAttemptRepository.countWindows(dimension, key, now))
+                        .map(counts -> Map.entry(key, counts)), concurrency)
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue);
+    }
+
+    // The dimension that denied each attempt, empty when it is allowed.
+    private List<Optional<DimensionPlan>> applyInOrder(EvaluationPlan plan, List<LoginAttempt> loginAttempts,
+            List<Map<List<String>, long[]>> counts) {
+        var dimensions = plan.getDimensions();
+        var seen = new ArrayList<Map<List<String>, Long>>(dimensions.size());
+        for (int i = 0; i < dimensions.size(); i++) {
+            seen.add(new HashMap<>());
+        }
+        var results = new ArrayList<Optional<DimensionPlan>>(loginAttempts.size());
+        for (var loginAttempt : loginAttempts) {
+            Optional<DimensionPlan> deniedBy = Optional.empty();
+            for (int i = 0; i < dimensions.size(); i++) {
+                var dimension = dimensions.get(i);
+                var key = key(dimension.getDimension(), loginAttempt);
+                if (key == null) {
+                    continue;
+                }
+                var batchCount = seen.get(i).merge(key, 1L, Long::sum);
+                var keyCounts = counts.get(i).get(key).clone();
+                for (int window = 0; window < keyCounts.length; window++) {
+                    keyCounts[window] += batchCount;
+                }
+                if (deniedBy.isEmpty() && !dimension.allows(keyCounts)) {
+                    deniedBy = Optional.of(dimension);
+                }
+            }
+            metrics.recordDecision(deniedBy.map(DimensionPlan::getDimension));
+            results.add(deniedBy);
         }
-        var lastTenSeconds = now.minusSeconds(10);
-        return loginAttemptRepository.findAllByCookieIdAndCreatedAtAfter(cookieId, lastTenSeconds)
-                .collectList()
-                .map(results -> results.size() <= attemptsPerCookieInLastTenSeconds);
+        return results;
     }
 
-    protected Mono<Boolean> checkByUsername(String username, LocalDateTime now) {
-        var lastHour = now.minusHours(1);
-        return loginAttemptRepository.findAllByUsernameAndCreatedAtAfter(username, lastHour)
-                .collectList()
-                .map(results -> results.size() <= attemptsPerUsernameInLastHour);
+    // Each key that denied an attempt of the batch is cached once, like a denied single attempt.
+    private Mono<Void> blockDenied(List<LoginAttempt> loginAttempts, List<Optional<DimensionPlan>> deniedBy) {
+        if (blockedKeyCache.isEmpty()) {
+            return Mono.empty();
+        }
+        var denied = new LinkedHashSet<Map.Entry<DimensionPlan, List<String>>>();
+        for (int i = 0; i < loginAttempts.size(); i++) {
+            var loginAttempt = loginAttempts.get(i);
+            deniedBy.get(i).ifPresent(dimension -> denied.add(
+                    Map.entry(dimension, key(dimension.getDimension(), loginAttempt))));
+        }
+        return Flux.fromIterable(denied)
+                .flatMap(entry -> blockedUntil(entry.getKey(), entry.getValue())
+                        .doOnNext(until -> blockedKeyCache.get()
+                                .block(entry.getKey().getDimension(), entry.getValue(), until))
+                        // Not caching the key only costs the queries of its next attempt.
+                        .onErrorResume(e -> Mono.empty()))
+                .then();
+    }
+
+    // Merges the denials from the deny cache with those of the checked attempts, which kept their relative order.
+    private static List<Boolean> results(List<Optional<DimensionPlan>> cachedDenials,
+            List<Optional<DimensionPlan>> deniedBy) {
+        var checked = deniedBy.iterator();
+        var results = new ArrayList<Boolean>(cachedDenials.size());
+        for (var cachedDenial : cachedDenials) {
+            results.add(cachedDenial.isEmpty() && checked.next().isEmpty());
+        }
+        return results;
+    }
+
+    private static List<String> key(RuleDimension dimension, LoginAttempt loginAttempt) {
+        return dimension.key(loginAttempt.getIp(), loginAttempt.getCookieId(), loginAttempt.getUsername());
+    }
+
+    private Mono<Optional<DimensionPlan>> saveAndCheckCombined(EvaluationPlan plan, String ip, String cookieId,
+            String username, long now, Map<DimensionPlan, long[]> counts) {
+        var loginAttempt = LoginAttempt.builder()
+                .ip(ip)
+                .cookieId(cookieId)
+                .username(username)
+                .createdAt(timeSource.toLocalDateTime(now))
+                .build();
+        return metrics.time(Stage.SAVE_AND_COUNT, loginAttemptRepository.saveAndCountWindows(loginAttempt, plan))
+                .map(windowCounts -> metrics.time(Stage.COMBINE, () -> {
+                    var dimensions = plan.getDimensions();
+                    Optional<DimensionPlan> deniedBy = Optional.empty();
+                    for (int i = 0; i < dimensions.size(); i++) {
+                        var dimension = dimensions.get(i);
+                        if (dimension.getDimension().key(ip, cookieId, username) == null) {
+                            continue;
+                        }
+                        counts.put(dimension, windowCounts.get(i));
+                        if (deniedBy.isEmpty() && !dimension.allows(windowCounts.get(i))) {
+                            deniedBy = Optional.of(dimension);
+                        }
+                    }
+                    return deniedBy;
+                }));
+    }
+
+    // An attempt is allowed again once the limit-th newest attempt leaves the window, so the latest such instant
+    // over the windows of the dimension, in epoch milliseconds. Empty when the key has fewer attempts than every limit.
+    protected Mono<Long> blockedUntil(DimensionPlan dimension, List<String> key) {
+        var blockedUntil = new ArrayList<Mono<Long>>(dimension.windowCount());
+        for (int i = 0; i < dimension.windowCount(); i++) {
+            var window = dimension.getWindow(i).toMillis();
+            blockedUntil.add(loginAttemptRepository
+                    .findNthNewestCreatedAt(dimension, key, Math.max(0, dimension.getLimit(i) - 1))
+                    .map(createdAt -> createdAt + window));
+        }
+        return Flux.merge(blockedUntil).reduce(Math::max);
     }
 }
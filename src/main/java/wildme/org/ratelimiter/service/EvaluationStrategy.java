@@ -0,0 +1,11 @@
+package wildme.org.ratelimiter.service;
+
+// How the per-dimension checks of the database storage are run.
+public enum EvaluationStrategy {
+    // All checks at once, the decision waits for every one of them.
+    PARALLEL,
+    // Cookie id, ip, then username, the cheapest first; a deny skips the checks left.
+    SEQUENTIAL,
+    // All checks at once, the first deny cancels the ones still running.
+    RACE
+}
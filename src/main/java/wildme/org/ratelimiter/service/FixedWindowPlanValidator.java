@@ -0,0 +1,36 @@
+package wildme.org.ratelimiter.service;
+
+import java.time.Duration;
+import java.util.List;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.EvaluationPlanValidator;
+import wildme.org.ratelimiter.rule.KeyField;
+import wildme.org.ratelimiter.rule.RuleDimension;
+
+// The in-memory and redis storages only count the four windows of RateLimiterThresholds. Any other rule would be
+// accepted and then never applied, so it is rejected like an invalid one.
+@Component
+@ConditionalOnExpression("'${rate-limiter.storage:database}' != 'database'")
+public class FixedWindowPlanValidator implements EvaluationPlanValidator {
+
+    private static final List<FixedWindow> WINDOWS = List.of(
+            new FixedWindow(RuleDimension.of(KeyField.IP), Duration.ofHours(1)),
+            new FixedWindow(RuleDimension.of(KeyField.IP), Duration.ofMinutes(1)),
+            new FixedWindow(RuleDimension.of(KeyField.COOKIE_ID), Duration.ofSeconds(10)),
+            new FixedWindow(RuleDimension.of(KeyField.USERNAME), Duration.ofHours(1)));
+
+    @Override
+    public void validate(EvaluationPlan plan) {
+        for (var rule : plan.getRules()) {
+            if (!WINDOWS.contains(new FixedWindow(rule.dimension(), rule.window()))) {
+                throw new IllegalArgumentException("The in-memory and redis storages only apply the ip/1h, "
+                        + "ip/1m, cookie-id/10s and username/1h rules, " + rule + " can not be applied");
+            }
+        }
+    }
+
+    private record FixedWindow(RuleDimension dimension, Duration window) {
+    }
+}
@@ -0,0 +1,223 @@
+package wildme.org.ratelimiter.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.rule.DimensionPlan;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.RuleDimension;
+import wildme.org.ratelimiter.service.DefaultRateLimiterService.CountedDecision;
+import wildme.org.ratelimiter.time.TimeSource;
+import wildme.org.ratelimiter.window.LocalBudgetCounter;
+
+// Local tier in front of DefaultRateLimiterService, which makes every remote decision with its rule plan, deny cache
+// and metrics. The local budgets follow the windows and limits of the current plan, so a reload applies to both tiers.
+@Slf4j
+@Primary
+@Service
+@ConditionalOnProperty(name = "rate-limiter.hybrid.enabled", havingValue = "true")
+public class HybridRateLimiterService implements IRateLimiterService {
+
+    private final RateLimiterPolicyHolder policyHolder;
+    private final DefaultRateLimiterService rateLimiterService;
+    private final double localBudgetFraction;
+    private final Duration maxStaleness;
+    private final int syncConcurrency;
+    private final Duration shutdownTimeout;
+    private final TimeSource timeSource;
+    // One budget counter per dimension and window, kept across reloads that keep the window.
+    private final ConcurrentMap<BudgetWindow, LocalBudgetCounter<List<String>>> budgets = new ConcurrentHashMap<>();
+    private final Sinks.Many<LocalAttempt> pendingSyncs;
+    private final Counter localDecisions;
+    private final Counter remoteDecisions;
+    private Mono<Void> synced;
+    private Disposable syncing;
+    private Disposable eviction;
+
+    public HybridRateLimiterService(
+            RateLimiterPolicyHolder policyHolder,
+            @Value("${rate-limiter.hybrid.local-budget-fraction:0.5}")
+                    double localBudgetFraction,
+            @Value("${rate-limiter.hybrid.max-staleness:1s}")
+                    Duration maxStaleness,
+            @Value("${rate-limiter.hybrid.sync-queue-capacity:10000}")
+                    int syncQueueCapacity,
+            @Value("${rate-limiter.hybrid.sync-concurrency:16}")
+                    int syncConcurrency,
+            @Value("${rate-limiter.hybrid.shutdown-timeout:10s}")
+                    Duration shutdownTimeout,
+            Optional<DefaultRateLimiterService> rateLimiterService,
+            TimeSource timeSource,
+            MeterRegistry meterRegistry) {
+        // The remote decisions are the database storage's, the in-memory and redis ones have no such service.
+        this.rateLimiterService = rateLimiterService.orElseThrow(() -> new IllegalStateException(
+                "rate-limiter.hybrid.enabled needs rate-limiter.storage: database"));
+        this.policyHolder = policyHolder;
+        this.localBudgetFraction = localBudgetFraction;
+        this.maxStaleness = maxStaleness;
+        this.syncConcurrency = syncConcurrency;
+        this.shutdownTimeout = shutdownTimeout;
+        this.timeSource = timeSource;
+        this.pendingSyncs = Sinks.many().unicast().onBackpressureBuffer(Queues.<LocalAttempt>get(syncQueueCapacity).get());
+        this.localDecisions = Counter.builder("ratelimiter.hybrid.decisions")
+                .description("Rate limiter decisions by the tier that made them")
+                .tag("tier", "local")
+                .register(meterRegistry);
+        this.remoteDecisions = Counter.builder("ratelimiter.hybrid.decisions")
+                .description("Rate limiter decisions by the tier that made them")
+                .tag("tier", "remote")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        synced = pendingSyncs.asFlux()
+                .flatMap(attempt -> rateLimiterService
+                        .record(attempt.plan(), attempt.ip(), attempt.cookieId(), attempt.username(),
+                                attempt.nowMillis())
+                        .doOnNext(counts -> update(attempt.ip(), attempt.cookieId(), attempt.username(), counts))
+                        .onErrorResume(e -> {
+                            log.warn("Failed to sync a locally allowed login attempt", e);
+                            return Mono.empty();
+                        })
+                        // Once in the remote counts, or never to be, the attempt no longer holds local budget.
+                        .doFinally(signal -> release(attempt.acquired())), syncConcurrency)
+                .then()
+                .cache();
+        syncing = synced.subscribe();
+        eviction = Flux.interval(maxStaleness, maxStaleness)
+                .subscribe(tick -> {
+                    var now = timeSource.currentTimeMillis();
+                    budgets.values().forEach(budget -> budget.evictStale(now));
+                });
+    }
+
+    @PreDestroy
+    public void stop() {
+        pendingSyncs.tryEmitComplete();
+        if (eviction != null) {
+            eviction.dispose();
+        }
+        if (synced == null) {
+            return;
+        }
+        // Let the queued and in-flight syncs finish, attempts allowed locally would be lost otherwise.
+        synced.timeout(shutdownTimeout)
+                .onErrorResume(TimeoutException.class, e -> {
+                    log.warn("Gave up syncing login attempts allowed locally after {}", shutdownTimeout);
+                    syncing.dispose();
+                    return Mono.empty();
+                })
+                .block();
+    }
+
+    @Override
+    public Mono<Boolean> loginRateLimiter(@NonNull String ip, String cookieId, @NonNull String username) {
+        return Mono.defer(() -> {
+            var plan = policyHolder.current().plan();
+            var now = timeSource.currentTimeMillis();
+            var acquired = tryAcquireLocally(plan, ip, cookieId, username, now);
+            if (acquired.isPresent()) {
+                if (queueSync(new LocalAttempt(plan, ip, cookieId, username, now, acquired.get()))) {
+                    localDecisions.increment();
+                    return Mono.just(true);
+                }
+                release(acquired.get());
+            }
+            remoteDecisions.increment();
+            return rateLimiterService.countedDecision(ip, cookieId, username)
+                    .doOnNext(decision -> update(ip, cookieId, username, decision.counts()))
+                    .map(CountedDecision::allowed);
+        });
+    }
+
+    // The batch is counted remotely in one go; its attempts reach the local budgets with the next remote counts.
+    @Override
+    public Mono<List<Boolean>> loginRateLimiter(List<LoginAttempt> loginAttempts) {
+        return Mono.defer(() -> {
+            remoteDecisions.increment(loginAttempts.size());
+            return rateLimiterService.loginRateLimiter(loginAttempts);
+        });
+    }
+
+    // Takes one attempt from the budget of every window of every dimension with a key, or from none of them.
+    private Optional<List<Budget>> tryAcquireLocally(EvaluationPlan plan, String ip, String cookieId, String username,
+            long now) {
+        var acquired = new ArrayList<Budget>();
+        for (var dimension : plan.getDimensions()) {
+            var key = dimension.getDimension().key(ip, cookieId, username);
+            if (key == null) {
+                continue;
+            }
+            for (int i = 0; i < dimension.windowCount(); i++) {
+                var budget = new Budget(budget(dimension, i), key);
+                if (!budget.counter().tryAcquire(key, now, dimension.getLimit(i))) {
+                    release(acquired);
+                    return Optional.empty();
+                }
+                acquired.add(budget);
+            }
+        }
+        return Optional.of(acquired);
+    }
+
+    private static void release(List<Budget> acquired) {
+        acquired.forEach(budget -> budget.counter().release(budget.key()));
+    }
+
+    private void update(String ip, String cookieId, String username, Map<DimensionPlan, long[]> counts) {
+        var now = timeSource.currentTimeMillis();
+        counts.forEach((dimension, windowCounts) -> {
+            var key = dimension.getDimension().key(ip, cookieId, username);
+            for (int i = 0; i < windowCounts.length; i++) {
+                budget(dimension, i).update(key, windowCounts[i], now);
+            }
+        });
+    }
+
+    private LocalBudgetCounter<List<String>> budget(DimensionPlan dimension, int window) {
+        return budgets.computeIfAbsent(new BudgetWindow(dimension.getDimension(), dimension.getWindow(window)),
+                w -> new LocalBudgetCounter<>(localBudgetFraction, maxStaleness.toMillis()));
+    }
+
+    private boolean queueSync(LocalAttempt attempt) {
+        while (true) {
+            var result = pendingSyncs.tryEmitNext(attempt);
+            // Concurrent emitters only make each other retry; a full queue falls back to a remote decision.
+            if (result != Sinks.EmitResult.FAIL_NON_SERIALIZED) {
+                return result.isSuccess();
+            }
+        }
+    }
+
+    private record BudgetWindow(RuleDimension dimension, Duration window) {
+    }
+
+    private record Budget(LocalBudgetCounter<List<String>> counter, List<String> key) {
+    }
+
+    private record LocalAttempt(EvaluationPlan plan, String ip, String cookieId, String username, long nowMillis,
+            List<Budget> acquired) {
+    }
+}
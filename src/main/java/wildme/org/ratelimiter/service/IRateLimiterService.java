@@ -1,7 +1,18 @@
 package wildme.org.ratelimiter.service;
 
+import java.util.List;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttempt;
 
 public interface IRateLimiterService {
     Mono<Boolean> loginRateLimiter(String ip, String cookieId, String username);
+
+    // Decisions in the order of the attempts, each one counting the attempts before it in the batch.
+    default Mono<List<Boolean>> loginRateLimiter(List<LoginAttempt> loginAttempts) {
+        return Flux.fromIterable(loginAttempts)
+                .concatMap(loginAttempt -> loginRateLimiter(loginAttempt.getIp(), loginAttempt.getCookieId(),
+                        loginAttempt.getUsername()))
+                .collectList();
+    }
 }
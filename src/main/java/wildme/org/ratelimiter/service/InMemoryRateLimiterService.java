@@ -0,0 +1,137 @@
+package wildme.org.ratelimiter.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.snapshot.WindowCounterSnapshots;
+import wildme.org.ratelimiter.time.TimeSource;
+import wildme.org.ratelimiter.window.BoundedCounter;
+import wildme.org.ratelimiter.window.KeyedWindowCounter;
+import wildme.org.ratelimiter.window.Snapshottable;
+import wildme.org.ratelimiter.window.WindowCounterFactory;
+import wildme.org.ratelimiter.writebehind.LoginAttemptWriteBehindQueue;
+
+@Service
+@ConditionalOnProperty(name = "rate-limiter.storage", havingValue = "in-memory")
+public class InMemoryRateLimiterService implements IRateLimiterService {
+
+    private final RateLimiterPolicyHolder policyHolder;
+    private final KeyedWindowCounter ipInLastHour;
+    private final KeyedWindowCounter ipInLastMinute;
+    private final KeyedWindowCounter cookieInLastTenSeconds;
+    private final KeyedWindowCounter usernameInLastHour;
+    private final int maxCountWithoutRule;
+    private final Optional<LoginAttemptWriteBehindQueue> writeBehindQueue;
+    private final TimeSource timeSource;
+
+    public InMemoryRateLimiterService(
+            RateLimiterPolicyHolder policyHolder,
+            WindowCounterFactory windowCounterFactory,
+            @Value("${rate-limiter.in-memory.max-count-without-rule:1000}")
+                    int maxCountWithoutRule,
+            Optional<LoginAttemptWriteBehindQueue> writeBehindQueue,
+            Optional<WindowCounterSnapshots> snapshots,
+            TimeSource timeSource,
+            MeterRegistry meterRegistry) {
+        this.policyHolder = policyHolder;
+        this.ipInLastHour = windowCounterFactory.newHeavyHitterCounter(Duration.ofHours(1));
+        this.ipInLastMinute = windowCounterFactory.newKeyedCounter(Duration.ofMinutes(1));
+        this.cookieInLastTenSeconds = windowCounterFactory.newKeyedCounter(Duration.ofSeconds(10));
+        this.usernameInLastHour = windowCounterFactory.newHeavyHitterCounter(Duration.ofHours(1));
+        this.maxCountWithoutRule = maxCountWithoutRule;
+        this.writeBehindQueue = writeBehindQueue;
+        this.timeSource = timeSource;
+        snapshots.ifPresent(this::register);
+        registerOverflows(meterRegistry);
+    }
+
+    @Override
+    public Mono<Boolean> loginRateLimiter(@NonNull String ip, String cookieId, @NonNull String username) {
+        return Mono.defer(() -> {
+            var now = timeSource.currentTimeMillis();
+            var thresholds = policyHolder.current().thresholds();
+            // Every dimension records the attempt, like the database rows do, so no short-circuit here.
+            var allowedByIp = checkByIp(thresholds, ip, now);
+            var allowedByCookieId = checkByCookieId(thresholds, cookieId, now);
+            var allowedByUsername = checkByUsername(thresholds, username, now);
+            var allowed = allowedByIp && allowedByCookieId && allowedByUsername;
+            return writeBehindQueue
+                    .map(queue -> queue.enqueue(LoginAttempt.builder()
+                                    .ip(ip)
+                                    .cookieId(cookieId)
+                                    .username(username)
+                                    .createdAt(timeSource.toLocalDateTime(now))
+                                    .build())
+                            .thenReturn(allowed))
+                    .orElseGet(() -> Mono.just(allowed));
+        });
+    }
+
+    protected boolean checkByIp(RateLimiterThresholds thresholds, String ip, long now) {
+        var allowedInLastHour = within(ipInLastHour, ip, now, thresholds.getAttemptsPerIpInLastHour());
+        var allowedInLastMinute = within(ipInLastMinute, ip, now, thresholds.getAttemptsPerIpInLastMinute());
+        return allowedInLastMinute && allowedInLastHour;
+    }
+
+    protected boolean checkByCookieId(RateLimiterThresholds thresholds, String cookieId, long now) {
+        if (cookieId == null) {
+            return true;
+        }
+        return within(cookieInLastTenSeconds, cookieId, now, thresholds.getAttemptsPerCookieInLastTenSeconds());
+    }
+
+    protected boolean checkByUsername(RateLimiterThresholds thresholds, String username, long now) {
+        return within(usernameInLastHour, username, now, thresholds.getAttemptsPerUsernameInLastHour());
+    }
+
+    private Map<String, KeyedWindowCounter> namedCounters() {
+        var counters = new LinkedHashMap<String, KeyedWindowCounter>();
+        counters.put("ip-last-hour", ipInLastHour);
+        counters.put("ip-last-minute", ipInLastMinute);
+        counters.put("cookie-id-last-ten-seconds", cookieInLastTenSeconds);
+        counters.put("username-last-hour", usernameInLastHour);
+        return counters;
+    }
+
+    // Restores the counters before the first request. Sketch counters are not snapshotted and start empty.
+    private void register(WindowCounterSnapshots snapshots) {
+        var counters = new LinkedHashMap<String, Snapshottable>();
+        namedCounters().forEach((name, counter) -> {
+            if (counter instanceof Snapshottable snapshottable) {
+                counters.put(name, snapshottable);
+            }
+        });
+        snapshots.register(counters);
+    }
+
+    // Events a bounded counter had no room to count per key, so they were counted conservatively instead.
+    private void registerOverflows(MeterRegistry meterRegistry) {
+        namedCounters().forEach((name, counter) -> {
+            if (counter instanceof BoundedCounter bounded) {
+                FunctionCounter.builder("ratelimiter.in-memory.overflows", bounded, BoundedCounter::overflows)
+                        .tag("counter", name)
+                        .register(meterRegistry);
+            }
+        });
+    }
+
+    // A window without a rule in the current policy is still counted, up to max-count-without-rule, so a rule added
+    // back later does not start from zero; it is only not limited.
+    private boolean within(KeyedWindowCounter counter, String key, long now, int limit) {
+        if (limit == EvaluationPlan.NO_LIMIT) {
+            counter.incrementAndCount(key, now, maxCountWithoutRule);
+            return true;
+        }
+        return counter.incrementAndCount(key, now, limit) <= limit;
+    }
+}
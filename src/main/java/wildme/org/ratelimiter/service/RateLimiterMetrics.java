@@ -0,0 +1,90 @@
+package wildme.org.ratelimiter.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.rule.RuleDimension;
+
+// Stage timers and decision counters of the login rate limiter. Tags only take values from the Stage enum and the
+// configured rule dimensions, so their cardinality is fixed whatever ips, cookie ids and usernames come in.
+@Component
+public class RateLimiterMetrics {
+
+    private static final String NO_DIMENSION = "none";
+
+    public enum Stage {
+        SAVE("save"),
+        SAVE_AND_COUNT("save-and-count"),
+        CHECK("check"),
+        COMBINE("combine");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+    private final Map<RuleDimension, Timer> checkTimers = new ConcurrentHashMap<>();
+    private final Map<RuleDimension, Counter> denials = new ConcurrentHashMap<>();
+    private final Counter allowed;
+
+    public RateLimiterMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (var stage : Stage.values()) {
+            stageTimers.put(stage, stageTimer(stage, NO_DIMENSION));
+        }
+        this.allowed = decisionCounter("allow", NO_DIMENSION);
+    }
+
+    private Timer stageTimer(Stage stage, String dimension) {
+        return Timer.builder("ratelimiter.login.stage")
+                .description("Duration of a stage of a login rate limiter decision")
+                .tag("stage", stage.tag)
+                .tag("dimension", dimension)
+                .register(meterRegistry);
+    }
+
+    private Counter decisionCounter(String result, String dimension) {
+        return Counter.builder("ratelimiter.login.decisions")
+                .description("Login rate limiter decisions, denials tagged with the dimension over its limit")
+                .tag("result", result)
+                .tag("dimension", dimension)
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> time(Stage stage, Mono<T> mono) {
+        return time(stageTimers.get(stage), mono);
+    }
+
+    public <T> Mono<T> timeCheck(RuleDimension dimension, Mono<T> mono) {
+        return time(checkTimers.computeIfAbsent(dimension, d -> stageTimer(Stage.CHECK, d.tag())), mono);
+    }
+
+    public <T> T time(Stage stage, Supplier<T> supplier) {
+        return stageTimers.get(stage).record(supplier);
+    }
+
+    public boolean recordDecision(Optional<RuleDimension> deniedBy) {
+        deniedBy.ifPresentOrElse(
+                dimension -> denials.computeIfAbsent(dimension, d -> decisionCounter("deny", d.tag())).increment(),
+                allowed::increment);
+        return deniedBy.isEmpty();
+    }
+
+    private static <T> Mono<T> time(Timer timer, Mono<T> mono) {
+        return Mono.defer(() -> {
+            var sample = Timer.start();
+            return mono.doFinally(signal -> sample.stop(timer));
+        });
+    }
+}
@@ -0,0 +1,15 @@
+package wildme.org.ratelimiter.service;
+
+import java.util.List;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+
+// An immutable snapshot of the limits. A request reads the current one once and uses it throughout, so a swap never
+// mixes the limits of two versions within one decision.
+public record RateLimiterPolicy(long version, EvaluationPlan plan, RateLimiterThresholds thresholds) {
+
+    public static RateLimiterPolicy compile(long version, List<RateLimitRule> rules) {
+        var plan = EvaluationPlan.compile(rules);
+        return new RateLimiterPolicy(version, plan, RateLimiterThresholds.from(plan));
+    }
+}
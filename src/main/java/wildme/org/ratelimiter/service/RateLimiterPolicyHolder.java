@@ -0,0 +1,158 @@
+package wildme.org.ratelimiter.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySource;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.PropertiesPropertySourceLoader;
+import org.springframework.boot.env.PropertySourceLoader;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import wildme.org.ratelimiter.rule.EvaluationPlanValidator;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+import wildme.org.ratelimiter.rule.RateLimitRules;
+
+// Holds the current RateLimiterPolicy. The hot path only reads the reference; a reload compiles a new snapshot and
+// swaps it in, leaving the counters, connections and requests in flight untouched. rate-limiter.policy.file, when
+// set, is layered over the application properties and reloaded whenever it changes. Every policy, the first one
+// included, must pass the EvaluationPlanValidator beans of the storage in use.
+@Slf4j
+@Component
+public class RateLimiterPolicyHolder {
+
+    private final Environment environment;
+    private final Optional<Path> file;
+    private final Duration watchInterval;
+    private final ApplicationEventPublisher eventPublisher;
+    private final List<EvaluationPlanValidator> validators;
+    private final AtomicReference<RateLimiterPolicy> policy;
+    private FileTime fileModified;
+    private Disposable watching;
+
+    public RateLimiterPolicyHolder(
+            Environment environment,
+            @Value("${rate-limiter.policy.file:}")
+                    String file,
+            @Value("${rate-limiter.policy.watch-interval:5s}")
+                    Duration watchInterval,
+            ApplicationEventPublisher eventPublisher,
+            List<EvaluationPlanValidator> validators) {
+        this.environment = environment;
+        this.file = file.isBlank() ? Optional.empty() : Optional.of(Path.of(file));
+        this.watchInterval = watchInterval;
+        this.eventPublisher = eventPublisher;
+        this.validators = List.copyOf(validators);
+        this.fileModified = lastModified();
+        this.policy = new AtomicReference<>(compile(1, load()));
+    }
+
+    @PostConstruct
+    public void start() {
+        if (file.isEmpty()) {
+            return;
+        }
+        watching = Flux.interval(watchInterval, watchInterval, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .subscribe(tick -> reloadIfModified());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (watching != null) {
+            watching.dispose();
+        }
+    }
+
+    public RateLimiterPolicy current() {
+        return policy.get();
+    }
+
+    // Binds the rules again from the application properties and the policy file. Invalid rules leave the current
+    // policy in place.
+    public synchronized RateLimiterPolicy reload() {
+        return swap(load());
+    }
+
+    public synchronized RateLimiterPolicy update(List<RateLimitRule> rules) {
+        return swap(rules);
+    }
+
+    private RateLimiterPolicy swap(List<RateLimitRule> rules) {
+        var next = compile(policy.get().version() + 1, rules);
+        policy.set(next);
+        log.info("Rate limiter policy version {} applied: {}", next.version(), rules);
+        eventPublisher.publishEvent(next);
+        return next;
+    }
+
+    private RateLimiterPolicy compile(long version, List<RateLimitRule> rules) {
+        var compiled = RateLimiterPolicy.compile(version, rules);
+        validators.forEach(validator -> validator.validate(compiled.plan()));
+        return compiled;
+    }
+
+    void reloadIfModified() {
+        var modified = lastModified();
+        if (modified == null || modified.equals(fileModified)) {
+            return;
+        }
+        fileModified = modified;
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            log.warn("Failed to reload the rate limiter policy from {}, keeping version {}", file.get(),
+                    current().version(), e);
+        }
+    }
+
+    private List<RateLimitRule> load() {
+        var sources = new ArrayList<ConfigurationPropertySource>();
+        file.filter(Files::exists).ifPresent(path -> ConfigurationPropertySources.from(loadFile(path))
+                .forEach(sources::add));
+        ConfigurationPropertySources.get(environment).forEach(sources::add);
+        return RateLimitRules.bind(new Binder(sources));
+    }
+
+    private static List<PropertySource<?>> loadFile(Path path) {
+        var name = path.getFileName().toString();
+        PropertySourceLoader loader = name.endsWith(".yml") || name.endsWith(".yaml")
+                ? new YamlPropertySourceLoader()
+                : new PropertiesPropertySourceLoader();
+        try {
+            return loader.load("rate-limiter-policy", new FileSystemResource(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the rate limiter policy from " + path, e);
+        }
+    }
+
+    private FileTime lastModified() {
+        if (file.isEmpty() || !Files.exists(file.get())) {
+            return null;
+        }
+        try {
+            return Files.getLastModifiedTime(file.get());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package wildme.org.ratelimiter.service;
+
+import java.time.Duration;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import wildme.org.ratelimiter.model.LoginAttemptCounts;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.KeyField;
+import wildme.org.ratelimiter.rule.RuleDimension;
+
+@Getter
+@AllArgsConstructor
+public class RateLimiterThresholds {
+
+    private final int attemptsPerIpInLastHour;
+    private final int attemptsPerIpInLastMinute;
+    private final int attemptsPerCookieInLastTenSeconds;
+    private final int attemptsPerUsernameInLastHour;
+
+    // The limits of the four windows the in-memory and redis storages count; FixedWindowPlanValidator rejects the
+    // other rules for those storages. A window without a rule is still counted but has no limit.
+    public static RateLimiterThresholds from(EvaluationPlan plan) {
+        return new RateLimiterThresholds(
+                plan.limitOf(RuleDimension.of(KeyField.IP), Duration.ofHours(1)),
+                plan.limitOf(RuleDimension.of(KeyField.IP), Duration.ofMinutes(1)),
+                plan.limitOf(RuleDimension.of(KeyField.COOKIE_ID), Duration.ofSeconds(10)),
+                plan.limitOf(RuleDimension.of(KeyField.USERNAME), Duration.ofHours(1)));
+    }
+
+    public boolean allows(LoginAttemptCounts counts, boolean hasCookieId) {
+        return counts.getIpLastMinute() <= attemptsPerIpInLastMinute
+                && counts.getIpLastHour() <= attemptsPerIpInLastHour
+                && (!hasCookieId || counts.getCookieIdLastTenSeconds() <= attemptsPerCookieInLastTenSeconds)
+                && counts.getUsernameLastHour() <= attemptsPerUsernameInLastHour;
+    }
+}
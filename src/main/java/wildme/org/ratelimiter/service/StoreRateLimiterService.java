@@ -0,0 +1,35 @@
+package wildme.org.ratelimiter.service;
+
+import lombok.NonNull;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.store.LoginAttemptStore;
+import wildme.org.ratelimiter.time.TimeSource;
+
+@Service
+@ConditionalOnProperty(name = "rate-limiter.storage", havingValue = "redis")
+public class StoreRateLimiterService implements IRateLimiterService {
+
+    private final RateLimiterPolicyHolder policyHolder;
+    private final LoginAttemptStore loginAttemptStore;
+    private final TimeSource timeSource;
+
+    public StoreRateLimiterService(
+            RateLimiterPolicyHolder policyHolder,
+            LoginAttemptStore loginAttemptStore,
+            TimeSource timeSource) {
+        this.policyHolder = policyHolder;
+        this.loginAttemptStore = loginAttemptStore;
+        this.timeSource = timeSource;
+    }
+
+    @Override
+    public Mono<Boolean> loginRateLimiter(@NonNull String ip, String cookieId, @NonNull String username) {
+        return Mono.defer(() -> {
+            var thresholds = policyHolder.current().thresholds();
+            return loginAttemptStore.recordAndCount(ip, cookieId, username, timeSource.currentTimeMillis(), thresholds)
+                    .map(counts -> thresholds.allows(counts, cookieId != null));
+        });
+    }
+}
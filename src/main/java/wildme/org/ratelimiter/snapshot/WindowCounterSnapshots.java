@@ -0,0 +1,149 @@
+package wildme.org.ratelimiter.snapshot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import wildme.org.ratelimiter.time.TimeSource;
+import wildme.org.ratelimiter.window.SnapshotReader;
+import wildme.org.ratelimiter.window.SnapshotWriter;
+import wildme.org.ratelimiter.window.Snapshottable;
+
+// Writes the state of the in-memory counters to a binary file every interval and on shutdown, and restores it when
+// they are registered on startup, so a redeploy does not reset the windows. The file is written sequentially next to
+// the previous one and moved over it once complete, so a crash mid-write leaves the last good snapshot in place.
+// Layout: magic, version, written-at millis, section count, then per counter its name, format, payload length and
+// payload.
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "rate-limiter.in-memory.snapshot.enabled", havingValue = "true")
+public class WindowCounterSnapshots {
+
+    private static final int MAGIC = 0x524c534e;
+    private static final int VERSION = 1;
+
+    private final Path path;
+    private final Duration interval;
+    private final TimeSource timeSource;
+    private final Map<String, Snapshottable> counters = new LinkedHashMap<>();
+    private Disposable schedule;
+
+    public WindowCounterSnapshots(
+            @Value("${rate-limiter.in-memory.snapshot.path:./tmp/in-memory-snapshot.bin}")
+                    Path path,
+            @Value("${rate-limiter.in-memory.snapshot.interval:30s}")
+                    Duration interval,
+            TimeSource timeSource) {
+        this.path = path;
+        this.interval = interval;
+        this.timeSource = timeSource;
+    }
+
+    @PostConstruct
+    public void start() {
+        schedule = Flux.interval(interval, interval, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .subscribe(tick -> writeQuietly());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (schedule != null) {
+            schedule.dispose();
+        }
+        writeQuietly();
+    }
+
+    // Registers the counters under names stable across restarts and restores each one found in the snapshot with
+    // the same format. A missing or unreadable snapshot only means starting empty.
+    public synchronized void register(Map<String, ? extends Snapshottable> counters) {
+        this.counters.putAll(counters);
+        try {
+            restore(counters);
+        } catch (NoSuchFileException e) {
+            log.info("No in-memory rate limiter snapshot at {}, starting empty", path);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to restore the in-memory rate limiter snapshot from {}, starting empty", path, e);
+        }
+    }
+
+    public synchronized void write() throws IOException {
+        var started = System.nanoTime();
+        var temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (var channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            var writer = new SnapshotWriter(channel);
+            writer.putInt(MAGIC);
+            writer.putInt(VERSION);
+            writer.putLong(timeSource.currentTimeMillis());
+            writer.putInt(counters.size());
+            for (var counter : counters.entrySet()) {
+                writer.putString(counter.getKey());
+                writer.putString(counter.getValue().snapshotFormat());
+                var lengthPosition = writer.position();
+                writer.putLong(0);
+                counter.getValue().writeSnapshot(writer);
+                writer.patchLong(lengthPosition, writer.position() - lengthPosition - Long.BYTES);
+            }
+            writer.flush();
+            channel.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("In-memory rate limiter snapshot written to {} in {} ms", path,
+                Duration.ofNanos(System.nanoTime() - started).toMillis());
+    }
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to write the in-memory rate limiter snapshot to {}", path, e);
+        }
+    }
+
+    private void restore(Map<String, ? extends Snapshottable> toRestore) throws IOException {
+        var started = System.nanoTime();
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var reader = new SnapshotReader(channel);
+            if (reader.getInt() != MAGIC || reader.getInt() != VERSION) {
+                throw new IOException("Not a version " + VERSION + " rate limiter snapshot");
+            }
+            var writtenAt = reader.getLong();
+            var sections = reader.getInt();
+            var restored = 0;
+            for (int i = 0; i < sections; i++) {
+                var name = reader.getString();
+                var format = reader.getString();
+                var length = reader.getLong();
+                var counter = toRestore.get(name);
+                if (counter != null && counter.snapshotFormat().equals(format)) {
+                    counter.readSnapshot(reader);
+                    restored++;
+                } else {
+                    reader.skip(length);
+                }
+            }
+            log.info("Restored {} of {} in-memory rate limiter counters from a snapshot taken {} ago in {} ms",
+                    restored, toRestore.size(), Duration.ofMillis(timeSource.currentTimeMillis() - writtenAt),
+                    Duration.ofNanos(System.nanoTime() - started).toMillis());
+        }
+    }
+}
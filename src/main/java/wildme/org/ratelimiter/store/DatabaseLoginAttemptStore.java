@@ -0,0 +1,34 @@
+package wildme.org.ratelimiter.store;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.model.LoginAttemptCounts;
+import wildme.org.ratelimiter.repository.LoginAttemptRepository;
+import wildme.org.ratelimiter.service.RateLimiterThresholds;
+import wildme.org.ratelimiter.time.TimeSource;
+
+@Component
+@ConditionalOnProperty(name = "rate-limiter.storage", havingValue = "database", matchIfMissing = true)
+@RequiredArgsConstructor
+public class DatabaseLoginAttemptStore implements LoginAttemptStore {
+
+    private final LoginAttemptRepository loginAttemptRepository;
+    private final TimeSource timeSource;
+
+    @Override
+    public Mono<LoginAttemptCounts> recordAndCount(String ip, String cookieId, String username, long nowMillis,
+            RateLimiterThresholds thresholds) {
+        var now = timeSource.toLocalDateTime(nowMillis);
+        var loginAttempt = LoginAttempt.builder()
+                .ip(ip)
+                .cookieId(cookieId)
+                .username(username)
+                .createdAt(now)
+                .build();
+        return loginAttemptRepository.saveAndCount(loginAttempt,
+                now.minusHours(1), now.minusMinutes(1), now.minusSeconds(10), now.minusHours(1));
+    }
+}
@@ -0,0 +1,13 @@
+package wildme.org.ratelimiter.store;
+
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttemptCounts;
+import wildme.org.ratelimiter.service.RateLimiterThresholds;
+
+public interface LoginAttemptStore {
+
+    // Records the attempt and returns the window counts of every dimension, including the recorded attempt. Counts
+    // are exact at least up to each limit of the thresholds + 1, so a store may keep no more attempts than that.
+    Mono<LoginAttemptCounts> recordAndCount(String ip, String cookieId, String username, long nowMillis,
+            RateLimiterThresholds thresholds);
+}
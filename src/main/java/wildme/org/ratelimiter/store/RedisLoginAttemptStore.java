@@ -0,0 +1,89 @@
+package wildme.org.ratelimiter.store;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import wildme.org.ratelimiter.model.LoginAttemptCounts;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.service.RateLimiterThresholds;
+
+// One sorted set of attempt times per key of each dimension, all the keys of an attempt updated and counted by one
+// atomic script call, so a decision waits for a single round trip. The keys share the {prefix} hash tag, which keeps
+// them in one Redis Cluster slot. The time is nowMillis, from the TimeSource like every other storage.
+@Component
+@ConditionalOnProperty(name = "rate-limiter.storage", havingValue = "redis")
+public class RedisLoginAttemptStore implements LoginAttemptStore {
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final RedisScript<List<Long>> RECORD_LOGIN_ATTEMPT =
+            (RedisScript) RedisScript.of(new ClassPathResource("scripts/record_login_attempt.lua"), List.class);
+    private static final Duration HOUR = Duration.ofHours(1);
+    private static final Duration MINUTE = Duration.ofMinutes(1);
+    private static final Duration TEN_SECONDS = Duration.ofSeconds(10);
+
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final String keyPrefix;
+    private final int maxMembersWithoutRule;
+
+    public RedisLoginAttemptStore(
+            ReactiveStringRedisTemplate redisTemplate,
+            @Value("${rate-limiter.redis.key-prefix:rate-limiter:}")
+                    String keyPrefix,
+            @Value("${rate-limiter.redis.max-members-without-rule:1000}")
+                    int maxMembersWithoutRule) {
+        this.redisTemplate = redisTemplate;
+        this.keyPrefix = "{" + keyPrefix + "}";
+        this.maxMembersWithoutRule = maxMembersWithoutRule;
+    }
+
+    @Override
+    public Mono<LoginAttemptCounts> recordAndCount(String ip, String cookieId, String username, long nowMillis,
+            RateLimiterThresholds thresholds) {
+        var keys = new ArrayList<String>(3);
+        var args = new ArrayList<String>(12);
+        args.add(UUID.randomUUID().toString());
+        args.add(String.valueOf(nowMillis));
+        add(keys, args, "ip:" + ip,
+                maxMembers(thresholds.getAttemptsPerIpInLastHour(), thresholds.getAttemptsPerIpInLastMinute()),
+                HOUR, MINUTE);
+        if (cookieId != null) {
+            add(keys, args, "cookie:" + cookieId, maxMembers(thresholds.getAttemptsPerCookieInLastTenSeconds()),
+                    TEN_SECONDS);
+        }
+        add(keys, args, "username:" + username, maxMembers(thresholds.getAttemptsPerUsernameInLastHour()), HOUR);
+        return redisTemplate.execute(RECORD_LOGIN_ATTEMPT, keys, args)
+                .flatMapIterable(counts -> counts)
+                .collectList()
+                .map(counts -> cookieId == null
+                        ? new LoginAttemptCounts(counts.get(0), counts.get(1), 0, counts.get(2))
+                        : new LoginAttemptCounts(counts.get(0), counts.get(1), counts.get(2), counts.get(3)));
+    }
+
+    // Windows widest first, one count per window in the same order.
+    private void add(List<String> keys, List<String> args, String key, int maxMembers, Duration... windows) {
+        keys.add(keyPrefix + key);
+        args.add(String.valueOf(maxMembers));
+        args.add(String.valueOf(windows.length));
+        for (var window : windows) {
+            args.add(String.valueOf(window.toMillis()));
+        }
+    }
+
+    // The newest limit + 1 attempts tell whether any limit of the key is passed. A window without a rule is still
+    // counted, so a rule added back later does not start from zero, up to a bounded number of attempts.
+    private int maxMembers(int... limits) {
+        var maxMembers = 0;
+        for (var limit : limits) {
+            maxMembers = Math.max(maxMembers, limit == EvaluationPlan.NO_LIMIT ? maxMembersWithoutRule : limit + 1);
+        }
+        return maxMembers;
+    }
+}
@@ -0,0 +1,76 @@
+package wildme.org.ratelimiter.time;
+
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+// The time of the clock bean as read at startup, then advanced by System.nanoTime(), which never jumps. When the clock
+// is stepped afterwards, forward or back, by NTP or by hand, the time is slewed towards it by at most 50 ms a second
+// instead of jumping: it never goes back, never stands still, and windows keep expiring at about the real rate.
+@Component
+public class MonotonicTimeSource implements TimeSource {
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final long MAX_SLEW_DIVISOR = 20;
+    private static final long MAX_ANCHOR_AGE_MILLIS = 1000;
+
+    private final Clock clock;
+    private final LongSupplier nanoTime;
+    private final AtomicReference<Anchor> anchor;
+    private final AtomicLong latest = new AtomicLong(Long.MIN_VALUE);
+
+    @Autowired
+    public MonotonicTimeSource(Clock clock) {
+        this(clock, System::nanoTime);
+    }
+
+    // The nano time is passed in by tests, which advance it along with their clock.
+    public MonotonicTimeSource(Clock clock, LongSupplier nanoTime) {
+        this.clock = clock;
+        this.nanoTime = nanoTime;
+        this.anchor = new AtomicReference<>(new Anchor(clock.millis(), nanoTime.getAsLong()));
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        var now = slewed();
+        var previous = latest.get();
+        // Within the same millisecond this is a plain read, only a newer time pays for the compare-and-set.
+        while (now > previous) {
+            if (latest.compareAndSet(previous, now)) {
+                return now;
+            }
+            previous = latest.get();
+        }
+        return previous;
+    }
+
+    @Override
+    public ZoneId zone() {
+        return clock.getZone();
+    }
+
+    private long slewed() {
+        var current = anchor.get();
+        var elapsed = (nanoTime.getAsLong() - current.nanos()) / NANOS_PER_MILLI;
+        var now = current.millis() + elapsed;
+        var offset = clock.millis() - now;
+        // Re-anchored at least every second, so a step of the clock is never slewed by more than 50 ms at once.
+        var maxSlew = Math.min(elapsed, MAX_ANCHOR_AGE_MILLIS) / MAX_SLEW_DIVISOR;
+        var slew = Math.max(-maxSlew, Math.min(maxSlew, offset));
+        if (slew == 0 && elapsed < MAX_ANCHOR_AGE_MILLIS) {
+            return now;
+        }
+        // Re-anchored on the whole milliseconds elapsed so that no fraction of a millisecond is lost; losing the race
+        // only means another thread re-anchored a moment before.
+        anchor.compareAndSet(current, new Anchor(now + slew, current.nanos() + elapsed * NANOS_PER_MILLI));
+        return now + slew;
+    }
+
+    private record Anchor(long millis, long nanos) {
+    }
+}
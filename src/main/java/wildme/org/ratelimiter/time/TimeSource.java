@@ -0,0 +1,22 @@
+package wildme.org.ratelimiter.time;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+// The time every window of the rate limiter is computed from, in epoch milliseconds. LocalDateTime values are only
+// built from it where attempts are stored in, or read from, the created_at columns of the database.
+public interface TimeSource {
+
+    long currentTimeMillis();
+
+    ZoneId zone();
+
+    default LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), zone());
+    }
+
+    default long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(zone()).toInstant().toEpochMilli();
+    }
+}
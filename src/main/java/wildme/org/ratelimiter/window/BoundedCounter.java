@@ -0,0 +1,8 @@
+package wildme.org.ratelimiter.window;
+
+// A counter keeping exact state for a bounded number of keys, which counts the events it could not give a key of its
+// own and so had to count in a coarser, conservative way.
+public interface BoundedCounter {
+
+    long overflows();
+}
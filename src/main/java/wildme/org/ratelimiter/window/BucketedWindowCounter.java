@@ -0,0 +1,49 @@
+package wildme.org.ratelimiter.window;
+
+import java.io.IOException;
+
+public class BucketedWindowCounter implements WindowCounter {
+
+    private final long bucketMillis;
+    // One extra bucket for the partially elapsed oldest one, so the count can over-estimate but never under-estimate.
+    private final int[] counts;
+    private final long[] bucketIds;
+
+    public BucketedWindowCounter(long windowMillis, int buckets) {
+        this.bucketMillis = Math.max(1, windowMillis / buckets);
+        this.counts = new int[buckets + 1];
+        this.bucketIds = new long[buckets + 1];
+    }
+
+    @Override
+    public synchronized int incrementAndCount(long nowMillis, int limit) {
+        var currentBucket = nowMillis / bucketMillis;
+        var index = (int) (currentBucket % counts.length);
+        if (bucketIds[index] != currentBucket) {
+            bucketIds[index] = currentBucket;
+            counts[index] = 0;
+        }
+        counts[index]++;
+
+        var oldestBucket = currentBucket - counts.length + 1;
+        var count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (bucketIds[i] >= oldestBucket) {
+                count += counts[i];
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void writeSnapshot(SnapshotWriter writer) throws IOException {
+        writer.putInts(counts, 0, counts.length);
+        writer.putLongs(bucketIds, 0, bucketIds.length);
+    }
+
+    @Override
+    public synchronized void readSnapshot(SnapshotReader reader) throws IOException {
+        reader.getInts(counts, 0, counts.length);
+        reader.getLongs(bucketIds, 0, bucketIds.length);
+    }
+}
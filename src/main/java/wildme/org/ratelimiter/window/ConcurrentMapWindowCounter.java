@@ -0,0 +1,124 @@
+package wildme.org.ratelimiter.window;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One counter per key. Once per window the keys idle for longer than it are swept out, so the map only holds the keys
+// seen within about the last two windows instead of every key ever seen.
+public class ConcurrentMapWindowCounter implements KeyedWindowCounter, Snapshottable {
+
+    private final Duration window;
+    private final SlidingWindowAlgorithm algorithm;
+    private final int buckets;
+    // A whole window and the extra bucket a bucketed counter still counts, so a swept key had nothing left to count.
+    private final long idleMillis;
+    private final ConcurrentMap<String, Entry> counters = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepMillis = new AtomicLong();
+
+    public ConcurrentMapWindowCounter(Duration window, SlidingWindowAlgorithm algorithm, int buckets) {
+        this.window = window;
+        this.algorithm = algorithm;
+        this.buckets = buckets;
+        this.idleMillis = window.toMillis() + Math.max(1, window.toMillis() / buckets);
+    }
+
+    @Override
+    public int incrementAndCount(String key, long nowMillis, int limit) {
+        sweepIfDue(nowMillis);
+        while (true) {
+            var count = counters.computeIfAbsent(key, k -> new Entry(algorithm.newCounter(window, limit, buckets)))
+                    .incrementAndCount(nowMillis, limit);
+            // An entry swept out between the lookup and the increment is not counted in; the next lookup replaces it.
+            if (count >= 0) {
+                return count;
+            }
+        }
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    // Run by the one caller that moves the next sweep time, the others go on counting.
+    private void sweepIfDue(long nowMillis) {
+        var next = nextSweepMillis.get();
+        if (nowMillis < next || !nextSweepMillis.compareAndSet(next, nowMillis + window.toMillis())) {
+            return;
+        }
+        var idleBefore = nowMillis - idleMillis;
+        for (var entry : counters.entrySet()) {
+            if (entry.getValue().retireIfIdle(idleBefore, nowMillis)) {
+                counters.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public String snapshotFormat() {
+        return "concurrent-map:1:" + algorithm + ":window-millis=" + window.toMillis() + ":buckets=" + buckets;
+    }
+
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) throws IOException {
+        var entries = new ArrayList<>(counters.entrySet());
+        writer.putInt(entries.size());
+        for (var entry : entries) {
+            writer.putString(entry.getKey());
+            entry.getValue().counter.writeSnapshot(writer);
+        }
+    }
+
+    // The whole section is read before the counters are replaced, so a truncated or corrupted one leaves them as they
+    // were.
+    @Override
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        var restored = new HashMap<String, Entry>();
+        var size = reader.getInt();
+        for (int i = 0; i < size; i++) {
+            var key = reader.getString();
+            // The restored state sizes the counter, the limit of the next call grows it if needed.
+            var counter = algorithm.newCounter(window, 0, buckets);
+            counter.readSnapshot(reader);
+            restored.put(key, new Entry(counter));
+        }
+        counters.clear();
+        counters.putAll(restored);
+    }
+
+    private static final class Entry {
+
+        // A restored entry is not known to be idle until a sweep has seen it, so it is kept one more window.
+        private static final long UNKNOWN = Long.MIN_VALUE;
+
+        private final WindowCounter counter;
+        private long lastSeenMillis = UNKNOWN;
+        private boolean retired;
+
+        private Entry(WindowCounter counter) {
+            this.counter = counter;
+        }
+
+        // -1 once swept out.
+        private synchronized int incrementAndCount(long nowMillis, int limit) {
+            if (retired) {
+                return -1;
+            }
+            lastSeenMillis = Math.max(lastSeenMillis, nowMillis);
+            return counter.incrementAndCount(nowMillis, limit);
+        }
+
+        private synchronized boolean retireIfIdle(long idleBefore, long nowMillis) {
+            if (lastSeenMillis == UNKNOWN) {
+                lastSeenMillis = nowMillis;
+                return false;
+            }
+            retired = lastSeenMillis <= idleBefore;
+            return retired;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package wildme.org.ratelimiter.window;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// Count-Min Sketch with conservative update: estimates never go below the true count and, with probability at least
+// 1 - delta, exceed it by at most epsilon times the total number of events added. Safe for concurrent adds without a
+// lock: the counters are raised by compare-and-set.
+public class CountMinSketch {
+
+    private final int width;
+    private final int depth;
+    private final AtomicIntegerArray counters;
+
+    public CountMinSketch(double epsilon, double delta) {
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = (int) Math.ceil(Math.log(1 / delta));
+        if (depth > Long.SIZE) {
+            throw new IllegalArgumentException("A delta of " + delta + " needs more than " + Long.SIZE + " rows");
+        }
+        this.counters = new AtomicIntegerArray(width * depth);
+    }
+
+    // Adds one event for the key hash and returns the new estimate of its count. The rows holding the minimum are
+    // raised from the value they were read at; if any of them changed meanwhile, the add starts over, so concurrent
+    // adds of one key are never merged into one. A row raised before a retry can only over-count.
+    public int add(long hash) {
+        while (true) {
+            var minimum = Integer.MAX_VALUE;
+            var minimumRows = 0L;
+            for (int row = 0; row < depth; row++) {
+                var value = counters.get(index(hash, row));
+                if (value < minimum) {
+                    minimum = value;
+                    minimumRows = 1L << row;
+                } else if (value == minimum) {
+                    minimumRows |= 1L << row;
+                }
+            }
+            if (raise(hash, minimumRows, minimum)) {
+                return minimum + 1;
+            }
+        }
+    }
+
+    public int estimate(long hash) {
+        var estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    // Not atomic: only for a sketch no add is made to until it returns.
+    public void clear() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int depth() {
+        return depth;
+    }
+
+    private boolean raise(long hash, long rows, int from) {
+        for (int row = 0; row < depth; row++) {
+            if ((rows & 1L << row) != 0 && !counters.compareAndSet(index(hash, row), from, from + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Kirsch-Mitzenmacher double hashing derives every row index from the two halves of the 64-bit hash.
+    private int index(long hash, int row) {
+        var combined = (int) hash + row * (int) (hash >>> 32);
+        return row * width + Math.floorMod(combined, width);
+    }
+}
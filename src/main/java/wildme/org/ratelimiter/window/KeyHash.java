@@ -0,0 +1,20 @@
+package wildme.org.ratelimiter.window;
+
+public final class KeyHash {
+
+    private KeyHash() {
+    }
+
+    // 64-bit FNV-1a over the chars followed by the SplitMix64 finalizer, never 0 so it can mark empty slots.
+    public static long hash64(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        hash = hash ^ (hash >>> 31);
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,8 @@
+package wildme.org.ratelimiter.window;
+
+public enum KeyStoreType {
+    // One counter object per key in a ConcurrentHashMap, unbounded number of keys.
+    CONCURRENT_MAP,
+    // Primitive bucket rings in striped hash tables with a fixed key capacity, see StripedWindowCounter.
+    STRIPED
+}
@@ -0,0 +1,8 @@
+package wildme.org.ratelimiter.window;
+
+public interface KeyedWindowCounter {
+
+    // Records one event for the key and returns the number of events of that key in the window ending at it, exact at
+    // least up to limit + 1 like WindowCounter.
+    int incrementAndCount(String key, long nowMillis, int limit);
+}
@@ -0,0 +1,65 @@
+package wildme.org.ratelimiter.window;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class LocalBudgetCounter<K> {
+
+    private final double budgetFraction;
+    private final long maxStalenessMillis;
+    private final ConcurrentMap<K, Estimate> estimates = new ConcurrentHashMap<>();
+
+    public LocalBudgetCounter(double budgetFraction, long maxStalenessMillis) {
+        this.budgetFraction = budgetFraction;
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    // Takes one attempt from the local budget if the last known remote count plus the attempts not synced yet stays
+    // within it. Keys without a fresh remote count are never allowed locally. The budget follows the limit of each call.
+    public boolean tryAcquire(K key, long nowMillis, int limit) {
+        var estimate = estimates.get(key);
+        if (estimate == null) {
+            return false;
+        }
+        synchronized (estimate) {
+            if (nowMillis - estimate.syncedAtMillis > maxStalenessMillis
+                    || estimate.remoteCount + estimate.unsynced + 1 > (long) Math.floor(limit * budgetFraction)) {
+                return false;
+            }
+            estimate.unsynced++;
+            return true;
+        }
+    }
+
+    // Gives back an attempt taken by tryAcquire once it is in the remote count, or when it will never be.
+    public void release(K key) {
+        var estimate = estimates.get(key);
+        if (estimate != null) {
+            synchronized (estimate) {
+                estimate.unsynced = Math.max(0, estimate.unsynced - 1);
+            }
+        }
+    }
+
+    public void update(K key, long remoteCount, long nowMillis) {
+        var estimate = estimates.computeIfAbsent(key, k -> new Estimate());
+        synchronized (estimate) {
+            estimate.remoteCount = remoteCount;
+            estimate.syncedAtMillis = nowMillis;
+        }
+    }
+
+    public void evictStale(long nowMillis) {
+        estimates.values().removeIf(estimate -> {
+            synchronized (estimate) {
+                return estimate.unsynced == 0 && nowMillis - estimate.syncedAtMillis > maxStalenessMillis;
+            }
+        });
+    }
+
+    private static class Estimate {
+        private long remoteCount;
+        private long syncedAtMillis;
+        private long unsynced;
+    }
+}
@@ -0,0 +1,184 @@
+package wildme.org.ratelimiter.window;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Counts every key in a ring of time-bucketed Count-Min Sketches, so memory does not depend on the number of keys.
+// Keys whose estimate passes the tracking threshold also get an exact sliding log. A tracked key is counted by its log
+// plus the sketch estimate of the buckets before tracking started, which stops mattering once the log has seen a whole
+// window. When max-tracked-keys keys are tracked and none is idle, a new key is counted by the sketch estimate alone
+// and the fallback is counted in overflows(). Neither is ever below the true count, so a threshold can not be missed;
+// the estimate only fails closed earlier. Counting takes no lock shared by the keys: the sketches are updated with
+// compare-and-set, and only moving the ring to a new bucket, once per bucket, is done under the counter's monitor.
+public class SketchPrefilteredWindowCounter implements KeyedWindowCounter, BoundedCounter {
+
+    private final long windowMillis;
+    private final long bucketMillis;
+    private final double trackingFraction;
+    private final int maxTrackedKeys;
+    private final CountMinSketch[] sketches;
+    private final AtomicLongArray sketchBuckets;
+    private final ConcurrentMap<String, TrackedKey> trackedKeys = new ConcurrentHashMap<>();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong nextSweepMillis = new AtomicLong();
+    private volatile long latestBucket;
+
+    public SketchPrefilteredWindowCounter(Duration window, int buckets, double epsilon, double delta,
+            double trackingFraction, int maxTrackedKeys) {
+        this.windowMillis = window.toMillis();
+        this.bucketMillis = Math.max(1, windowMillis / buckets);
+        this.trackingFraction = trackingFraction;
+        this.maxTrackedKeys = maxTrackedKeys;
+        // One extra bucket for the partially elapsed oldest one, like BucketedWindowCounter.
+        this.sketches = new CountMinSketch[buckets + 1];
+        this.sketchBuckets = new AtomicLongArray(buckets + 1);
+        for (int i = 0; i < sketches.length; i++) {
+            sketches[i] = new CountMinSketch(epsilon, delta);
+        }
+    }
+
+    @Override
+    public int incrementAndCount(String key, long nowMillis, int limit) {
+        var hash = KeyHash.hash64(key);
+        var estimate = addToSketches(hash, nowMillis);
+        var trackedKey = trackedKeys.get(key);
+        if (trackedKey == null) {
+            // Derived from the limit of this call, so a key of a lowered limit starts being tracked earlier.
+            if (estimate <= (long) Math.floor(limit * trackingFraction)) {
+                return estimate;
+            }
+            trackedKey = startTracking(key, hash, nowMillis, limit);
+            if (trackedKey == null) {
+                overflows.incrementAndGet();
+                return estimate;
+            }
+        }
+        var count = trackedKey.incrementAndCount(nowMillis, limit);
+        var beforeTracking = nowMillis - trackedKey.trackedSinceMillis >= windowMillis
+                ? 0
+                : estimateBefore(hash, trackedKey.trackedBucket, trackedKey.inTrackedBucketBefore);
+        return Math.min(estimate, count + beforeTracking);
+    }
+
+    public int trackedKeys() {
+        return trackedKeys.size();
+    }
+
+    // Events of keys counted by the sketch estimate alone because max-tracked-keys keys were already tracked.
+    @Override
+    public long overflows() {
+        return overflows.get();
+    }
+
+    private int addToSketches(long hash, long nowMillis) {
+        // Late events are counted in the latest bucket, which only makes them expire later.
+        var bucket = latestBucket;
+        if (nowMillis / bucketMillis > bucket) {
+            bucket = advanceTo(nowMillis / bucketMillis);
+        }
+        var index = (int) (bucket % sketches.length);
+        var estimate = sketches[index].add(hash);
+
+        var oldestBucket = bucket - sketches.length + 1;
+        for (int i = 0; i < sketches.length; i++) {
+            if (i != index && sketchBuckets.get(i) >= oldestBucket) {
+                estimate += sketches[i].estimate(hash);
+            }
+        }
+        return estimate;
+    }
+
+    // The sketch of the new bucket is cleared before the bucket is published, so no add is made to it meanwhile. The
+    // sketch it replaces held a bucket that has left the window.
+    private synchronized long advanceTo(long bucket) {
+        if (bucket > latestBucket) {
+            var index = (int) (bucket % sketches.length);
+            sketches[index].clear();
+            sketchBuckets.set(index, bucket);
+            latestBucket = bucket;
+        }
+        return latestBucket;
+    }
+
+    private int estimateIn(long hash, long bucket) {
+        var index = (int) (bucket % sketches.length);
+        return sketchBuckets.get(index) == bucket ? sketches[index].estimate(hash) : 0;
+    }
+
+    // The events of a key counted before it was tracked: the buckets of the ring older than the one tracking started
+    // in, plus what that bucket held then, as long as it is still in the ring.
+    private int estimateBefore(long hash, long trackedBucket, int inTrackedBucketBefore) {
+        var oldestBucket = latestBucket - sketches.length + 1;
+        if (trackedBucket < oldestBucket) {
+            return 0;
+        }
+        var estimate = inTrackedBucketBefore;
+        for (int i = 0; i < sketches.length; i++) {
+            var sketchBucket = sketchBuckets.get(i);
+            if (sketchBucket >= oldestBucket && sketchBucket < trackedBucket) {
+                estimate += sketches[i].estimate(hash);
+            }
+        }
+        return estimate;
+    }
+
+    private TrackedKey startTracking(String key, long hash, long nowMillis, int limit) {
+        if (trackedKeys.size() >= maxTrackedKeys) {
+            sweepIfDue(nowMillis);
+            if (trackedKeys.size() >= maxTrackedKeys) {
+                return null;
+            }
+        }
+        return trackedKeys.computeIfAbsent(key, k -> new TrackedKey(hash, nowMillis, limit));
+    }
+
+    // Run by one caller at a time, and not before the oldest surviving key can have gone idle, like the sweep of
+    // StripedWindowCounter; until then new keys fall back to the sketch. A key swept while it is counted loses its
+    // log, and is counted by the sketch again, which still covers all of its events.
+    private void sweepIfDue(long nowMillis) {
+        var next = nextSweepMillis.get();
+        if (nowMillis < next || !nextSweepMillis.compareAndSet(next, Long.MAX_VALUE)) {
+            return;
+        }
+        var oldestSurvivor = Long.MAX_VALUE;
+        for (var entry : trackedKeys.entrySet()) {
+            var lastSeenMillis = entry.getValue().lastSeenMillis();
+            if (nowMillis - lastSeenMillis > windowMillis) {
+                trackedKeys.remove(entry.getKey(), entry.getValue());
+            } else {
+                oldestSurvivor = Math.min(oldestSurvivor, lastSeenMillis);
+            }
+        }
+        nextSweepMillis.set(oldestSurvivor == Long.MAX_VALUE ? nowMillis : oldestSurvivor + windowMillis + 1);
+    }
+
+    private final class TrackedKey {
+
+        private final long trackedSinceMillis;
+        private final long trackedBucket;
+        // The event starting the tracking is already in the sketch and is counted by the log instead.
+        private final int inTrackedBucketBefore;
+        private final SlidingLogWindowCounter counter;
+        private long lastSeenMillis;
+
+        private TrackedKey(long hash, long trackedSinceMillis, int limit) {
+            this.trackedSinceMillis = trackedSinceMillis;
+            this.trackedBucket = latestBucket;
+            this.inTrackedBucketBefore = Math.max(0, estimateIn(hash, trackedBucket) - 1);
+            this.counter = new SlidingLogWindowCounter(windowMillis, limit);
+            this.lastSeenMillis = trackedSinceMillis;
+        }
+
+        private synchronized int incrementAndCount(long nowMillis, int limit) {
+            lastSeenMillis = Math.max(lastSeenMillis, nowMillis);
+            return counter.incrementAndCount(nowMillis, limit);
+        }
+
+        private synchronized long lastSeenMillis() {
+            return lastSeenMillis;
+        }
+    }
+}
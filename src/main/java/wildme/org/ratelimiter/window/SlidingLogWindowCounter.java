@@ -0,0 +1,71 @@
+package wildme.org.ratelimiter.window;
+
+import java.io.IOException;
+
+public class SlidingLogWindowCounter implements WindowCounter {
+
+    private final long windowMillis;
+    // Keeping one timestamp more than the limit is enough to tell whether the limit is exceeded.
+    private long[] timestamps;
+    private int next;
+    private int size;
+
+    public SlidingLogWindowCounter(long windowMillis, int limit) {
+        this.windowMillis = windowMillis;
+        this.timestamps = new long[limit + 1];
+    }
+
+    @Override
+    public synchronized int incrementAndCount(long nowMillis, int limit) {
+        ensureCapacity(limit);
+        timestamps[next] = nowMillis;
+        next = (next + 1) % timestamps.length;
+        if (size < timestamps.length) {
+            size++;
+        }
+        var windowStart = nowMillis - windowMillis;
+        var count = 0;
+        for (int i = 0; i < size; i++) {
+            if (timestamps[i] > windowStart) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Oldest first, so the log can be restored with another capacity.
+    @Override
+    public synchronized void writeSnapshot(SnapshotWriter writer) throws IOException {
+        writer.putInt(size);
+        var oldest = size < timestamps.length ? 0 : next;
+        for (int i = 0; i < size; i++) {
+            writer.putLong(timestamps[(oldest + i) % timestamps.length]);
+        }
+    }
+
+    @Override
+    public synchronized void readSnapshot(SnapshotReader reader) throws IOException {
+        size = reader.getInt();
+        if (size > timestamps.length) {
+            timestamps = new long[size];
+        }
+        reader.getLongs(timestamps, 0, size);
+        next = size % timestamps.length;
+    }
+
+    // A raised limit grows the log, a lowered one keeps it. Timestamps dropped before growing are not recovered, so the
+    // count may be low until the window has passed once; that only happens after the limit went up.
+    private void ensureCapacity(int limit) {
+        if (limit + 1 <= timestamps.length) {
+            return;
+        }
+        var grown = new long[limit + 1];
+        // Oldest first; a log that is not full yet already starts at 0.
+        var oldest = size < timestamps.length ? 0 : next;
+        for (int i = 0; i < size; i++) {
+            grown[i] = timestamps[(oldest + i) % timestamps.length];
+        }
+        timestamps = grown;
+        next = size;
+    }
+}
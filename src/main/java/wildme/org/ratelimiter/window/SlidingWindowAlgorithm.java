@@ -0,0 +1,15 @@
+package wildme.org.ratelimiter.window;
+
+import java.time.Duration;
+
+public enum SlidingWindowAlgorithm {
+    SLIDING_LOG,
+    BUCKETED;
+
+    public WindowCounter newCounter(Duration window, int limit, int buckets) {
+        return switch (this) {
+            case SLIDING_LOG -> new SlidingLogWindowCounter(window.toMillis(), limit);
+            case BUCKETED -> new BucketedWindowCounter(window.toMillis(), buckets);
+        };
+    }
+}
@@ -0,0 +1,83 @@
+package wildme.org.ratelimiter.window;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Reads back what SnapshotWriter wrote, refilling one reused buffer from the file as it goes.
+public class SnapshotReader {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).flip();
+
+    public SnapshotReader(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public int getInt() throws IOException {
+        ensureAvailable(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    public long getLong() throws IOException {
+        ensureAvailable(Long.BYTES);
+        return buffer.getLong();
+    }
+
+    public String getString() throws IOException {
+        var bytes = new byte[getInt()];
+        for (int offset = 0; offset < bytes.length; ) {
+            ensureAvailable(1);
+            var length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.get(bytes, offset, length);
+            offset += length;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public void getLongs(long[] values, int offset, int length) throws IOException {
+        for (int end = offset + length; offset < end; ) {
+            ensureAvailable(Long.BYTES);
+            var chunk = Math.min(buffer.remaining() / Long.BYTES, end - offset);
+            buffer.asLongBuffer().get(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Long.BYTES);
+            offset += chunk;
+        }
+    }
+
+    public void getInts(int[] values, int offset, int length) throws IOException {
+        for (int end = offset + length; offset < end; ) {
+            ensureAvailable(Integer.BYTES);
+            var chunk = Math.min(buffer.remaining() / Integer.BYTES, end - offset);
+            buffer.asIntBuffer().get(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Integer.BYTES);
+            offset += chunk;
+        }
+    }
+
+    public void skip(long bytes) throws IOException {
+        if (bytes <= buffer.remaining()) {
+            buffer.position(buffer.position() + (int) bytes);
+            return;
+        }
+        channel.position(channel.position() + bytes - buffer.remaining());
+        buffer.clear().flip();
+    }
+
+    private void ensureAvailable(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Truncated rate limiter snapshot");
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,88 @@
+package wildme.org.ratelimiter.window;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+// Sequential big-endian writes to a snapshot file through one reused buffer; arrays are copied in bulk.
+public class SnapshotWriter {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public SnapshotWriter(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    public void putInt(int value) throws IOException {
+        ensureRemaining(Integer.BYTES);
+        buffer.putInt(value);
+    }
+
+    public void putLong(long value) throws IOException {
+        ensureRemaining(Long.BYTES);
+        buffer.putLong(value);
+    }
+
+    public void putString(String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        for (int offset = 0; offset < bytes.length; ) {
+            ensureRemaining(1);
+            var length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    public void putLongs(long[] values, int offset, int length) throws IOException {
+        for (int end = offset + length; offset < end; ) {
+            ensureRemaining(Long.BYTES);
+            var chunk = Math.min(buffer.remaining() / Long.BYTES, end - offset);
+            buffer.asLongBuffer().put(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Long.BYTES);
+            offset += chunk;
+        }
+    }
+
+    public void putInts(int[] values, int offset, int length) throws IOException {
+        for (int end = offset + length; offset < end; ) {
+            ensureRemaining(Integer.BYTES);
+            var chunk = Math.min(buffer.remaining() / Integer.BYTES, end - offset);
+            buffer.asIntBuffer().put(values, offset, chunk);
+            buffer.position(buffer.position() + chunk * Integer.BYTES);
+            offset += chunk;
+        }
+    }
+
+    // Position in the file of the next value written.
+    public long position() throws IOException {
+        return channel.position() + buffer.position();
+    }
+
+    // Overwrites a long written earlier, like a section length only known once the section is written.
+    public void patchLong(long position, long value) throws IOException {
+        flush();
+        var patch = ByteBuffer.allocate(Long.BYTES).putLong(value).flip();
+        while (patch.hasRemaining()) {
+            channel.write(patch, position + patch.position());
+        }
+    }
+
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+}
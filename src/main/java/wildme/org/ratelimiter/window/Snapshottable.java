@@ -0,0 +1,15 @@
+package wildme.org.ratelimiter.window;
+
+import java.io.IOException;
+
+// A counter whose state can be written to a snapshot and restored from it after a restart.
+public interface Snapshottable {
+
+    // Identifies the layout and the settings the state depends on; the state of another format is not restored.
+    String snapshotFormat();
+
+    void writeSnapshot(SnapshotWriter writer) throws IOException;
+
+    // Replaces the current state. Nothing is checked for expiry here, stale buckets are cleared when next touched.
+    void readSnapshot(SnapshotReader reader) throws IOException;
+}
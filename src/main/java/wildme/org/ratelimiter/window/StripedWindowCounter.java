@@ -0,0 +1,333 @@
+package wildme.org.ratelimiter.window;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Bucketed sliding window counters for a bounded number of keys, kept in primitive arrays.
+ * <p>
+ * Keys are reduced to a 64-bit hash whose high bits pick a stripe and low bits a slot in the open addressing table of
+ * that stripe, so no object is allocated per key or per event. Each stripe is guarded by its own monitor, and its table
+ * starts small and doubles up to what max-keys needs. When a stripe is full, keys idle for longer than the window are
+ * swept out. A key still live is never dropped: if none has expired, the new key is counted in an overflow ring shared
+ * by the stripe, which fails closed since every key overflowing there is charged the events of all of them. A key that
+ * later gets a slot starts from the overflow ring, so its events counted there are not lost either.
+ */
+public class StripedWindowCounter implements KeyedWindowCounter, Snapshottable, BoundedCounter {
+
+    private static final double LOAD_FACTOR = 0.75;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final long windowMillis;
+    private final long bucketMillis;
+    private final int ringSize;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public StripedWindowCounter(Duration window, int buckets, int maxKeys, int stripeCount) {
+        this.windowMillis = window.toMillis();
+        this.bucketMillis = Math.max(1, windowMillis / buckets);
+        // One extra bucket for the partially elapsed oldest one, like BucketedWindowCounter.
+        this.ringSize = buckets + 1;
+        var stripeCountPowerOfTwo = nextPowerOfTwo(stripeCount);
+        this.stripes = new Stripe[stripeCountPowerOfTwo];
+        this.stripeMask = stripeCountPowerOfTwo - 1;
+        var maxKeysPerStripe = Math.max(1, maxKeys / stripeCountPowerOfTwo);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(maxKeysPerStripe);
+        }
+    }
+
+    @Override
+    public int incrementAndCount(String key, long nowMillis, int limit) {
+        var hash = KeyHash.hash64(key);
+        var stripe = stripes[(int) (hash >>> 48) & stripeMask];
+        synchronized (stripe) {
+            return stripe.incrementAndCount(hash, nowMillis);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    // Events counted in an overflow ring because their stripe was full of live keys.
+    @Override
+    public long overflows() {
+        long overflows = 0;
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                overflows += stripe.overflows;
+            }
+        }
+        return overflows;
+    }
+
+    // Allocated bytes of the key tables and overflow rings, which is all the memory this counter uses.
+    public long memoryBytes() {
+        long bytes = 0;
+        for (var stripe : stripes) {
+            synchronized (stripe) {
+                bytes += (long) stripe.hashes.length * (Long.BYTES * 3 + Integer.BYTES * ringSize);
+                bytes += (long) Integer.BYTES * ringSize;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String snapshotFormat() {
+        return "striped:2:bucket-millis=" + bucketMillis + ":ring=" + ringSize + ":stripes=" + stripes.length;
+    }
+
+    // Each stripe's keys are copied out under its monitor and written once it is released, so the file is never
+    // written while holding a stripe.
+    @Override
+    public void writeSnapshot(SnapshotWriter writer) throws IOException {
+        for (var stripe : stripes) {
+            StripeCopy copy;
+            synchronized (stripe) {
+                copy = stripe.compactCopy();
+            }
+            var size = copy.hashes().length;
+            writer.putInt(size);
+            writer.putLongs(copy.hashes(), 0, size);
+            writer.putLongs(copy.headBuckets(), 0, size);
+            writer.putLongs(copy.lastSeen(), 0, size);
+            writer.putInts(copy.counts(), 0, size * ringSize);
+            writer.putLong(copy.overflowHead());
+            writer.putInts(copy.overflowCounts(), 0, ringSize);
+        }
+    }
+
+    // Every stripe is read before any is restored, so a truncated or corrupted section leaves the counter as it was.
+    @Override
+    public void readSnapshot(SnapshotReader reader) throws IOException {
+        var copies = new StripeCopy[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            var size = reader.getInt();
+            var hashes = new long[size];
+            var headBuckets = new long[size];
+            var lastSeen = new long[size];
+            var counts = new int[size * ringSize];
+            var overflowCounts = new int[ringSize];
+            reader.getLongs(hashes, 0, size);
+            reader.getLongs(headBuckets, 0, size);
+            reader.getLongs(lastSeen, 0, size);
+            reader.getInts(counts, 0, size * ringSize);
+            var overflowHead = reader.getLong();
+            reader.getInts(overflowCounts, 0, ringSize);
+            copies[i] = new StripeCopy(hashes, headBuckets, lastSeen, counts, overflowHead, overflowCounts);
+        }
+        for (int i = 0; i < stripes.length; i++) {
+            synchronized (stripes[i]) {
+                stripes[i].restore(copies[i]);
+            }
+        }
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private final class Stripe {
+
+        private final int maxSize;
+        private final int maxCapacity;
+        private long[] hashes;
+        private long[] headBuckets;
+        private long[] lastSeen;
+        private int[] counts;
+        private int mask;
+        private int size;
+        private long nextSweepMillis;
+        private long overflowHead;
+        private int[] overflowCounts;
+        private long overflows;
+
+        private Stripe(int maxSize) {
+            this.maxSize = maxSize;
+            this.maxCapacity = capacityFor(maxSize);
+            this.overflowCounts = new int[ringSize];
+            allocate(Math.min(INITIAL_CAPACITY, maxCapacity));
+        }
+
+        private StripeCopy compactCopy() {
+            var copyHashes = new long[size];
+            var copyHeadBuckets = new long[size];
+            var copyLastSeen = new long[size];
+            var copyCounts = new int[size * ringSize];
+            var copied = 0;
+            for (int slot = 0; slot < hashes.length; slot++) {
+                if (hashes[slot] != 0) {
+                    copyHashes[copied] = hashes[slot];
+                    copyHeadBuckets[copied] = headBuckets[slot];
+                    copyLastSeen[copied] = lastSeen[slot];
+                    System.arraycopy(counts, slot * ringSize, copyCounts, copied * ringSize, ringSize);
+                    copied++;
+                }
+            }
+            return new StripeCopy(copyHashes, copyHeadBuckets, copyLastSeen, copyCounts, overflowHead,
+                    overflowCounts.clone());
+        }
+
+        // Keys past maxSize, in case the snapshot was taken with a larger max-keys, are added to the overflow ring
+        // rather than dropped.
+        private void restore(StripeCopy copy) {
+            var restored = Math.min(copy.hashes().length, maxSize);
+            allocate(Math.max(Math.min(INITIAL_CAPACITY, maxCapacity), capacityFor(restored)));
+            nextSweepMillis = 0;
+            overflowHead = copy.overflowHead();
+            overflowCounts = copy.overflowCounts();
+            for (int i = 0; i < copy.hashes().length; i++) {
+                if (i < restored) {
+                    var slot = insert(copy.hashes()[i], copy.headBuckets()[i]);
+                    lastSeen[slot] = copy.lastSeen()[i];
+                    System.arraycopy(copy.counts(), i * ringSize, counts, slot * ringSize, ringSize);
+                } else {
+                    overflowHead = addRing(copy.counts(), i * ringSize, copy.headBuckets()[i]);
+                }
+            }
+        }
+
+        private int capacityFor(int keys) {
+            return nextPowerOfTwo((int) Math.ceil(keys / LOAD_FACTOR) + 1);
+        }
+
+        private void allocate(int capacity) {
+            hashes = new long[capacity];
+            headBuckets = new long[capacity];
+            lastSeen = new long[capacity];
+            counts = new int[capacity * ringSize];
+            mask = capacity - 1;
+            size = 0;
+        }
+
+        private int incrementAndCount(long hash, long nowMillis) {
+            var currentBucket = nowMillis / bucketMillis;
+            overflowHead = advance(overflowCounts, 0, overflowHead, currentBucket);
+            var slot = find(hash);
+            if (slot < 0) {
+                if (size >= maxSize && nowMillis >= nextSweepMillis) {
+                    sweep(nowMillis);
+                }
+                if (size >= maxSize) {
+                    overflows++;
+                    return record(overflowCounts, 0, overflowHead, currentBucket);
+                }
+                if (size + 1 > hashes.length * LOAD_FACTOR && hashes.length < maxCapacity) {
+                    rehash(hashes.length * 2, nowMillis, false);
+                }
+                slot = insert(hash, Math.max(currentBucket, overflowHead));
+                // The key may have overflowed before, so it is charged whatever the overflow ring still holds.
+                System.arraycopy(overflowCounts, 0, counts, slot * ringSize, ringSize);
+            }
+            headBuckets[slot] = advance(counts, slot * ringSize, headBuckets[slot], currentBucket);
+            lastSeen[slot] = Math.max(lastSeen[slot], nowMillis);
+            return record(counts, slot * ringSize, headBuckets[slot], currentBucket);
+        }
+
+        private int record(int[] ring, int ringStart, long head, long currentBucket) {
+            // Late events older than the ring are counted in the oldest bucket still kept.
+            var bucket = Math.max(currentBucket, head - ringSize + 1);
+            ring[ringStart + (int) (bucket % ringSize)]++;
+            var count = 0;
+            for (int i = ringStart; i < ringStart + ringSize; i++) {
+                count += ring[i];
+            }
+            return count;
+        }
+
+        // Adds a key's ring to the overflow ring once both are moved to the later head, and returns that head.
+        private long addRing(int[] ring, int ringStart, long head) {
+            var newHead = Math.max(head, overflowHead);
+            advance(ring, ringStart, head, newHead);
+            advance(overflowCounts, 0, overflowHead, newHead);
+            for (int i = 0; i < ringSize; i++) {
+                overflowCounts[i] += ring[ringStart + i];
+            }
+            return newHead;
+        }
+
+        private int find(long hash) {
+            for (int slot = (int) hash & mask; hashes[slot] != 0; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private int insert(long hash, long currentBucket) {
+            var slot = (int) hash & mask;
+            while (hashes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            headBuckets[slot] = currentBucket;
+            lastSeen[slot] = 0;
+            var ringStart = slot * ringSize;
+            for (int i = ringStart; i < ringStart + ringSize; i++) {
+                counts[i] = 0;
+            }
+            size++;
+            return slot;
+        }
+
+        // Moves the head of a ring to the current bucket, clearing the buckets that fell out of the window, and
+        // returns the new head.
+        private long advance(int[] ring, int ringStart, long head, long currentBucket) {
+            if (currentBucket <= head) {
+                return head;
+            }
+            var cleared = Math.min(currentBucket - head, ringSize);
+            for (long bucket = currentBucket - cleared + 1; bucket <= currentBucket; bucket++) {
+                ring[ringStart + (int) (bucket % ringSize)] = 0;
+            }
+            return currentBucket;
+        }
+
+        // Rebuilds the table without the keys whose whole ring has expired.
+        private void sweep(long nowMillis) {
+            var oldestSurvivor = rehash(hashes.length, nowMillis, true);
+            // No key can expire before the oldest survivor does, so there is no point sweeping earlier.
+            nextSweepMillis = oldestSurvivor == Long.MAX_VALUE ? nowMillis : oldestSurvivor + windowMillis + bucketMillis;
+        }
+
+        // Copies the keys into a table of the given capacity, optionally leaving the expired ones out, and returns
+        // the oldest lastSeen copied.
+        private long rehash(int capacity, long nowMillis, boolean dropExpired) {
+            var oldHashes = hashes;
+            var oldHeadBuckets = headBuckets;
+            var oldLastSeen = lastSeen;
+            var oldCounts = counts;
+            allocate(capacity);
+            var oldestSurvivor = Long.MAX_VALUE;
+            for (int oldSlot = 0; oldSlot < oldHashes.length; oldSlot++) {
+                if (oldHashes[oldSlot] == 0 || dropExpired && isExpired(oldLastSeen[oldSlot], nowMillis)) {
+                    continue;
+                }
+                var slot = insert(oldHashes[oldSlot], oldHeadBuckets[oldSlot]);
+                lastSeen[slot] = oldLastSeen[oldSlot];
+                System.arraycopy(oldCounts, oldSlot * ringSize, counts, slot * ringSize, ringSize);
+                oldestSurvivor = Math.min(oldestSurvivor, oldLastSeen[oldSlot]);
+            }
+            return oldestSurvivor;
+        }
+
+        private boolean isExpired(long lastSeenMillis, long nowMillis) {
+            return lastSeenMillis + windowMillis + bucketMillis <= nowMillis;
+        }
+    }
+
+    // The keys of a stripe packed from index 0, without the empty slots, and its overflow ring.
+    private record StripeCopy(long[] hashes, long[] headBuckets, long[] lastSeen, int[] counts, long overflowHead,
+            int[] overflowCounts) {
+    }
+}
@@ -0,0 +1,15 @@
+package wildme.org.ratelimiter.window;
+
+import java.io.IOException;
+
+public interface WindowCounter {
+
+    // Records one event at the given instant and returns the number of events in the window ending at it. Counts are
+    // exact at least up to limit + 1, which is all it takes to tell the limit is exceeded; the limit may change
+    // from one call to the next.
+    int incrementAndCount(long nowMillis, int limit);
+
+    void writeSnapshot(SnapshotWriter writer) throws IOException;
+
+    void readSnapshot(SnapshotReader reader) throws IOException;
+}
@@ -0,0 +1,74 @@
+package wildme.org.ratelimiter.window;
+
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class WindowCounterFactory {
+
+    private final SlidingWindowAlgorithm algorithm;
+    private final int buckets;
+    private final KeyStoreType keyStore;
+    private final int maxKeys;
+    private final int stripes;
+    private final boolean sketchEnabled;
+    private final int sketchBuckets;
+    private final double sketchEpsilon;
+    private final double sketchDelta;
+    private final double sketchTrackingFraction;
+    private final int sketchMaxTrackedKeys;
+
+    public WindowCounterFactory(
+            @Value("${rate-limiter.in-memory.algorithm:sliding-log}")
+                    SlidingWindowAlgorithm algorithm,
+            @Value("${rate-limiter.in-memory.buckets:60}")
+                    int buckets,
+            @Value("${rate-limiter.in-memory.key-store:concurrent-map}")
+                    KeyStoreType keyStore,
+            @Value("${rate-limiter.in-memory.max-keys:200000}")
+                    int maxKeys,
+            @Value("${rate-limiter.in-memory.stripes:64}")
+                    int stripes,
+            @Value("${rate-limiter.in-memory.sketch.enabled:false}")
+                    boolean sketchEnabled,
+            @Value("${rate-limiter.in-memory.sketch.buckets:12}")
+                    int sketchBuckets,
+            @Value("${rate-limiter.in-memory.sketch.epsilon:0.0001}")
+                    double sketchEpsilon,
+            @Value("${rate-limiter.in-memory.sketch.delta:0.001}")
+                    double sketchDelta,
+            @Value("${rate-limiter.in-memory.sketch.tracking-fraction:0.5}")
+                    double sketchTrackingFraction,
+            @Value("${rate-limiter.in-memory.sketch.max-tracked-keys:100000}")
+                    int sketchMaxTrackedKeys) {
+        this.algorithm = algorithm;
+        this.buckets = buckets;
+        this.keyStore = keyStore;
+        this.maxKeys = maxKeys;
+        this.stripes = stripes;
+        this.sketchEnabled = sketchEnabled;
+        this.sketchBuckets = sketchBuckets;
+        this.sketchEpsilon = sketchEpsilon;
+        this.sketchDelta = sketchDelta;
+        this.sketchTrackingFraction = sketchTrackingFraction;
+        this.sketchMaxTrackedKeys = sketchMaxTrackedKeys;
+    }
+
+    public KeyedWindowCounter newKeyedCounter(Duration window) {
+        return switch (keyStore) {
+            case CONCURRENT_MAP -> new ConcurrentMapWindowCounter(window, algorithm, buckets);
+            // The striped store always uses bucket rings, the algorithm setting does not apply to it.
+            case STRIPED -> new StripedWindowCounter(window, buckets, maxKeys, stripes);
+        };
+    }
+
+    // For the long windows of high cardinality dimensions, where exact per-key state is the most expensive.
+    public KeyedWindowCounter newHeavyHitterCounter(Duration window) {
+        if (!sketchEnabled) {
+            return newKeyedCounter(window);
+        }
+        return new SketchPrefilteredWindowCounter(window, sketchBuckets, sketchEpsilon, sketchDelta,
+                sketchTrackingFraction, sketchMaxTrackedKeys);
+    }
+}
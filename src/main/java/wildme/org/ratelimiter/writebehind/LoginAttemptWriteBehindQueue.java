@@ -0,0 +1,140 @@
+package wildme.org.ratelimiter.writebehind;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.repository.LoginAttemptRepository;
+
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "rate-limiter.write-behind.enabled", havingValue = "true")
+public class LoginAttemptWriteBehindQueue {
+
+    private static final Duration OFFER_RETRY_DELAY = Duration.ofMillis(5);
+
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration offerTimeout;
+    private final Duration shutdownTimeout;
+    private final BlockingQueue<LoginAttempt> queue;
+    private final LoginAttemptRepository loginAttemptRepository;
+    private final Sinks.Many<Long> flushRequests = Sinks.many().multicast().directBestEffort();
+    private final Sinks.One<Boolean> stopRequest = Sinks.one();
+    private final Counter flushedAttempts;
+    private final Counter failedAttempts;
+    private final Counter droppedAttempts;
+    private Mono<Void> flushing;
+
+    public LoginAttemptWriteBehindQueue(
+            @Value("${rate-limiter.write-behind.batch-size:500}")
+                    int batchSize,
+            @Value("${rate-limiter.write-behind.flush-interval:1s}")
+                    Duration flushInterval,
+            @Value("${rate-limiter.write-behind.capacity:10000}")
+                    int capacity,
+            @Value("${rate-limiter.write-behind.offer-timeout:100ms}")
+                    Duration offerTimeout,
+            @Value("${rate-limiter.write-behind.shutdown-timeout:10s}")
+                    Duration shutdownTimeout,
+            LoginAttemptRepository loginAttemptRepository,
+            MeterRegistry meterRegistry) {
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.offerTimeout = offerTimeout;
+        this.shutdownTimeout = shutdownTimeout;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.loginAttemptRepository = loginAttemptRepository;
+        this.flushedAttempts = Counter.builder("ratelimiter.writebehind.flushed")
+                .description("Login attempts written to the database")
+                .register(meterRegistry);
+        this.failedAttempts = Counter.builder("ratelimiter.writebehind.failed")
+                .description("Login attempts lost because their batch insert failed")
+                .register(meterRegistry);
+        this.droppedAttempts = Counter.builder("ratelimiter.writebehind.dropped")
+                .description("Login attempts dropped because the queue stayed full")
+                .register(meterRegistry);
+        Gauge.builder("ratelimiter.writebehind.queue.size", queue, BlockingQueue::size)
+                .description("Login attempts waiting to be written")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        flushing = Flux.merge(Flux.interval(flushInterval, flushInterval), flushRequests.asFlux())
+                .takeUntilOther(stopRequest.asMono())
+                .onBackpressureDrop()
+                .concatMap(tick -> flush())
+                .then()
+                .cache();
+        flushing.subscribe();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        stopRequest.tryEmitValue(true);
+        // Let the in-flight batch finish, then write whatever is still queued.
+        flushing.then(flush())
+                .block(shutdownTimeout);
+    }
+
+    // Completes once the attempt is queued, which pushes back on callers while the database falls behind.
+    public Mono<Void> enqueue(LoginAttempt loginAttempt) {
+        return Mono.fromCallable(() -> offer(loginAttempt))
+                .filter(Boolean::booleanValue)
+                .repeatWhenEmpty(retries -> retries.delayElements(OFFER_RETRY_DELAY))
+                .timeout(offerTimeout)
+                .then()
+                .onErrorResume(TimeoutException.class, e -> {
+                    droppedAttempts.increment();
+                    return Mono.empty();
+                });
+    }
+
+    public Mono<Long> flush() {
+        return flushBatch()
+                .expand(flushed -> flushed < batchSize ? Mono.empty() : flushBatch())
+                .reduce(0L, Long::sum);
+    }
+
+    private boolean offer(LoginAttempt loginAttempt) {
+        var queued = queue.offer(loginAttempt);
+        if (!queued || queue.size() >= batchSize) {
+            flushRequests.tryEmitNext(0L);
+        }
+        return queued;
+    }
+
+    private Mono<Long> flushBatch() {
+        return Mono.defer(() -> {
+            var batch = new ArrayList<LoginAttempt>(batchSize);
+            queue.drainTo(batch, batchSize);
+            if (batch.isEmpty()) {
+                return Mono.just(0L);
+            }
+            long size = batch.size();
+            return loginAttemptRepository.insertAll(batch)
+                    .doOnNext(flushedAttempts::increment)
+                    .thenReturn(size)
+                    .onErrorResume(e -> {
+                        log.warn("Failed to write {} login attempts", size, e);
+                        failedAttempts.increment(size);
+                        return Mono.just(0L);
+                    });
+        });
+    }
+}
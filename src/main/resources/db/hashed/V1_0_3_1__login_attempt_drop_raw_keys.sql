@@ -0,0 +1,179 @@
+-- Applied only with rate-limiter.database.key-encoding: hashed, after V1_0_3 added the hashed key columns. The raw
+-- text columns stay NULL with that encoding, so they and their indexes are dropped: a row then holds only the
+-- fixed-width keys, and an insert maintains three key indexes instead of six. Switching a database back to raw keys
+-- takes a new migration re-adding them.
+
+DROP INDEX IF EXISTS loginAttemptIpIndex;
+DROP INDEX IF EXISTS loginAttemptCookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptUsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH00IpIndex;
+DROP INDEX IF EXISTS loginAttemptH00CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH00UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H00 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H00 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H00 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH01IpIndex;
+DROP INDEX IF EXISTS loginAttemptH01CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH01UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H01 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H01 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H01 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH02IpIndex;
+DROP INDEX IF EXISTS loginAttemptH02CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH02UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H02 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H02 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H02 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH03IpIndex;
+DROP INDEX IF EXISTS loginAttemptH03CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH03UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H03 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H03 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H03 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH04IpIndex;
+DROP INDEX IF EXISTS loginAttemptH04CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH04UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H04 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H04 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H04 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH05IpIndex;
+DROP INDEX IF EXISTS loginAttemptH05CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH05UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H05 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H05 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H05 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH06IpIndex;
+DROP INDEX IF EXISTS loginAttemptH06CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH06UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H06 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H06 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H06 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH07IpIndex;
+DROP INDEX IF EXISTS loginAttemptH07CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH07UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H07 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H07 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H07 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH08IpIndex;
+DROP INDEX IF EXISTS loginAttemptH08CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH08UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H08 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H08 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H08 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH09IpIndex;
+DROP INDEX IF EXISTS loginAttemptH09CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH09UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H09 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H09 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H09 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH10IpIndex;
+DROP INDEX IF EXISTS loginAttemptH10CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH10UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H10 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H10 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H10 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH11IpIndex;
+DROP INDEX IF EXISTS loginAttemptH11CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH11UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H11 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H11 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H11 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH12IpIndex;
+DROP INDEX IF EXISTS loginAttemptH12CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH12UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H12 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H12 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H12 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH13IpIndex;
+DROP INDEX IF EXISTS loginAttemptH13CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH13UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H13 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H13 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H13 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH14IpIndex;
+DROP INDEX IF EXISTS loginAttemptH14CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH14UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H14 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H14 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H14 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH15IpIndex;
+DROP INDEX IF EXISTS loginAttemptH15CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH15UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H15 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H15 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H15 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH16IpIndex;
+DROP INDEX IF EXISTS loginAttemptH16CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH16UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H16 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H16 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H16 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH17IpIndex;
+DROP INDEX IF EXISTS loginAttemptH17CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH17UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H17 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H17 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H17 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH18IpIndex;
+DROP INDEX IF EXISTS loginAttemptH18CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH18UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H18 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H18 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H18 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH19IpIndex;
+DROP INDEX IF EXISTS loginAttemptH19CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH19UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H19 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H19 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H19 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH20IpIndex;
+DROP INDEX IF EXISTS loginAttemptH20CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH20UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H20 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H20 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H20 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH21IpIndex;
+DROP INDEX IF EXISTS loginAttemptH21CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH21UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H21 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H21 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H21 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH22IpIndex;
+DROP INDEX IF EXISTS loginAttemptH22CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH22UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H22 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H22 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H22 DROP COLUMN username;
+
+DROP INDEX IF EXISTS loginAttemptH23IpIndex;
+DROP INDEX IF EXISTS loginAttemptH23CookieIdIndex;
+DROP INDEX IF EXISTS loginAttemptH23UsernameIndex;
+ALTER TABLE LOGIN_ATTEMPT_H23 DROP COLUMN ip;
+ALTER TABLE LOGIN_ATTEMPT_H23 DROP COLUMN cookie_id;
+ALTER TABLE LOGIN_ATTEMPT_H23 DROP COLUMN username;
@@ -0,0 +1 @@
+CREATE INDEX loginAttemptCreatedAtIndex on LOGIN_ATTEMPT(created_at);
@@ -0,0 +1,314 @@
+-- Hour-of-day ring used by rate-limiter.database.layout: hourly. An attempt goes to the table of the hour it was
+-- created in, queries only read the hours their window spans, and expired hours are truncated as a whole.
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H00 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH00IpIndex on LOGIN_ATTEMPT_H00(ip, created_at);
+CREATE INDEX loginAttemptH00CookieIdIndex on LOGIN_ATTEMPT_H00(cookie_id, created_at);
+CREATE INDEX loginAttemptH00UsernameIndex on LOGIN_ATTEMPT_H00(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H01 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH01IpIndex on LOGIN_ATTEMPT_H01(ip, created_at);
+CREATE INDEX loginAttemptH01CookieIdIndex on LOGIN_ATTEMPT_H01(cookie_id, created_at);
+CREATE INDEX loginAttemptH01UsernameIndex on LOGIN_ATTEMPT_H01(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H02 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH02IpIndex on LOGIN_ATTEMPT_H02(ip, created_at);
+CREATE INDEX loginAttemptH02CookieIdIndex on LOGIN_ATTEMPT_H02(cookie_id, created_at);
+CREATE INDEX loginAttemptH02UsernameIndex on LOGIN_ATTEMPT_H02(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H03 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH03IpIndex on LOGIN_ATTEMPT_H03(ip, created_at);
+CREATE INDEX loginAttemptH03CookieIdIndex on LOGIN_ATTEMPT_H03(cookie_id, created_at);
+CREATE INDEX loginAttemptH03UsernameIndex on LOGIN_ATTEMPT_H03(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H04 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH04IpIndex on LOGIN_ATTEMPT_H04(ip, created_at);
+CREATE INDEX loginAttemptH04CookieIdIndex on LOGIN_ATTEMPT_H04(cookie_id, created_at);
+CREATE INDEX loginAttemptH04UsernameIndex on LOGIN_ATTEMPT_H04(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H05 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH05IpIndex on LOGIN_ATTEMPT_H05(ip, created_at);
+CREATE INDEX loginAttemptH05CookieIdIndex on LOGIN_ATTEMPT_H05(cookie_id, created_at);
+CREATE INDEX loginAttemptH05UsernameIndex on LOGIN_ATTEMPT_H05(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H06 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH06IpIndex on LOGIN_ATTEMPT_H06(ip, created_at);
+CREATE INDEX loginAttemptH06CookieIdIndex on LOGIN_ATTEMPT_H06(cookie_id, created_at);
+CREATE INDEX loginAttemptH06UsernameIndex on LOGIN_ATTEMPT_H06(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H07 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH07IpIndex on LOGIN_ATTEMPT_H07(ip, created_at);
+CREATE INDEX loginAttemptH07CookieIdIndex on LOGIN_ATTEMPT_H07(cookie_id, created_at);
+CREATE INDEX loginAttemptH07UsernameIndex on LOGIN_ATTEMPT_H07(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H08 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH08IpIndex on LOGIN_ATTEMPT_H08(ip, created_at);
+CREATE INDEX loginAttemptH08CookieIdIndex on LOGIN_ATTEMPT_H08(cookie_id, created_at);
+CREATE INDEX loginAttemptH08UsernameIndex on LOGIN_ATTEMPT_H08(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H09 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH09IpIndex on LOGIN_ATTEMPT_H09(ip, created_at);
+CREATE INDEX loginAttemptH09CookieIdIndex on LOGIN_ATTEMPT_H09(cookie_id, created_at);
+CREATE INDEX loginAttemptH09UsernameIndex on LOGIN_ATTEMPT_H09(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H10 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH10IpIndex on LOGIN_ATTEMPT_H10(ip, created_at);
+CREATE INDEX loginAttemptH10CookieIdIndex on LOGIN_ATTEMPT_H10(cookie_id, created_at);
+CREATE INDEX loginAttemptH10UsernameIndex on LOGIN_ATTEMPT_H10(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H11 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH11IpIndex on LOGIN_ATTEMPT_H11(ip, created_at);
+CREATE INDEX loginAttemptH11CookieIdIndex on LOGIN_ATTEMPT_H11(cookie_id, created_at);
+CREATE INDEX loginAttemptH11UsernameIndex on LOGIN_ATTEMPT_H11(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H12 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH12IpIndex on LOGIN_ATTEMPT_H12(ip, created_at);
+CREATE INDEX loginAttemptH12CookieIdIndex on LOGIN_ATTEMPT_H12(cookie_id, created_at);
+CREATE INDEX loginAttemptH12UsernameIndex on LOGIN_ATTEMPT_H12(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H13 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH13IpIndex on LOGIN_ATTEMPT_H13(ip, created_at);
+CREATE INDEX loginAttemptH13CookieIdIndex on LOGIN_ATTEMPT_H13(cookie_id, created_at);
+CREATE INDEX loginAttemptH13UsernameIndex on LOGIN_ATTEMPT_H13(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H14 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH14IpIndex on LOGIN_ATTEMPT_H14(ip, created_at);
+CREATE INDEX loginAttemptH14CookieIdIndex on LOGIN_ATTEMPT_H14(cookie_id, created_at);
+CREATE INDEX loginAttemptH14UsernameIndex on LOGIN_ATTEMPT_H14(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H15 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH15IpIndex on LOGIN_ATTEMPT_H15(ip, created_at);
+CREATE INDEX loginAttemptH15CookieIdIndex on LOGIN_ATTEMPT_H15(cookie_id, created_at);
+CREATE INDEX loginAttemptH15UsernameIndex on LOGIN_ATTEMPT_H15(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H16 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH16IpIndex on LOGIN_ATTEMPT_H16(ip, created_at);
+CREATE INDEX loginAttemptH16CookieIdIndex on LOGIN_ATTEMPT_H16(cookie_id, created_at);
+CREATE INDEX loginAttemptH16UsernameIndex on LOGIN_ATTEMPT_H16(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H17 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH17IpIndex on LOGIN_ATTEMPT_H17(ip, created_at);
+CREATE INDEX loginAttemptH17CookieIdIndex on LOGIN_ATTEMPT_H17(cookie_id, created_at);
+CREATE INDEX loginAttemptH17UsernameIndex on LOGIN_ATTEMPT_H17(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H18 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH18IpIndex on LOGIN_ATTEMPT_H18(ip, created_at);
+CREATE INDEX loginAttemptH18CookieIdIndex on LOGIN_ATTEMPT_H18(cookie_id, created_at);
+CREATE INDEX loginAttemptH18UsernameIndex on LOGIN_ATTEMPT_H18(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H19 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH19IpIndex on LOGIN_ATTEMPT_H19(ip, created_at);
+CREATE INDEX loginAttemptH19CookieIdIndex on LOGIN_ATTEMPT_H19(cookie_id, created_at);
+CREATE INDEX loginAttemptH19UsernameIndex on LOGIN_ATTEMPT_H19(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H20 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH20IpIndex on LOGIN_ATTEMPT_H20(ip, created_at);
+CREATE INDEX loginAttemptH20CookieIdIndex on LOGIN_ATTEMPT_H20(cookie_id, created_at);
+CREATE INDEX loginAttemptH20UsernameIndex on LOGIN_ATTEMPT_H20(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H21 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH21IpIndex on LOGIN_ATTEMPT_H21(ip, created_at);
+CREATE INDEX loginAttemptH21CookieIdIndex on LOGIN_ATTEMPT_H21(cookie_id, created_at);
+CREATE INDEX loginAttemptH21UsernameIndex on LOGIN_ATTEMPT_H21(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H22 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH22IpIndex on LOGIN_ATTEMPT_H22(ip, created_at);
+CREATE INDEX loginAttemptH22CookieIdIndex on LOGIN_ATTEMPT_H22(cookie_id, created_at);
+CREATE INDEX loginAttemptH22UsernameIndex on LOGIN_ATTEMPT_H22(username, created_at);
+
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_H23 (
+    id         uuid default RANDOM_UUID(),
+    ip         text,
+    cookie_id  text,
+    username   text,
+    version    int,
+    created_at timestamp with time zone,
+    PRIMARY KEY(id)
+);
+CREATE INDEX loginAttemptH23IpIndex on LOGIN_ATTEMPT_H23(ip, created_at);
+CREATE INDEX loginAttemptH23CookieIdIndex on LOGIN_ATTEMPT_H23(cookie_id, created_at);
+CREATE INDEX loginAttemptH23UsernameIndex on LOGIN_ATTEMPT_H23(username, created_at);
@@ -0,0 +1,188 @@
+-- Compact keys used by rate-limiter.database.key-encoding: hashed. The ip as its address bytes and the cookie id and
+-- username as 64-bit keyed hashes, each indexed with created_at like the raw text columns they stand in for; those
+-- stay NULL with that encoding.
+
+ALTER TABLE LOGIN_ATTEMPT ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptIpBinIndex on LOGIN_ATTEMPT(ip_bin, created_at);
+CREATE INDEX loginAttemptCookieIdHashIndex on LOGIN_ATTEMPT(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptUsernameHashIndex on LOGIN_ATTEMPT(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H00 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H00 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H00 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH00IpBinIndex on LOGIN_ATTEMPT_H00(ip_bin, created_at);
+CREATE INDEX loginAttemptH00CookieIdHashIndex on LOGIN_ATTEMPT_H00(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH00UsernameHashIndex on LOGIN_ATTEMPT_H00(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H01 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H01 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H01 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH01IpBinIndex on LOGIN_ATTEMPT_H01(ip_bin, created_at);
+CREATE INDEX loginAttemptH01CookieIdHashIndex on LOGIN_ATTEMPT_H01(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH01UsernameHashIndex on LOGIN_ATTEMPT_H01(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H02 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H02 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H02 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH02IpBinIndex on LOGIN_ATTEMPT_H02(ip_bin, created_at);
+CREATE INDEX loginAttemptH02CookieIdHashIndex on LOGIN_ATTEMPT_H02(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH02UsernameHashIndex on LOGIN_ATTEMPT_H02(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H03 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H03 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H03 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH03IpBinIndex on LOGIN_ATTEMPT_H03(ip_bin, created_at);
+CREATE INDEX loginAttemptH03CookieIdHashIndex on LOGIN_ATTEMPT_H03(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH03UsernameHashIndex on LOGIN_ATTEMPT_H03(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H04 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H04 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H04 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH04IpBinIndex on LOGIN_ATTEMPT_H04(ip_bin, created_at);
+CREATE INDEX loginAttemptH04CookieIdHashIndex on LOGIN_ATTEMPT_H04(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH04UsernameHashIndex on LOGIN_ATTEMPT_H04(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H05 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H05 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H05 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH05IpBinIndex on LOGIN_ATTEMPT_H05(ip_bin, created_at);
+CREATE INDEX loginAttemptH05CookieIdHashIndex on LOGIN_ATTEMPT_H05(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH05UsernameHashIndex on LOGIN_ATTEMPT_H05(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H06 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H06 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H06 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH06IpBinIndex on LOGIN_ATTEMPT_H06(ip_bin, created_at);
+CREATE INDEX loginAttemptH06CookieIdHashIndex on LOGIN_ATTEMPT_H06(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH06UsernameHashIndex on LOGIN_ATTEMPT_H06(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H07 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H07 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H07 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH07IpBinIndex on LOGIN_ATTEMPT_H07(ip_bin, created_at);
+CREATE INDEX loginAttemptH07CookieIdHashIndex on LOGIN_ATTEMPT_H07(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH07UsernameHashIndex on LOGIN_ATTEMPT_H07(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H08 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H08 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H08 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH08IpBinIndex on LOGIN_ATTEMPT_H08(ip_bin, created_at);
+CREATE INDEX loginAttemptH08CookieIdHashIndex on LOGIN_ATTEMPT_H08(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH08UsernameHashIndex on LOGIN_ATTEMPT_H08(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H09 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H09 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H09 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH09IpBinIndex on LOGIN_ATTEMPT_H09(ip_bin, created_at);
+CREATE INDEX loginAttemptH09CookieIdHashIndex on LOGIN_ATTEMPT_H09(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH09UsernameHashIndex on LOGIN_ATTEMPT_H09(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H10 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H10 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H10 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH10IpBinIndex on LOGIN_ATTEMPT_H10(ip_bin, created_at);
+CREATE INDEX loginAttemptH10CookieIdHashIndex on LOGIN_ATTEMPT_H10(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH10UsernameHashIndex on LOGIN_ATTEMPT_H10(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H11 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H11 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H11 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH11IpBinIndex on LOGIN_ATTEMPT_H11(ip_bin, created_at);
+CREATE INDEX loginAttemptH11CookieIdHashIndex on LOGIN_ATTEMPT_H11(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH11UsernameHashIndex on LOGIN_ATTEMPT_H11(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H12 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H12 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H12 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH12IpBinIndex on LOGIN_ATTEMPT_H12(ip_bin, created_at);
+CREATE INDEX loginAttemptH12CookieIdHashIndex on LOGIN_ATTEMPT_H12(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH12UsernameHashIndex on LOGIN_ATTEMPT_H12(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H13 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H13 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H13 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH13IpBinIndex on LOGIN_ATTEMPT_H13(ip_bin, created_at);
+CREATE INDEX loginAttemptH13CookieIdHashIndex on LOGIN_ATTEMPT_H13(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH13UsernameHashIndex on LOGIN_ATTEMPT_H13(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H14 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H14 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H14 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH14IpBinIndex on LOGIN_ATTEMPT_H14(ip_bin, created_at);
+CREATE INDEX loginAttemptH14CookieIdHashIndex on LOGIN_ATTEMPT_H14(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH14UsernameHashIndex on LOGIN_ATTEMPT_H14(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H15 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H15 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H15 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH15IpBinIndex on LOGIN_ATTEMPT_H15(ip_bin, created_at);
+CREATE INDEX loginAttemptH15CookieIdHashIndex on LOGIN_ATTEMPT_H15(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH15UsernameHashIndex on LOGIN_ATTEMPT_H15(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H16 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H16 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H16 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH16IpBinIndex on LOGIN_ATTEMPT_H16(ip_bin, created_at);
+CREATE INDEX loginAttemptH16CookieIdHashIndex on LOGIN_ATTEMPT_H16(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH16UsernameHashIndex on LOGIN_ATTEMPT_H16(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H17 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H17 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H17 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH17IpBinIndex on LOGIN_ATTEMPT_H17(ip_bin, created_at);
+CREATE INDEX loginAttemptH17CookieIdHashIndex on LOGIN_ATTEMPT_H17(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH17UsernameHashIndex on LOGIN_ATTEMPT_H17(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H18 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H18 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H18 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH18IpBinIndex on LOGIN_ATTEMPT_H18(ip_bin, created_at);
+CREATE INDEX loginAttemptH18CookieIdHashIndex on LOGIN_ATTEMPT_H18(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH18UsernameHashIndex on LOGIN_ATTEMPT_H18(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H19 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H19 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H19 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH19IpBinIndex on LOGIN_ATTEMPT_H19(ip_bin, created_at);
+CREATE INDEX loginAttemptH19CookieIdHashIndex on LOGIN_ATTEMPT_H19(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH19UsernameHashIndex on LOGIN_ATTEMPT_H19(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H20 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H20 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H20 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH20IpBinIndex on LOGIN_ATTEMPT_H20(ip_bin, created_at);
+CREATE INDEX loginAttemptH20CookieIdHashIndex on LOGIN_ATTEMPT_H20(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH20UsernameHashIndex on LOGIN_ATTEMPT_H20(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H21 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H21 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H21 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH21IpBinIndex on LOGIN_ATTEMPT_H21(ip_bin, created_at);
+CREATE INDEX loginAttemptH21CookieIdHashIndex on LOGIN_ATTEMPT_H21(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH21UsernameHashIndex on LOGIN_ATTEMPT_H21(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H22 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H22 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H22 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH22IpBinIndex on LOGIN_ATTEMPT_H22(ip_bin, created_at);
+CREATE INDEX loginAttemptH22CookieIdHashIndex on LOGIN_ATTEMPT_H22(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH22UsernameHashIndex on LOGIN_ATTEMPT_H22(username_hash, created_at);
+
+ALTER TABLE LOGIN_ATTEMPT_H23 ADD COLUMN ip_bin varbinary(16);
+ALTER TABLE LOGIN_ATTEMPT_H23 ADD COLUMN cookie_id_hash bigint;
+ALTER TABLE LOGIN_ATTEMPT_H23 ADD COLUMN username_hash bigint;
+CREATE INDEX loginAttemptH23IpBinIndex on LOGIN_ATTEMPT_H23(ip_bin, created_at);
+CREATE INDEX loginAttemptH23CookieIdHashIndex on LOGIN_ATTEMPT_H23(cookie_id_hash, created_at);
+CREATE INDEX loginAttemptH23UsernameHashIndex on LOGIN_ATTEMPT_H23(username_hash, created_at);
+
+-- Raw value of each encoded key, written once per key with rate-limiter.database.key-audit.enabled. A hash is stored
+-- as its 8 big-endian bytes.
+CREATE TABLE IF NOT EXISTS LOGIN_ATTEMPT_KEY (
+    key_field     varchar(16),
+    encoded       varbinary(16),
+    raw_value     text,
+    first_seen_at timestamp with time zone,
+    PRIMARY KEY(key_field, encoded)
+);
@@ -0,0 +1,29 @@
+-- KEYS: the sorted sets of the attempt's keys, one per dimension, all under the same {prefix} hash tag so that the
+-- script stays within one cluster hash slot
+-- ARGV: unique member for this attempt, the time in millis, then for each key the members to keep at most, its number
+-- of windows and the windows in millis, widest first
+-- Returns: the attempts in each window of each key, in that order, including this one, exact up to the members kept
+-- The time is passed by the caller, from its TimeSource, so the script is deterministic and replicates as is.
+local member = ARGV[1]
+local now = tonumber(ARGV[2])
+local counts = {}
+local arg = 3
+
+for k = 1, #KEYS do
+    local key = KEYS[k]
+    local maxMembers = tonumber(ARGV[arg])
+    local windows = tonumber(ARGV[arg + 1])
+    local widest = tonumber(ARGV[arg + 2])
+
+    redis.call('ZADD', key, now, member)
+    redis.call('ZREMRANGEBYSCORE', key, '-inf', now - widest)
+    -- Like SlidingLogWindowCounter, only the newest attempts are needed to tell a limit was passed.
+    redis.call('ZREMRANGEBYRANK', key, 0, -maxMembers - 1)
+    redis.call('PEXPIRE', key, widest)
+
+    for i = 1, windows do
+        counts[#counts + 1] = redis.call('ZCOUNT', key, '(' .. (now - tonumber(ARGV[arg + 1 + i])), '+inf')
+    end
+    arg = arg + 2 + windows
+end
+return counts
@@ -0,0 +1,43 @@
+package wildme.org.ratelimiter;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+public class MutableClock extends Clock {
+
+    private Instant instant = Instant.parse("2022-12-01T10:00:00Z");
+    private long nanos;
+
+    // Lets the duration pass: the clock and the nano time both move.
+    public void advance(Duration duration) {
+        instant = instant.plus(duration);
+        nanos += duration.toNanos();
+    }
+
+    // Steps the clock only, as NTP or an operator setting the clock does.
+    public void jump(Duration duration) {
+        instant = instant.plus(duration);
+    }
+
+    public long nanoTime() {
+        return nanos;
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return this;
+    }
+
+    @Override
+    public Instant instant() {
+        return instant;
+    }
+}
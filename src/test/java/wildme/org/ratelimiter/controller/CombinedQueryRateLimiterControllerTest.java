@@ -0,0 +1,7 @@
+package wildme.org.ratelimiter.controller;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "rate-limiter.database.query-mode=combined")
+class CombinedQueryRateLimiterControllerTest extends RateLimiterControllerTest {
+}
@@ -0,0 +1,146 @@
+package wildme.org.ratelimiter.controller;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import wildme.org.ratelimiter.RateLimiterApplication;
+import wildme.org.ratelimiter.controller.request.LoginAttemptBatchRequest;
+import wildme.org.ratelimiter.controller.request.LoginAttemptRequest;
+import wildme.org.ratelimiter.controller.response.LoginAttemptBatchResponse;
+
+// Runs the hashed key columns and the key audit MERGE against the real schema, not only as generated SQL. Its own
+// database, as the hashed migrations drop the raw key columns the other tests use.
+@ActiveProfiles("it")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(classes = RateLimiterApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "spring.r2dbc.url=r2dbc:h2:file:///./tmp/testdb-hashed",
+        "spring.flyway.url=jdbc:h2:file:./tmp/testdb-hashed",
+        "rate-limiter.database.key-encoding=hashed",
+        "rate-limiter.database.key-hash.secret=test-secret",
+        "rate-limiter.database.key-audit.enabled=true"})
+class HashedKeyRateLimiterControllerTest {
+
+    @Value("${rate-limiter.thresholds.attempts-per-ip-in-last-minute:5}")
+    private int attemptsPerIpInLastMinute;
+    @Value("${rate-limiter.thresholds.attempts-per-username-in-last-hour:10}")
+    private int attemptsPerUsernameInLastHour;
+
+    @Autowired
+    private WebTestClient client;
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @AfterEach
+    void tearDown() {
+        StepVerifier.create(databaseClient.sql("DELETE FROM LOGIN_ATTEMPT").then()
+                        .then(databaseClient.sql("DELETE FROM LOGIN_ATTEMPT_KEY").then()))
+                .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiter_ipv4ThresholdReached_returns429() {
+        expectLimitedAfterThreshold("10.0.0.1");
+    }
+
+    @Test
+    void loginRateLimiter_ipv6ThresholdReached_returns429() {
+        expectLimitedAfterThreshold("2001:db8::1");
+    }
+
+    @Test
+    void loginRateLimiter_ipNotAnAddressLiteral_countedByHash() {
+        expectLimitedAfterThreshold("zz:1");
+    }
+
+    @Test
+    void loginRateLimiter_hashedKeys_storedWithoutRawColumns() {
+        post(new LoginAttemptRequest("10.0.0.2", "cookie", "some_username"), HttpStatus.OK);
+
+        StepVerifier.create(count("SELECT COUNT(*) FROM LOGIN_ATTEMPT WHERE ip_bin IS NOT NULL "
+                        + "AND cookie_id_hash IS NOT NULL AND username_hash IS NOT NULL"))
+                .expectNext(1L)
+                .verifyComplete();
+        StepVerifier.create(count("SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS "
+                        + "WHERE TABLE_NAME LIKE 'LOGIN_ATTEMPT%' AND COLUMN_NAME IN ('IP', 'COOKIE_ID', 'USERNAME')"))
+                .expectNext(0L)
+                .verifyComplete();
+        StepVerifier.create(count("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES "
+                        + "WHERE TABLE_NAME = 'LOGIN_ATTEMPT' AND INDEX_NAME IN ('LOGINATTEMPTIPINDEX', "
+                        + "'LOGINATTEMPTCOOKIEIDINDEX', 'LOGINATTEMPTUSERNAMEINDEX')"))
+                .expectNext(0L)
+                .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiter_keyAudit_recordsEachKeyOnce() {
+        post(new LoginAttemptRequest("10.0.0.3", "cookie", "audited_username"), HttpStatus.OK);
+        post(new LoginAttemptRequest("10.0.0.3", "cookie", "audited_username"), HttpStatus.OK);
+
+        // The audit is written after the decision without being waited for.
+        StepVerifier.create(count("SELECT COUNT(*) FROM LOGIN_ATTEMPT_KEY WHERE raw_value IN "
+                        + "('10.0.0.3', 'cookie', 'audited_username')")
+                        .filter(keys -> keys == 3)
+                        .repeatWhenEmpty(50, repeats -> repeats.delayElements(Duration.ofMillis(100))))
+                .expectNext(3L)
+                .verifyComplete();
+        StepVerifier.create(count("SELECT COUNT(*) FROM LOGIN_ATTEMPT_KEY WHERE key_field = 'ip' "
+                        + "AND encoded = X'0a000003'"))
+                .expectNext(1L)
+                .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiterBatch_usernameThresholdReachedWithinBatch_returnsResultsInOrder() {
+        var attempts = new ArrayList<LoginAttemptRequest>();
+        var expected = new ArrayList<Boolean>();
+        for (int i = 0; i <= attemptsPerUsernameInLastHour; i++) {
+            attempts.add(new LoginAttemptRequest("10.1.0." + i, null, "batch_username"));
+            expected.add(i < attemptsPerUsernameInLastHour);
+        }
+
+        client.post()
+                .uri("/rate-limiter/login/batch")
+                .bodyValue(new LoginAttemptBatchRequest(attempts))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(LoginAttemptBatchResponse.class)
+                .isEqualTo(new LoginAttemptBatchResponse(List.copyOf(expected)));
+    }
+
+    private void expectLimitedAfterThreshold(String ip) {
+        for (int i = 0; i < attemptsPerIpInLastMinute; i++) {
+            post(new LoginAttemptRequest(ip, null, "username" + i), HttpStatus.OK);
+        }
+        post(new LoginAttemptRequest(ip, null, "other_username"), HttpStatus.TOO_MANY_REQUESTS);
+    }
+
+    private void post(LoginAttemptRequest request, HttpStatus status) {
+        client.post()
+                .uri("/rate-limiter/login")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(status);
+    }
+
+    private Mono<Long> count(String sql) {
+        return databaseClient.sql(sql)
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+}
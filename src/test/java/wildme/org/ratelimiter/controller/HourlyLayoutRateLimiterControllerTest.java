@@ -0,0 +1,121 @@
+package wildme.org.ratelimiter.controller;
+
+import java.time.Duration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpStatus;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import wildme.org.ratelimiter.MutableClock;
+import wildme.org.ratelimiter.RateLimiterApplication;
+import wildme.org.ratelimiter.controller.request.LoginAttemptRequest;
+import wildme.org.ratelimiter.retention.LoginAttemptRetentionJob;
+import wildme.org.ratelimiter.time.MonotonicTimeSource;
+import wildme.org.ratelimiter.time.TimeSource;
+
+// Runs the hour-of-day tables of V1_0_2 against the real schema, across an hour boundary, with a clock the test moves.
+@ActiveProfiles("it")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(classes = RateLimiterApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(properties = {
+        "rate-limiter.database.layout=hourly",
+        "rate-limiter.retention.interval=1h"})
+class HourlyLayoutRateLimiterControllerTest {
+
+    // 10:59:50, ten seconds before the boundary between the H10 and H11 tables.
+    private static final MutableClock CLOCK = new MutableClock();
+
+    static {
+        CLOCK.advance(Duration.ofMinutes(59).plusSeconds(50));
+    }
+
+    @Value("${rate-limiter.thresholds.attempts-per-username-in-last-hour:10}")
+    private int attemptsPerUsernameInLastHour;
+
+    @Autowired
+    private WebTestClient client;
+    @Autowired
+    private DatabaseClient databaseClient;
+    @Autowired
+    private LoginAttemptRetentionJob retentionJob;
+
+    @TestConfiguration
+    static class MutableTimeSourceConfiguration {
+
+        @Bean
+        @Primary
+        TimeSource mutableTimeSource() {
+            return new MonotonicTimeSource(CLOCK, CLOCK::nanoTime);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        StepVerifier.create(Flux.range(0, 24)
+                        .concatMap(hour -> databaseClient.sql(String.format("TRUNCATE TABLE LOGIN_ATTEMPT_H%02d", hour))
+                                .then()))
+                .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiter_attemptsAcrossHourBoundary_countedFromBothTablesAndExpiredTableTruncated() {
+        var before = attemptsPerUsernameInLastHour / 2;
+        for (int i = 0; i < before; i++) {
+            post(new LoginAttemptRequest("10.2.0." + i, null, "hourly_username"), HttpStatus.OK);
+        }
+        CLOCK.advance(Duration.ofSeconds(20));
+        for (int i = before; i < attemptsPerUsernameInLastHour; i++) {
+            post(new LoginAttemptRequest("10.2.0." + i, null, "hourly_username"), HttpStatus.OK);
+        }
+
+        // Only the attempts of the other hour make the username reach its threshold.
+        post(new LoginAttemptRequest("10.2.1.0", null, "hourly_username"), HttpStatus.TOO_MANY_REQUESTS);
+        expectCount("LOGIN_ATTEMPT_H10", before);
+        expectCount("LOGIN_ATTEMPT_H11", attemptsPerUsernameInLastHour - before + 1);
+        expectCount("LOGIN_ATTEMPT", 0);
+
+        // At 12:30:10 the H10 attempts are past the one hour max-age, the H11 ones are not yet.
+        CLOCK.advance(Duration.ofMinutes(90));
+        StepVerifier.create(retentionJob.purge())
+                .expectNext(0L)
+                .verifyComplete();
+
+        expectCount("LOGIN_ATTEMPT_H10", 0);
+        expectCount("LOGIN_ATTEMPT_H11", attemptsPerUsernameInLastHour - before + 1);
+        post(new LoginAttemptRequest("10.2.1.1", null, "hourly_username"), HttpStatus.OK);
+        expectCount("LOGIN_ATTEMPT_H12", 1);
+    }
+
+    private void expectCount(String table, long expected) {
+        StepVerifier.create(count("SELECT COUNT(*) FROM " + table + " WHERE username = 'hourly_username'"))
+                .expectNext(expected)
+                .verifyComplete();
+    }
+
+    private void post(LoginAttemptRequest request, HttpStatus status) {
+        client.post()
+                .uri("/rate-limiter/login")
+                .bodyValue(request)
+                .exchange()
+                .expectStatus()
+                .isEqualTo(status);
+    }
+
+    private Mono<Long> count(String sql) {
+        return databaseClient.sql(sql)
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+}
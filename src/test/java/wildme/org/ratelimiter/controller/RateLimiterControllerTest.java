@@ -1,23 +1,41 @@
 package wildme.org.ratelimiter.controller;
 
+import jakarta.validation.Validator;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.List;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 import wildme.org.ratelimiter.RateLimiterApplication;
+import wildme.org.ratelimiter.controller.request.LoginAttemptBatchRequest;
 import wildme.org.ratelimiter.controller.request.LoginAttemptRequest;
+import wildme.org.ratelimiter.controller.response.LoginAttemptBatchResponse;
+import wildme.org.ratelimiter.controller.response.LoginAttemptDecision;
 import wildme.org.ratelimiter.model.LoginAttempt;
 import wildme.org.ratelimiter.repository.LoginAttemptRepository;
+import wildme.org.ratelimiter.service.IRateLimiterService;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @ActiveProfiles("it")
+@AutoConfigureObservability
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 @SpringBootTest(classes = RateLimiterApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 class RateLimiterControllerTest {
@@ -35,6 +53,8 @@ class RateLimiterControllerTest {
     private WebTestClient client;
     @Autowired
     private LoginAttemptRepository repository;
+    @Autowired
+    private Validator validator;
 
     @AfterEach
     void tearDown() {
@@ -130,4 +150,155 @@ class RateLimiterControllerTest {
                 .expectStatus()
                 .isOk();
     }
-}
\ No newline at end of file
+
+    @Test
+    void loginRateLimiterBatch_cookieThresholdReachedWithinBatch_returnsResultsInOrder() {
+        var attempts = new ArrayList<LoginAttemptRequest>();
+        for (int i = 0; i <= attemptsPerCookieInLastTenSeconds; i++) {
+            attempts.add(new LoginAttemptRequest("ip" + i, "cookie", "username" + i));
+        }
+        attempts.add(new LoginAttemptRequest("ip", null, "username"));
+
+        var expected = new ArrayList<Boolean>();
+        for (int i = 0; i < attemptsPerCookieInLastTenSeconds; i++) {
+            expected.add(true);
+        }
+        expected.addAll(List.of(false, true));
+        client.post()
+                .uri("/rate-limiter/login/batch")
+                .bodyValue(new LoginAttemptBatchRequest(attempts))
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(LoginAttemptBatchResponse.class)
+                .isEqualTo(new LoginAttemptBatchResponse(expected));
+
+        StepVerifier.create(repository.count())
+                .expectNext((long) attempts.size())
+                .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiterBatch_invalidAttempt_returns400() {
+        client.post()
+                .uri("/rate-limiter/login/batch")
+                .bodyValue(new LoginAttemptBatchRequest(List.of(new LoginAttemptRequest("ip", null, ""))))
+                .exchange()
+                .expectStatus()
+                .isBadRequest();
+    }
+
+    @Test
+    void loginRateLimiterStream_cookieOverThreshold_decisionsInRequestOrder() {
+        var attempts = new ArrayList<LoginAttempt>();
+        for (int i = 0; i < attemptsPerCookieInLastTenSeconds; i++) {
+            attempts.add(LoginAttempt.builder().cookieId("cookie").build());
+        }
+        StepVerifier.create(repository.saveAll(attempts).collectList())
+                .expectNextMatches(x -> true)
+                .verifyComplete();
+        var requests = Flux.just(
+                new LoginAttemptRequest("ip1", "other-cookie", "username1"),
+                new LoginAttemptRequest("ip2", "cookie", "username2"),
+                new LoginAttemptRequest("ip3", "another-cookie", "username3"));
+
+        var decisions = client.post()
+                .uri("/rate-limiter/login/stream")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .body(requests, LoginAttemptRequest.class)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(LoginAttemptDecision.class)
+                .getResponseBody();
+
+        StepVerifier.create(decisions.map(LoginAttemptDecision::isAllowed))
+                .expectNext(true, false, true)
+                .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiterStream_slowDecision_laterAttemptsDecidedMeanwhileAndWrittenInOrder() {
+        var service = mock(IRateLimiterService.class);
+        Sinks.One<Boolean> slowDecision = Sinks.one();
+        when(service.loginRateLimiter("ip1", null, "username1")).thenReturn(slowDecision.asMono());
+        when(service.loginRateLimiter("ip2", null, "username2")).thenReturn(Mono.just(false));
+        var controller = new RateLimiterController(service, validator, 4);
+
+        StepVerifier.create(controller.loginRateLimiterStream(Flux.just(
+                        new LoginAttemptRequest("ip1", null, "username1"),
+                        new LoginAttemptRequest("ip2", null, "username2"))))
+                .then(() -> verify(service).loginRateLimiter("ip2", null, "username2"))
+                .then(() -> slowDecision.tryEmitValue(true))
+                .expectNext(new LoginAttemptDecision(true))
+                .expectNext(new LoginAttemptDecision(false))
+                .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiterStream_serviceFailsOnOneAttempt_deniedWithErrorAndStreamGoesOn() {
+        var service = mock(IRateLimiterService.class);
+        when(service.loginRateLimiter("ip1", null, "username1"))
+                .thenReturn(Mono.error(new IllegalStateException("database down")));
+        when(service.loginRateLimiter("ip2", null, "username2")).thenReturn(Mono.just(true));
+        var controller = new RateLimiterController(service, validator, 4);
+
+        StepVerifier.create(controller.loginRateLimiterStream(Flux.just(
+                        new LoginAttemptRequest("ip1", null, "username1"),
+                        new LoginAttemptRequest("ip2", null, "username2"))))
+                .expectNext(new LoginAttemptDecision(false, "rate limiter error"))
+                .expectNext(new LoginAttemptDecision(true))
+                .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiterStream_invalidAttemptInTheMiddle_deniedWithErrorAndStreamGoesOn() {
+        var attempts = Flux.just(
+                new LoginAttemptRequest("ip1", null, "username1"),
+                new LoginAttemptRequest("ip2", null, " "),
+                new LoginAttemptRequest("ip3", null, "username3"));
+
+        var decisions = client.post()
+                .uri("/rate-limiter/login/stream")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .body(attempts, LoginAttemptRequest.class)
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .returnResult(LoginAttemptDecision.class)
+                .getResponseBody();
+
+        StepVerifier.create(decisions)
+                .expectNext(new LoginAttemptDecision(true))
+                .expectNextMatches(decision -> !decision.isAllowed() && decision.getError().startsWith("username "))
+                .expectNext(new LoginAttemptDecision(true))
+                .verifyComplete();
+        StepVerifier.create(repository.count())
+                .expectNext(2L)
+                .verifyComplete();
+    }
+
+    @Test
+    void prometheus_afterLogin_exposesDecisionsWithoutRawKeys() {
+        client.post()
+                .uri("/rate-limiter/login")
+                .bodyValue(new LoginAttemptRequest("ip", "cookie", "some_username"))
+                .exchange()
+                .expectStatus()
+                .isOk();
+
+        client.get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus()
+                .isOk()
+                .expectBody(String.class)
+                .value(body -> {
+                    assertTrue(body.contains("ratelimiter_login_decisions_total"));
+                    assertTrue(body.contains("ratelimiter_login_stage_seconds"));
+                    assertFalse(body.contains("some_username"));
+                });
+    }
+}
@@ -0,0 +1,50 @@
+package wildme.org.ratelimiter.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import wildme.org.ratelimiter.service.RateLimiterPolicyHolder;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+class RateLimiterPolicyEndpointTest {
+
+    private final RateLimiterPolicyHolder policyHolder = mock(RateLimiterPolicyHolder.class);
+
+    @Test
+    void create_notExposedOverHttp_starts() {
+        var environment = new MockEnvironment()
+                .withProperty("management.endpoints.web.exposure.include", "health,prometheus");
+
+        assertDoesNotThrow(() -> new RateLimiterPolicyEndpoint(policyHolder, environment));
+    }
+
+    @Test
+    void create_exposedOnLoginApiPort_refusesToStart() {
+        var environment = new MockEnvironment()
+                .withProperty("management.endpoints.web.exposure.include", "health,ratelimiterpolicy");
+
+        assertThrows(IllegalStateException.class, () -> new RateLimiterPolicyEndpoint(policyHolder, environment));
+    }
+
+    @Test
+    void create_allExposedOnSameExplicitPort_refusesToStart() {
+        var environment = new MockEnvironment()
+                .withProperty("management.endpoints.web.exposure.include", "*")
+                .withProperty("server.port", "9090")
+                .withProperty("management.server.port", "9090");
+
+        assertThrows(IllegalStateException.class, () -> new RateLimiterPolicyEndpoint(policyHolder, environment));
+    }
+
+    @Test
+    void create_exposedOnSeparateManagementPort_starts() {
+        var environment = new MockEnvironment()
+                .withProperty("management.endpoints.web.exposure.include", "health,ratelimiterpolicy")
+                .withProperty("management.server.port", "8081")
+                .withProperty("management.server.address", "127.0.0.1");
+
+        assertDoesNotThrow(() -> new RateLimiterPolicyEndpoint(policyHolder, environment));
+    }
+}
@@ -0,0 +1,148 @@
+package wildme.org.ratelimiter.denycache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import wildme.org.ratelimiter.MutableClock;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.repository.LoginAttemptRepository;
+import wildme.org.ratelimiter.rule.RuleDimension;
+import wildme.org.ratelimiter.time.MonotonicTimeSource;
+import wildme.org.ratelimiter.time.TimeSource;
+import wildme.org.ratelimiter.writebehind.LoginAttemptWriteBehindQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BlockedKeyCacheTest {
+
+    private static final RuleDimension IP = RuleDimension.parse("ip");
+    private static final RuleDimension USERNAME = RuleDimension.parse("username");
+
+    private final MutableClock clock = new MutableClock();
+    private final TimeSource timeSource = new MonotonicTimeSource(clock, clock::nanoTime);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    @Mock
+    private LoginAttemptRepository repository;
+    @Mock
+    private LoginAttemptWriteBehindQueue writeBehindQueue;
+
+    private BlockedKeyCache cache(boolean recordAttempts, Optional<LoginAttemptWriteBehindQueue> writeBehindQueue) {
+        return new BlockedKeyCache(1000, recordAttempts, 2, writeBehindQueue, repository, timeSource,
+                meterRegistry);
+    }
+
+    @Test
+    void isBlocked_blockedKey_blockedUntilGivenInstant() {
+        var cache = cache(false, Optional.empty());
+        cache.block(USERNAME, List.of("username"), clock.millis() + Duration.ofMinutes(5).toMillis());
+
+        assertTrue(cache.isBlocked(USERNAME, List.of("username")));
+        assertFalse(cache.isBlocked(USERNAME, List.of("other-username")));
+        assertFalse(cache.isBlocked(IP, List.of("username")));
+
+        clock.advance(Duration.ofMinutes(5));
+
+        assertFalse(cache.isBlocked(USERNAME, List.of("username")));
+    }
+
+    @Test
+    void block_laterInstant_extendsBlock() {
+        var cache = cache(false, Optional.empty());
+        var now = clock.millis();
+        cache.block(IP, List.of("ip"), now + Duration.ofSeconds(10).toMillis());
+        cache.block(IP, List.of("ip"), now + Duration.ofMinutes(1).toMillis());
+        cache.block(IP, List.of("ip"), now + Duration.ofSeconds(5).toMillis());
+
+        clock.advance(Duration.ofSeconds(30));
+
+        assertTrue(cache.isBlocked(IP, List.of("ip")));
+    }
+
+    @Test
+    void block_instantNotInFuture_notCached() {
+        var cache = cache(false, Optional.empty());
+        cache.block(IP, List.of("ip"), clock.millis());
+
+        assertFalse(cache.isBlocked(IP, List.of("ip")));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void isBlocked_compositeDimension_wholeKeyMatched() {
+        var cache = cache(false, Optional.empty());
+        var ipAndUsername = RuleDimension.parse("ip+username");
+        cache.block(ipAndUsername, List.of("ip", "username"), clock.millis() + Duration.ofMinutes(1).toMillis());
+
+        assertTrue(cache.isBlocked(ipAndUsername, List.of("ip", "username")));
+        assertFalse(cache.isBlocked(ipAndUsername, List.of("ip", "other-username")));
+        assertFalse(cache.isBlocked(IP, List.of("ip")));
+    }
+
+    @Test
+    void record_writeBehindEnabled_enqueuesAttempt() {
+        var cache = cache(true, Optional.of(writeBehindQueue));
+        var loginAttempt = LoginAttempt.builder().ip("ip").username("username").build();
+        when(writeBehindQueue.enqueue(any())).thenReturn(Mono.empty());
+
+        cache.record(loginAttempt);
+
+        verify(writeBehindQueue).enqueue(loginAttempt);
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void record_noWriteBehind_insertsAttempt() {
+        var cache = cache(true, Optional.empty());
+        var loginAttempt = LoginAttempt.builder().ip("ip").username("username").build();
+        when(repository.insert(loginAttempt)).thenReturn(Mono.just(loginAttempt));
+
+        cache.record(loginAttempt);
+
+        verify(repository).insert(loginAttempt);
+    }
+
+    @Test
+    void record_noWriteBehindAndInsertsPending_dropsAndCountsUntilOneCompletes() {
+        var cache = cache(true, Optional.empty());
+        var loginAttempt = LoginAttempt.builder().ip("ip").username("username").build();
+        var pending = Sinks.<LoginAttempt>one();
+        when(repository.insert(loginAttempt)).thenReturn(pending.asMono());
+
+        cache.record(loginAttempt);
+        cache.record(loginAttempt);
+        cache.record(loginAttempt);
+        cache.record(loginAttempt);
+
+        verify(repository, times(2)).insert(loginAttempt);
+        assertEquals(2, meterRegistry.get("ratelimiter.deny-cache.dropped").counter().count());
+
+        pending.tryEmitValue(loginAttempt);
+        cache.record(loginAttempt);
+
+        verify(repository, times(3)).insert(loginAttempt);
+    }
+
+    @Test
+    void record_recordAttemptsDisabled_nothingStored() {
+        var cache = cache(false, Optional.of(writeBehindQueue));
+
+        cache.record(LoginAttempt.builder().ip("ip").username("username").build());
+
+        verifyNoInteractions(writeBehindQueue, repository);
+    }
+}
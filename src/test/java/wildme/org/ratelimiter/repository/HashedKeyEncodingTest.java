@@ -0,0 +1,57 @@
+package wildme.org.ratelimiter.repository;
+
+import org.junit.jupiter.api.Test;
+import wildme.org.ratelimiter.rule.KeyField;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HashedKeyEncodingTest {
+
+    private final HashedKeyEncoding encoding = new HashedKeyEncoding("secret");
+
+    @Test
+    void encode_ipAddressLiterals_addressBytes() {
+        assertArrayEquals(new byte[] {10, 0, 1, (byte) 255}, (byte[]) encoding.encode(KeyField.IP, "10.0.1.255"));
+        assertEquals(16, ((byte[]) encoding.encode(KeyField.IP, "2001:db8::1")).length);
+    }
+
+    @Test
+    void encode_ipNotAnAddress_eightByteHash() {
+        assertEquals(8, ((byte[]) encoding.encode(KeyField.IP, "some_ip")).length);
+        assertNull(HashedKeyEncoding.addressBytes("10.0.1"));
+        assertNull(HashedKeyEncoding.addressBytes("10.0.1.256"));
+        assertNull(HashedKeyEncoding.addressBytes("localhost"));
+    }
+
+    @Test
+    void addressBytes_colonButNotAnIpv6Literal_nullWithoutLookup() {
+        assertNull(HashedKeyEncoding.addressBytes("zz:1"));
+        assertNull(HashedKeyEncoding.addressBytes("example.com:443"));
+        assertNull(HashedKeyEncoding.addressBytes("fe80::1%eth0"));
+        assertNull(HashedKeyEncoding.addressBytes("1:zz"));
+        assertNull(HashedKeyEncoding.addressBytes("%1:2"));
+        assertEquals(16, HashedKeyEncoding.addressBytes("fe80::1%2").length);
+        assertEquals(4, HashedKeyEncoding.addressBytes("::ffff:10.0.0.1").length);
+        assertEquals(8, ((byte[]) encoding.encode(KeyField.IP, "zz:1")).length);
+    }
+
+    @Test
+    void encode_usernameHashedWithTheSecret() {
+        var hash = (Long) encoding.encode(KeyField.USERNAME, "username");
+
+        assertEquals(hash, encoding.encode(KeyField.USERNAME, "username"));
+        assertNotEquals(hash, encoding.encode(KeyField.USERNAME, "username2"));
+        assertNotEquals(hash, new HashedKeyEncoding("other secret").encode(KeyField.USERNAME, "username"));
+        assertEquals("username_hash", encoding.column(KeyField.USERNAME));
+        assertEquals(Long.class, encoding.type(KeyField.COOKIE_ID));
+    }
+
+    @Test
+    void new_noSecret_throws() {
+        assertThrows(IllegalStateException.class, () -> new HashedKeyEncoding(" "));
+    }
+}
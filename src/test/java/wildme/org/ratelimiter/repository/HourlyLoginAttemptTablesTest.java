@@ -0,0 +1,61 @@
+package wildme.org.ratelimiter.repository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HourlyLoginAttemptTablesTest {
+
+    private final HourlyLoginAttemptTables tables = new HourlyLoginAttemptTables(Duration.ofHours(1));
+
+    @Test
+    void tableFor_hourOfTheDay() {
+        assertEquals("LOGIN_ATTEMPT_H00", tables.tableFor(LocalDateTime.parse("2022-12-01T00:59:59")));
+        assertEquals("LOGIN_ATTEMPT_H23", tables.tableFor(LocalDateTime.parse("2022-12-01T23:00:00")));
+    }
+
+    @Test
+    void tablesBetween_onlyTheHoursSpanned() {
+        var now = LocalDateTime.parse("2022-12-01T00:10:00");
+
+        assertEquals(List.of("LOGIN_ATTEMPT_H00"), tables.tablesBetween(now.minusMinutes(1), now));
+        assertEquals(List.of("LOGIN_ATTEMPT_H23", "LOGIN_ATTEMPT_H00"), tables.tablesBetween(now.minusHours(1), now));
+        assertEquals(24, tables.tablesBetween(now.minusDays(2), now).size());
+    }
+
+    @Test
+    void expiredTables_keepsMaxAgeCurrentAndNextHour() {
+        var now = LocalDateTime.parse("2022-12-01T10:30:00");
+
+        var expired = tables.expiredTables(now.minusHours(1), now);
+
+        assertEquals(21, expired.size());
+        assertEquals("LOGIN_ATTEMPT_H00", expired.get(0));
+        assertEquals(List.of(), expired.stream()
+                .filter(List.of("LOGIN_ATTEMPT_H09", "LOGIN_ATTEMPT_H10", "LOGIN_ATTEMPT_H11")::contains)
+                .toList());
+    }
+
+    @Test
+    void validate_windowLongerThanRing_throws() {
+        var plan = EvaluationPlan.compile(List.of(RateLimitRule.parse("ip/1m/5"), RateLimitRule.parse("ip/1d/100")));
+
+        assertThrows(IllegalArgumentException.class, () -> tables.validate(plan));
+    }
+
+    @Test
+    void validate_windowsWithinRing_accepted() {
+        tables.validate(EvaluationPlan.compile(List.of(RateLimitRule.parse("ip/21h/100"))));
+    }
+
+    @Test
+    void new_maxAgeLeavingNoTableToTruncate_throws() {
+        assertThrows(IllegalStateException.class, () -> new HourlyLoginAttemptTables(Duration.ofHours(22)));
+    }
+}
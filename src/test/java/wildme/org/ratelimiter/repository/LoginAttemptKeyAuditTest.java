@@ -0,0 +1,64 @@
+package wildme.org.ratelimiter.repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Sinks;
+import wildme.org.ratelimiter.model.LoginAttempt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LoginAttemptKeyAuditTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Sinks.One<Long> pending = Sinks.one();
+    @Mock
+    private DatabaseClient databaseClient;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    private DatabaseClient.GenericExecuteSpec spec;
+    private LoginAttemptKeyAudit audit;
+
+    @BeforeEach
+    void setUp() {
+        audit = new LoginAttemptKeyAudit(1000, 1, databaseClient, new HashedKeyEncoding("secret"), meterRegistry);
+        when(databaseClient.sql(anyString())).thenReturn(spec);
+        when(spec.bind(anyInt(), any())).thenReturn(spec);
+        when(spec.fetch().rowsUpdated()).thenReturn(pending.asMono());
+    }
+
+    @Test
+    void record_auditPending_dropsAndCountsAndAuditsKeysOnTheirNextAttempt() {
+        audit.record(attempt("ip1", "username1"));
+        audit.record(attempt("ip2", "username2"));
+
+        verify(databaseClient, times(1)).sql(anyString());
+        assertEquals(1, meterRegistry.get("ratelimiter.key-audit.dropped").counter().count());
+
+        // The merges now complete: username1 follows ip1, and the dropped keys are merged on their next attempt.
+        pending.tryEmitValue(1L);
+        audit.record(attempt("ip2", "username2"));
+
+        verify(databaseClient, times(4)).sql(anyString());
+    }
+
+    private static LoginAttempt attempt(String ip, String username) {
+        return LoginAttempt.builder()
+                .ip(ip)
+                .username(username)
+                .createdAt(LocalDateTime.parse("2022-12-01T10:00:00"))
+                .build();
+    }
+}
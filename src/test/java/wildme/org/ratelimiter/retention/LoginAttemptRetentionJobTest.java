@@ -0,0 +1,115 @@
+package wildme.org.ratelimiter.retention;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import wildme.org.ratelimiter.repository.HourlyLoginAttemptTables;
+import wildme.org.ratelimiter.repository.LoginAttemptRepository;
+import wildme.org.ratelimiter.repository.SingleLoginAttemptTable;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+import wildme.org.ratelimiter.service.RateLimiterPolicy;
+import wildme.org.ratelimiter.service.RateLimiterPolicyHolder;
+import wildme.org.ratelimiter.time.MonotonicTimeSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LoginAttemptRetentionJobTest {
+
+    private final int batchSize = 100;
+    private final Clock clock = Clock.fixed(Instant.parse("2022-12-01T10:00:00Z"), ZoneOffset.UTC);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    @Mock
+    private LoginAttemptRepository repository;
+    @Mock
+    private RateLimiterPolicyHolder policyHolder;
+    private LoginAttemptRetentionJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new LoginAttemptRetentionJob(Duration.ofHours(1), Duration.ofMinutes(1), batchSize, repository,
+                new SingleLoginAttemptTable(), policyHolder, new MonotonicTimeSource(clock, () -> 0L), meterRegistry);
+        lenient().when(policyHolder.current()).thenReturn(policy("ip/1m/5", "ip/1h/15"));
+    }
+
+    @Test
+    void purge_deletesInBatchesUntilPartialBatch() {
+        when(repository.deleteBatchCreatedBefore(any(), anyInt()))
+                .thenReturn(Mono.just(batchSize), Mono.just(batchSize), Mono.just(42));
+
+        StepVerifier.create(job.purge())
+                .expectNext(2L * batchSize + 42)
+                .verifyComplete();
+
+        verify(repository, times(3)).deleteBatchCreatedBefore(LocalDateTime.parse("2022-12-01T09:00:00"), batchSize);
+        assertEquals(2.0 * batchSize + 42, meterRegistry.get("ratelimiter.retention.purged.rows").counter().count());
+        assertEquals(1, meterRegistry.get("ratelimiter.retention.purge").timer().count());
+    }
+
+    @Test
+    void purge_ruleWindowLongerThanMaxAge_keepsWindow() {
+        when(policyHolder.current()).thenReturn(policy("ip/1m/5", "username/3h/10"));
+        when(repository.deleteBatchCreatedBefore(any(), anyInt())).thenReturn(Mono.just(0));
+
+        StepVerifier.create(job.purge())
+                .expectNext(0L)
+                .verifyComplete();
+
+        verify(repository).deleteBatchCreatedBefore(LocalDateTime.parse("2022-12-01T07:00:00"), batchSize);
+    }
+
+    @Test
+    void purge_nothingToDelete_runsSingleBatch() {
+        when(repository.deleteBatchCreatedBefore(any(), anyInt())).thenReturn(Mono.just(0));
+
+        StepVerifier.create(job.purge())
+                .expectNext(0L)
+                .verifyComplete();
+
+        verify(repository, times(1)).deleteBatchCreatedBefore(any(), anyInt());
+    }
+
+    @Test
+    void purge_hourlyLayout_truncatesExpiredHoursOnce() {
+        var hourlyJob = new LoginAttemptRetentionJob(Duration.ofHours(1), Duration.ofMinutes(1), batchSize,
+                repository, new HourlyLoginAttemptTables(Duration.ofHours(1)), policyHolder,
+                new MonotonicTimeSource(clock, () -> 0L), meterRegistry);
+        when(repository.truncate(anyString())).thenReturn(Mono.empty());
+
+        StepVerifier.create(hourlyJob.purge().then(hourlyJob.purge()))
+                .verifyComplete();
+
+        // 09:00 is within the max-age, 10:00 is current and 11:00 next.
+        IntStream.of(8, 12, 23, 0).forEach(hour -> verify(repository)
+                .truncate(String.format("LOGIN_ATTEMPT_H%02d", hour)));
+        IntStream.of(9, 10, 11).forEach(hour -> verify(repository, never())
+                .truncate(String.format("LOGIN_ATTEMPT_H%02d", hour)));
+        verify(repository, times(21)).truncate(anyString());
+        verify(repository, never()).deleteBatchCreatedBefore(any(), anyInt());
+        assertEquals(21, meterRegistry.get("ratelimiter.retention.truncated.tables").counter().count());
+    }
+
+    private static RateLimiterPolicy policy(String... rules) {
+        return RateLimiterPolicy.compile(1, Stream.of(rules).map(RateLimitRule::parse).toList());
+    }
+}
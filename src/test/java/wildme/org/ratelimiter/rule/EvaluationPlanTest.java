@@ -0,0 +1,134 @@
+package wildme.org.ratelimiter.rule;
+
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EvaluationPlanTest {
+
+    @Test
+    void parse_compositeDimension() {
+        var rule = RateLimitRule.parse(" ip+username / 5m / 3 ");
+
+        assertEquals(RuleDimension.of(KeyField.IP, KeyField.USERNAME), rule.dimension());
+        assertEquals(Duration.ofMinutes(5), rule.window());
+        assertEquals(3, rule.limit());
+        assertEquals("ip+username", rule.dimension().tag());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"ip/1m", "ip/1m/5/1", "email/1m/5", "ip+ip/1m/5", "ip/0s/5", "ip/1m/-1", "ip/1m/many"})
+    void parse_invalidRule_throws(String rule) {
+        assertThrows(IllegalArgumentException.class, () -> RateLimitRule.parse(rule));
+    }
+
+    @Test
+    void key_missingField_null() {
+        var dimension = RuleDimension.parse("ip+cookie-id");
+
+        assertEquals(List.of("ip", "cookie"), dimension.key("ip", "cookie", "username"));
+        assertNull(dimension.key("ip", null, "username"));
+    }
+
+    @Test
+    void compile_rulesGroupedByDimensionCheapestFirst() {
+        var plan = compile("ip/1h/15", "username/1h/10", "ip/1m/5", "cookie-id/10s/2", "ip+username/5m/3");
+
+        assertEquals(List.of("cookie-id", "ip+username", "ip", "username"), plan.getDimensions().stream()
+                .map(dimension -> dimension.getDimension().tag())
+                .toList());
+        var ip = plan.getDimensions().get(2);
+        assertEquals(2, ip.windowCount());
+        assertEquals(Duration.ofHours(1), ip.getWindow(0));
+        assertEquals(15, ip.getLimit(0));
+        assertEquals(Duration.ofMinutes(1), ip.getWindow(1));
+        assertEquals(5, ip.getLimit(1));
+    }
+
+    @Test
+    void compile_sameWindowTwice_strictestLimitKept() {
+        var dimension = compile("ip/1m/5", "ip/60s/3").getDimensions().get(0);
+
+        assertEquals(1, dimension.windowCount());
+        assertEquals(3, dimension.getLimit(0));
+    }
+
+    @Test
+    void compile_noRules_throws() {
+        assertThrows(IllegalArgumentException.class, () -> EvaluationPlan.compile(List.of()));
+    }
+
+    @Test
+    void allows_everyCountWithinItsLimit() {
+        var ip = compile("ip/1h/15", "ip/1m/5").getDimensions().get(0);
+
+        assertTrue(ip.allows(new long[] {15, 5}));
+        assertFalse(ip.allows(new long[] {16, 1}));
+        assertFalse(ip.allows(new long[] {6, 6}));
+    }
+
+    @Test
+    void getCountSql_oneCountPerWindowBoundedByTheWidest() {
+        var dimension = compile("ip+username/1h/15", "ip+username/1m/5").getDimensions().get(0);
+
+        assertEquals("SELECT COUNT(*) AS c0, COUNT(*) FILTER (WHERE created_at > $4) AS c1 FROM LOGIN_ATTEMPT"
+                + " WHERE ip = $1 AND username = $2 AND created_at > $3", dimension.getCountSql());
+        assertEquals("SELECT created_at FROM LOGIN_ATTEMPT WHERE ip = $1 AND username = $2"
+                + " ORDER BY created_at DESC LIMIT 1 OFFSET $3", dimension.getNthNewestCreatedAtSql());
+    }
+
+    @Test
+    void getCountSql_severalTables_unionFilteredPerTable() {
+        var dimension = compile("ip/1h/15", "ip/1m/5").getDimensions().get(0);
+        var tables = List.of("LOGIN_ATTEMPT_H09", "LOGIN_ATTEMPT_H10");
+
+        assertEquals("SELECT COUNT(*) AS c0, COUNT(*) FILTER (WHERE created_at > $3) AS c1 FROM"
+                + " (SELECT created_at FROM LOGIN_ATTEMPT_H09 WHERE ip = $1 AND created_at > $2"
+                + " UNION ALL SELECT created_at FROM LOGIN_ATTEMPT_H10 WHERE ip = $1 AND created_at > $2) a",
+                dimension.getCountSql(tables, KeyEncoding.RAW));
+        assertEquals("SELECT created_at FROM (SELECT created_at FROM LOGIN_ATTEMPT_H09 WHERE ip = $1"
+                + " UNION ALL SELECT created_at FROM LOGIN_ATTEMPT_H10 WHERE ip = $1) a"
+                + " ORDER BY created_at DESC LIMIT 1 OFFSET $2",
+                dimension.getNthNewestCreatedAtSql(tables, KeyEncoding.RAW));
+    }
+
+    @Test
+    void getCountSql_otherKeyEncoding_itsColumns() {
+        var dimension = compile("ip+username/1h/15").getDimensions().get(0);
+        var encoding = new KeyEncoding() {
+            @Override
+            public String column(KeyField field) {
+                return field.getColumn() + "_hash";
+            }
+        };
+
+        assertEquals("SELECT COUNT(*) AS c0 FROM LOGIN_ATTEMPT WHERE ip_hash = $1 AND username_hash = $2"
+                + " AND created_at > $3", dimension.getCountSql(List.of("LOGIN_ATTEMPT"), encoding));
+    }
+
+    @Test
+    void getCombinedCountSql_dimensionsCrossJoinedWithConsecutivePlaceholdersAndTheSavedIdLast() {
+        var plan = compile("cookie-id/10s/2", "ip/1h/15", "ip/1m/5");
+
+        assertEquals("SELECT * FROM (SELECT COUNT(*) AS d0_c0 FROM LOGIN_ATTEMPT WHERE cookie_id = $1"
+                + " AND created_at > $2 AND id <> $6) d0 CROSS JOIN (SELECT COUNT(*) AS d1_c0,"
+                + " COUNT(*) FILTER (WHERE created_at > $5) AS d1_c1 FROM LOGIN_ATTEMPT WHERE ip = $3"
+                + " AND created_at > $4 AND id <> $6) d1", plan.getCombinedCountSql());
+        assertArrayEquals(new int[] {2, 3}, plan.getDimensions().stream()
+                .mapToInt(DimensionPlan::placeholderCount)
+                .toArray());
+    }
+
+    private static EvaluationPlan compile(String... rules) {
+        return EvaluationPlan.compile(List.of(rules).stream().map(RateLimitRule::parse).toList());
+    }
+}
@@ -1,20 +1,46 @@
 package wildme.org.ratelimiter.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import org.junit.jupiter.api.BeforeEach;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
+import reactor.test.publisher.PublisherProbe;
+import wildme.org.ratelimiter.MutableClock;
+import wildme.org.ratelimiter.denycache.BlockedKeyCache;
 import wildme.org.ratelimiter.model.LoginAttempt;
 import wildme.org.ratelimiter.repository.LoginAttemptRepository;
+import wildme.org.ratelimiter.rule.DimensionPlan;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+import wildme.org.ratelimiter.rule.RuleDimension;
+import wildme.org.ratelimiter.time.MonotonicTimeSource;
+import wildme.org.ratelimiter.time.TimeSource;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -27,169 +53,584 @@ class DefaultRateLimiterServiceTest {
     private final int attemptsPerIpInLastMinute = 5;
     private final int attemptsPerCookieInLastTenSeconds = 2;
     private final int attemptsPerUsernameInLastHour = 10;
+    private final RateLimiterPolicyHolder policyHolder = RateLimiterPolicyHolderTest.defaultPolicyHolder();
+    private final EvaluationPlan plan = policyHolder.current().plan();
+    // Cheapest first: the 10 second cookie-id window, then the one hour ip and username windows.
+    private final DimensionPlan cookieIdPlan = plan.getDimensions().get(0);
+    private final DimensionPlan ipPlan = plan.getDimensions().get(1);
+    private final DimensionPlan usernamePlan = plan.getDimensions().get(2);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final MutableClock clock = new MutableClock();
+    private final TimeSource timeSource = new MonotonicTimeSource(clock, clock::nanoTime);
     @Mock
     private LoginAttemptRepository repository;
-    private DefaultRateLimiterService service;
 
-    @BeforeEach
-    void setUp() {
-        service = new DefaultRateLimiterService(attemptsPerIpInLastHour, attemptsPerIpInLastMinute,
-                attemptsPerCookieInLastTenSeconds, attemptsPerUsernameInLastHour, repository);
+    @Test
+    void loginRateLimiter_allChecksAllow_returnTrue() {
+        var spyService = spy(service(EvaluationStrategy.PARALLEL));
+        doReturn(Mono.just(true)).when(spyService).check(any(), any(), anyLong(), any());
+        stubSave();
+
+        StepVerifier.create(spyService.loginRateLimiter("ip", "cookie", "username"))
+                .expectNext(true)
+                .verifyComplete();
+
+        verify(spyService, times(3)).check(any(), any(), anyLong(), any());
     }
 
-    @Test
-    void loginRateLimiter_allConditionsReturnTrue_returnTrue() {
-        var spyService = spy(service);
-        doReturn(Mono.just(true)).when(spyService).checkByIp(any(), any());
-        doReturn(Mono.just(true)).when(spyService).checkByCookieId(any(), any());
-        doReturn(Mono.just(true)).when(spyService).checkByUsername(any(), any());
-        when(repository.save(any()))
-                .thenReturn(Mono.just(LoginAttempt.builder().createdAt(LocalDateTime.now()).build()));
+    @ParameterizedTest
+    @ValueSource(strings = {"ip", "cookie-id", "username"})
+    void loginRateLimiter_oneCheckDenies_returnFalse(String deniedDimension) {
+        var spyService = spy(service(EvaluationStrategy.PARALLEL));
+        stubChecks(spyService, Map.of(RuleDimension.parse(deniedDimension), Mono.just(false)));
+        stubSave();
 
         StepVerifier.create(spyService.loginRateLimiter("ip", "cookie", "username"))
+                .expectNext(false)
+                .verifyComplete();
+
+        assertEquals(1, decisions("deny", deniedDimension));
+    }
+
+    @Test
+    void loginRateLimiter_noCookieId_cookieIdRulesNotChecked() {
+        stubZeroCounts();
+        stubSave();
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).loginRateLimiter("ip", null, "username"))
                 .expectNext(true)
                 .verifyComplete();
+
+        verify(repository, never()).countWindows(eq(cookieIdPlan), any(), anyLong());
+        verify(repository).countWindows(eq(ipPlan), eq(List.of("ip")), anyLong());
+        verify(repository).countWindows(eq(usernamePlan), eq(List.of("username")), anyLong());
     }
 
     @Test
-    void loginRateLimiter_checkByIpConditionsReturnFalse_returnFalse() {
-        var spyService = spy(service);
-        doReturn(Mono.just(false)).when(spyService).checkByIp(any(), any());
-        doReturn(Mono.just(true)).when(spyService).checkByCookieId(any(), any());
-        doReturn(Mono.just(true)).when(spyService).checkByUsername(any(), any());
-        when(repository.save(any()))
-                .thenReturn(Mono.just(LoginAttempt.builder().createdAt(LocalDateTime.now()).build()));
+    void loginRateLimiter_clockAdvanced_attemptSavedAndCountedAtTimeSourceTime() {
+        stubZeroCounts();
+        stubSave();
+        clock.advance(Duration.ofHours(3));
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).loginRateLimiter("ip", null, "username"))
+                .expectNext(true)
+                .verifyComplete();
+
+        verify(repository).insert(LoginAttempt.builder()
+                .ip("ip")
+                .username("username")
+                .createdAt(LocalDateTime.now(clock))
+                .build());
+        verify(repository).countWindows(ipPlan, List.of("ip"), clock.millis());
+    }
+
+    @Test
+    void loginRateLimiter_denied_recordsDenialByDimensionAndStageTimers() {
+        var spyService = spy(service(EvaluationStrategy.PARALLEL));
+        stubChecks(spyService, Map.of(
+                cookieIdPlan.getDimension(), Mono.just(false),
+                usernamePlan.getDimension(), Mono.just(false)));
+        stubSave();
 
         StepVerifier.create(spyService.loginRateLimiter("ip", "cookie", "username"))
                 .expectNext(false)
                 .verifyComplete();
+
+        assertEquals(1, decisions("deny", "cookie-id"));
+        assertEquals(0, meterRegistry.find("ratelimiter.login.decisions").tag("dimension", "username").counters()
+                .size());
+        assertEquals(0, decisions("allow", "none"));
+        assertEquals(1, stageCount("save", "none"));
+        assertEquals(1, stageCount("combine", "none"));
+    }
+
+    @Test
+    void loginRateLimiter_checksTimedByDimension() {
+        stubZeroCounts();
+        stubSave();
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).loginRateLimiter("ip", "cookie", "username"))
+                .expectNext(true)
+                .verifyComplete();
+
+        assertEquals(1, stageCount("check", "ip"));
+        assertEquals(1, stageCount("check", "cookie-id"));
+        assertEquals(1, stageCount("check", "username"));
     }
 
     @Test
-    void loginRateLimiter_checkByCookieIdConditionsReturnFalse_returnFalse() {
-        var spyService = spy(service);
-        doReturn(Mono.just(true)).when(spyService).checkByIp(any(), any());
-        doReturn(Mono.just(false)).when(spyService).checkByCookieId(any(), any());
-        doReturn(Mono.just(true)).when(spyService).checkByUsername(any(), any());
-        when(repository.save(any()))
-                .thenReturn(Mono.just(LoginAttempt.builder().createdAt(LocalDateTime.now()).build()));
+    void loginRateLimiter_sequentialCookieIdDenies_otherChecksNotRun() {
+        var spyService = spy(service(EvaluationStrategy.SEQUENTIAL));
+        var ipCheck = PublisherProbe.of(Mono.just(true));
+        var usernameCheck = PublisherProbe.of(Mono.just(true));
+        stubChecks(spyService, Map.of(
+                cookieIdPlan.getDimension(), Mono.just(false),
+                ipPlan.getDimension(), ipCheck.mono(),
+                usernamePlan.getDimension(), usernameCheck.mono()));
+        stubSave();
 
         StepVerifier.create(spyService.loginRateLimiter("ip", "cookie", "username"))
                 .expectNext(false)
                 .verifyComplete();
+
+        ipCheck.assertWasNotSubscribed();
+        usernameCheck.assertWasNotSubscribed();
+        assertEquals(1, decisions("deny", "cookie-id"));
     }
 
     @Test
-    void loginRateLimiter_checkByUsernameConditionsReturnFalse_returnFalse() {
-        var spyService = spy(service);
-        doReturn(Mono.just(true)).when(spyService).checkByIp(any(), any());
-        doReturn(Mono.just(true)).when(spyService).checkByCookieId(any(), any());
-        doReturn(Mono.just(false)).when(spyService).checkByUsername(any(), any());
-        when(repository.save(any()))
-                .thenReturn(Mono.just(LoginAttempt.builder().createdAt(LocalDateTime.now()).build()));
+    void loginRateLimiter_sequentialAllChecksAllow_returnTrue() {
+        var spyService = spy(service(EvaluationStrategy.SEQUENTIAL));
+        doReturn(Mono.just(true)).when(spyService).check(any(), any(), anyLong(), any());
+        stubSave();
 
         StepVerifier.create(spyService.loginRateLimiter("ip", "cookie", "username"))
-                .expectNext(false)
+                .expectNext(true)
                 .verifyComplete();
+
+        assertEquals(1, decisions("allow", "none"));
     }
 
     @Test
-    void checkByIp_whenMoreThanThresholdInLastHour_returnFalse() {
-        var attempts = new ArrayList<LoginAttempt>();
-        for (int i = 0; i <= attemptsPerIpInLastHour; i++){
-            attempts.add(LoginAttempt.builder().createdAt(LocalDateTime.now().minusMinutes(30)).build());
-        }
-        when(repository.findAllByIpAndCreatedAtAfter(any(), any())).thenReturn(Flux.fromIterable(attempts));
+    void loginRateLimiter_raceUsernameDenies_pendingChecksCancelled() {
+        var spyService = spy(service(EvaluationStrategy.RACE));
+        var ipCheck = PublisherProbe.<Boolean>of(Mono.never());
+        var cookieIdCheck = PublisherProbe.<Boolean>of(Mono.never());
+        stubChecks(spyService, Map.of(
+                ipPlan.getDimension(), ipCheck.mono(),
+                cookieIdPlan.getDimension(), cookieIdCheck.mono(),
+                usernamePlan.getDimension(), Mono.just(false)));
+        stubSave();
 
-        StepVerifier.create(service.checkByIp("ip", LocalDateTime.now()))
+        StepVerifier.create(spyService.loginRateLimiter("ip", "cookie", "username"))
                 .expectNext(false)
                 .verifyComplete();
+
+        ipCheck.assertWasCancelled();
+        cookieIdCheck.assertWasCancelled();
+        assertEquals(1, decisions("deny", "username"));
     }
 
     @Test
-    void checkByIp_whenMoreThanThresholdInLastMinute_returnFalse() {
-        var attempts = new ArrayList<LoginAttempt>();
-        for (int i = 0; i <= attemptsPerIpInLastMinute; i++){
-            attempts.add(LoginAttempt.builder().createdAt(LocalDateTime.now().minusSeconds(1)).build());
-        }
-        when(repository.findAllByIpAndCreatedAtAfter(any(), any())).thenReturn(Flux.fromIterable(attempts));
+    void loginRateLimiter_severalRulesOnOneDimension_singleQueryPerDimension() {
+        var rules = List.of(
+                RateLimitRule.parse("ip/1h/15"),
+                RateLimitRule.parse("ip/1m/5"),
+                RateLimitRule.parse("ip/10s/3"),
+                RateLimitRule.parse("ip+username/5m/3"));
+        policyHolder.update(rules);
+        var multiRuleService = service(EvaluationStrategy.PARALLEL);
+        // The ip dimension counts its three windows, ip+username its single one, over its limit.
+        when(repository.countWindows(any(), any(), anyLong()))
+                .thenAnswer(invocation -> ((DimensionPlan) invocation.getArgument(0)).windowCount() == 3
+                        ? Mono.just(new long[] {1, 1, 1})
+                        : Mono.just(new long[] {4}));
+        stubSave();
 
-        StepVerifier.create(service.checkByIp("ip", LocalDateTime.now()))
+        StepVerifier.create(multiRuleService.loginRateLimiter("ip", null, "username"))
                 .expectNext(false)
                 .verifyComplete();
+
+        verify(repository, times(2)).countWindows(any(), any(), anyLong());
+        assertEquals(1, decisions("deny", "ip+username"));
     }
 
     @Test
-    void checkByIp_whenNoMoreThanThreshold_returnTrue() {
-        var attempts = new ArrayList<LoginAttempt>();
-        for (int i = 0; i < attemptsPerIpInLastHour; i++){
-            attempts.add(LoginAttempt.builder().createdAt(LocalDateTime.now().minusMinutes(30)).build());
-        }
-        when(repository.findAllByIpAndCreatedAtAfter(any(), any())).thenReturn(Flux.fromIterable(attempts));
+    void loginRateLimiter_policyUpdatedWhileInFlight_decisionUsesPlanItStartedWith() {
+        when(repository.insert(any()))
+                .thenReturn(Mono.just(LoginAttempt.builder().createdAt(LocalDateTime.now(clock)).build())
+                        .delaySubscription(Duration.ofMillis(100)));
+        stubZeroCounts();
 
-        StepVerifier.create(service.checkByIp("ip", LocalDateTime.now()))
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).loginRateLimiter("ip", "cookie", "username"))
+                .then(() -> policyHolder.update(List.of(RateLimitRule.parse("ip+username/1m/0"))))
                 .expectNext(true)
                 .verifyComplete();
+
+        verify(repository, times(3)).countWindows(any(), any(), anyLong());
+        verify(repository, never()).countWindows(eq(policyHolder.current().plan().getDimensions().get(0)), any(),
+                anyLong());
     }
 
     @Test
-    void checkByCookieId_whenMoreThanThresholdInLastTenSeconds_returnFalse() {
-        var attempts = new ArrayList<LoginAttempt>();
-        for (int i = 0; i <= attemptsPerCookieInLastTenSeconds; i++){
-            attempts.add(LoginAttempt.builder().build());
-        }
-        when(repository.findAllByCookieIdAndCreatedAtAfter(any(), any())).thenReturn(Flux.fromIterable(attempts));
+    void loginRateLimiter_combinedQueryModeNoThresholdReached_returnTrue() {
+        when(repository.saveAndCountWindows(any(), eq(plan)))
+                .thenReturn(Mono.just(combinedCounts(attemptsPerCookieInLastTenSeconds, attemptsPerIpInLastHour,
+                        attemptsPerIpInLastMinute, attemptsPerUsernameInLastHour)));
+
+        StepVerifier.create(combinedQueryService().loginRateLimiter("ip", "cookie", "username"))
+                .expectNext(true)
+                .verifyComplete();
 
-        StepVerifier.create(service.checkByCookieId("cookie", LocalDateTime.now()))
+        verify(repository, times(0)).insert(any());
+    }
+
+    @Test
+    void loginRateLimiter_combinedQueryModeCookieThresholdReached_returnFalse() {
+        when(repository.saveAndCountWindows(any(), eq(plan)))
+                .thenReturn(Mono.just(combinedCounts(attemptsPerCookieInLastTenSeconds + 1, 1, 1, 1)));
+
+        StepVerifier.create(combinedQueryService().loginRateLimiter("ip", "cookie", "username"))
                 .expectNext(false)
                 .verifyComplete();
+
+        assertEquals(1, decisions("deny", "cookie-id"));
     }
 
     @Test
-    void checkByCookieId_whenNoCookieId_returnTrue() {
-        StepVerifier.create(service.checkByCookieId(null, LocalDateTime.now()))
+    void loginRateLimiter_combinedQueryModeNoCookieId_cookieCountIgnored() {
+        when(repository.saveAndCountWindows(any(), eq(plan)))
+                .thenReturn(Mono.just(combinedCounts(attemptsPerCookieInLastTenSeconds + 1, 1, 1, 1)));
+
+        StepVerifier.create(combinedQueryService().loginRateLimiter("ip", null, "username"))
                 .expectNext(true)
                 .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiter_combinedQueryModeIpMinuteThresholdReached_returnFalse() {
+        when(repository.saveAndCountWindows(any(), eq(plan)))
+                .thenReturn(Mono.just(combinedCounts(1, attemptsPerIpInLastMinute + 1, attemptsPerIpInLastMinute + 1,
+                        1)));
+
+        StepVerifier.create(combinedQueryService().loginRateLimiter("ip", "cookie", "username"))
+                .expectNext(false)
+                .verifyComplete();
 
-        verify(repository, times(0)).findAllByCookieIdAndCreatedAtAfter(any(), any());
+        assertEquals(1, decisions("deny", "ip"));
     }
 
     @Test
-    void checkByCookieId_whenNoMoreThanThresholdInLastTenSeconds_returnTrue() {
-        var attempts = new ArrayList<LoginAttempt>();
-        for (int i = 0; i < attemptsPerCookieInLastTenSeconds; i++){
-            attempts.add(LoginAttempt.builder().build());
-        }
-        when(repository.findAllByCookieIdAndCreatedAtAfter(any(), any())).thenReturn(Flux.fromIterable(attempts));
+    void countedDecision_perDimension_countsOfCheckedDimensions() {
+        stubZeroCounts();
+        stubSave();
 
-        StepVerifier.create(service.checkByCookieId("cookie", LocalDateTime.now()))
-                .expectNext(true)
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).countedDecision("ip", null, "username"))
+                .assertNext(decision -> {
+                    assertTrue(decision.allowed());
+                    assertEquals(Set.of(ipPlan, usernamePlan), decision.counts().keySet());
+                    assertArrayEquals(new long[] {0, 0}, decision.counts().get(ipPlan));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void countedDecision_combinedQueryMode_countsOfDimensionsWithAKey() {
+        when(repository.saveAndCountWindows(any(), eq(plan))).thenReturn(Mono.just(combinedCounts(0, 3, 2, 1)));
+
+        StepVerifier.create(combinedQueryService().countedDecision("ip", null, "username"))
+                .assertNext(decision -> {
+                    assertTrue(decision.allowed());
+                    assertEquals(Set.of(ipPlan, usernamePlan), decision.counts().keySet());
+                    assertArrayEquals(new long[] {3, 2}, decision.counts().get(ipPlan));
+                    assertArrayEquals(new long[] {1}, decision.counts().get(usernamePlan));
+                })
+                .verifyComplete();
+    }
+
+    @Test
+    void record_savedAndCountedAtGivenTimeWithoutDecision() {
+        stubZeroCounts();
+        stubSave();
+        var allowedAt = clock.millis();
+        clock.advance(Duration.ofSeconds(5));
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).record(plan, "ip", null, "username", allowedAt))
+                .assertNext(counts -> assertEquals(Set.of(ipPlan, usernamePlan), counts.keySet()))
+                .verifyComplete();
+
+        verify(repository).insert(LoginAttempt.builder()
+                .ip("ip")
+                .username("username")
+                .createdAt(timeSource.toLocalDateTime(allowedAt))
+                .build());
+        verify(repository).countWindows(ipPlan, List.of("ip"), allowedAt);
+        assertEquals(0, decisions("allow", "none"));
+    }
+
+    @Test
+    void loginRateLimiterBatch_duplicateKeys_countedOnceAndAppliedInOrder() {
+        when(repository.countWindows(eq(ipPlan), eq(List.of("ip")), anyLong()))
+                .thenReturn(Mono.just(new long[] {1, attemptsPerIpInLastMinute - 2}));
+        when(repository.countWindows(eq(ipPlan), eq(List.of("other-ip")), anyLong()))
+                .thenReturn(Mono.just(new long[] {0, 0}));
+        when(repository.countWindows(eq(usernamePlan), eq(List.of("username")), anyLong()))
+                .thenReturn(Mono.just(new long[] {0}));
+        when(repository.insertAll(anyList())).thenReturn(Mono.just(4L));
+        var attempts = List.of(
+                attempt("ip", "username"),
+                attempt("ip", "username"),
+                attempt("other-ip", "username"),
+                attempt("ip", "username"));
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).loginRateLimiter(attempts))
+                .expectNext(List.of(true, true, true, false))
+                .verifyComplete();
+
+        verify(repository).countWindows(eq(ipPlan), eq(List.of("ip")), anyLong());
+        verify(repository).countWindows(eq(usernamePlan), eq(List.of("username")), anyLong());
+        verify(repository, never()).countWindows(eq(cookieIdPlan), any(), anyLong());
+        verify(repository).insertAll(anyList());
+    }
+
+    @Test
+    void loginRateLimiterBatch_cookieThresholdReachedWithinBatch_returnFalse() {
+        when(repository.countWindows(eq(ipPlan), any(), anyLong())).thenReturn(Mono.just(new long[] {0, 0}));
+        when(repository.countWindows(eq(cookieIdPlan), eq(List.of("cookie")), anyLong()))
+                .thenReturn(Mono.just(new long[] {attemptsPerCookieInLastTenSeconds - 1}));
+        when(repository.countWindows(eq(usernamePlan), any(), anyLong())).thenReturn(Mono.just(new long[] {0}));
+        when(repository.insertAll(anyList())).thenReturn(Mono.just(3L));
+        var attempts = List.of(
+                attempt("ip1", "cookie", "username1"),
+                attempt("ip2", null, "username2"),
+                attempt("ip3", "cookie", "username3"));
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).loginRateLimiter(attempts))
+                .expectNext(List.of(true, true, false))
                 .verifyComplete();
     }
 
     @Test
-    void checkByUsername_whenMoreThanThresholdInLastHour_returnFalse() {
-        var attempts = new ArrayList<LoginAttempt>();
-        for (int i = 0; i <= attemptsPerUsernameInLastHour; i++){
-            attempts.add(LoginAttempt.builder().build());
-        }
-        when(repository.findAllByUsernameAndCreatedAtAfter(any(), any())).thenReturn(Flux.fromIterable(attempts));
+    void loginRateLimiterBatch_empty_returnEmpty() {
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).loginRateLimiter(List.of()))
+                .expectNext(List.of())
+                .verifyComplete();
+
+        verify(repository, times(0)).insertAll(anyList());
+    }
+
+    @Test
+    void loginRateLimiterBatch_notSubscribed_nothingQueriedAndTimeReadOnSubscribe() {
+        stubZeroCounts();
+        when(repository.insertAll(anyList())).thenReturn(Mono.just(1L));
 
-        StepVerifier.create(service.checkByUsername("username", LocalDateTime.now()))
+        var result = service(EvaluationStrategy.PARALLEL).loginRateLimiter(List.of(attempt("ip", "username")));
+        clock.advance(Duration.ofHours(3));
+
+        verify(repository, never()).countWindows(any(), any(), anyLong());
+        StepVerifier.create(result)
+                .expectNext(List.of(true))
+                .verifyComplete();
+        verify(repository).countWindows(ipPlan, List.of("ip"), clock.millis());
+    }
+
+    @Test
+    void loginRateLimiterBatch_sequential_countsOneDimensionAtATime() {
+        Sinks.One<long[]> cookieIdCounts = Sinks.one();
+        when(repository.countWindows(eq(cookieIdPlan), any(), anyLong())).thenReturn(cookieIdCounts.asMono());
+        when(repository.countWindows(eq(ipPlan), any(), anyLong())).thenReturn(Mono.just(new long[] {0, 0}));
+        when(repository.countWindows(eq(usernamePlan), any(), anyLong())).thenReturn(Mono.just(new long[] {0}));
+        when(repository.insertAll(anyList())).thenReturn(Mono.just(1L));
+
+        StepVerifier.create(service(EvaluationStrategy.SEQUENTIAL)
+                        .loginRateLimiter(List.of(attempt("ip", "cookie", "username"))))
+                .then(() -> verify(repository, never()).countWindows(eq(ipPlan), any(), anyLong()))
+                .then(() -> cookieIdCounts.tryEmitValue(new long[] {0}))
+                .expectNext(List.of(true))
+                .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiterBatch_decisionsAndStagesRecorded() {
+        stubZeroCounts();
+        when(repository.insertAll(anyList())).thenReturn(Mono.just(2L));
+        var attempts = List.of(attempt("ip", "cookie", "username1"), attempt("ip", "cookie", "username2"),
+                attempt("ip", "cookie", "username3"));
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).loginRateLimiter(attempts))
+                .expectNext(List.of(true, true, false))
+                .verifyComplete();
+
+        assertEquals(2, decisions("allow", "none"));
+        assertEquals(1, decisions("deny", "cookie-id"));
+        assertEquals(1, stageCount("save", "none"));
+        assertEquals(1, stageCount("combine", "none"));
+        assertEquals(1, stageCount("check", "cookie-id"));
+        assertEquals(3, stageCount("check", "username"));
+    }
+
+    @Test
+    void loginRateLimiterBatch_denyCacheEnabled_blockedKeysDeniedWithoutQueriesAndDeniedKeysBlocked() {
+        var cache = new BlockedKeyCache(1000, false, 4, Optional.empty(), repository, timeSource, meterRegistry);
+        var cachedService = service(DatabaseQueryMode.PER_DIMENSION, EvaluationStrategy.PARALLEL, Optional.of(cache));
+        var now = clock.millis();
+        cache.block(RuleDimension.parse("username"), List.of("blocked"), now + Duration.ofMinutes(1).toMillis());
+        stubZeroCounts();
+        when(repository.insertAll(anyList())).thenReturn(Mono.just(3L));
+        when(repository.findNthNewestCreatedAt(cookieIdPlan, List.of("cookie"), attemptsPerCookieInLastTenSeconds - 1))
+                .thenReturn(Mono.just(now));
+        var attempts = List.of(
+                attempt("ip1", "cookie", "username1"),
+                attempt("ip2", "other-cookie", "blocked"),
+                attempt("ip3", "cookie", "username3"),
+                attempt("ip4", "cookie", "username4"));
+
+        StepVerifier.create(cachedService.loginRateLimiter(attempts))
+                .expectNext(List.of(true, false, true, false))
+                .verifyComplete();
+
+        verify(repository, never()).countWindows(any(), eq(List.of("blocked")), anyLong());
+        verify(repository, never()).countWindows(any(), eq(List.of("other-cookie")), anyLong());
+        verify(repository).insertAll(argThat(saved -> saved.size() == 3));
+        assertEquals(1, decisions("deny", "username"));
+        assertEquals(1, decisions("deny", "cookie-id"));
+        assertTrue(cache.isBlocked(RuleDimension.parse("cookie-id"), List.of("cookie")));
+    }
+
+    @Test
+    void loginRateLimiter_denyCacheEnabled_blockedKeyDeniedWithoutQueriesUntilBackUnderThreshold() {
+        var cache = new BlockedKeyCache(1000, false, 4, Optional.empty(), repository, timeSource, meterRegistry);
+        var cachedService = service(DatabaseQueryMode.COMBINED, EvaluationStrategy.PARALLEL, Optional.of(cache));
+        var now = clock.millis();
+        when(repository.saveAndCountWindows(any(), eq(plan)))
+                .thenReturn(Mono.just(combinedCounts(attemptsPerCookieInLastTenSeconds + 1, 1, 1, 1)));
+        when(repository.findNthNewestCreatedAt(cookieIdPlan, List.of("cookie"), attemptsPerCookieInLastTenSeconds - 1))
+                .thenReturn(Mono.just(now - Duration.ofSeconds(2).toMillis()));
+
+        StepVerifier.create(cachedService.loginRateLimiter("ip", "cookie", "username"))
+                .expectNext(false)
+                .verifyComplete();
+        clock.advance(Duration.ofSeconds(7));
+        StepVerifier.create(cachedService.loginRateLimiter("other-ip", "cookie", "other-username"))
+                .expectNext(false)
+                .verifyComplete();
+
+        verify(repository, times(1)).saveAndCountWindows(any(), any());
+        assertEquals(2, decisions("deny", "cookie-id"));
+
+        clock.advance(Duration.ofSeconds(1));
+        StepVerifier.create(cachedService.loginRateLimiter("ip", "cookie", "username"))
+                .expectNext(false)
+                .verifyComplete();
+
+        verify(repository, times(2)).saveAndCountWindows(any(), any());
+    }
+
+    @Test
+    void blockedUntil_ip_latestOfHourAndMinuteWindows() {
+        var now = clock.millis();
+        when(repository.findNthNewestCreatedAt(ipPlan, List.of("ip"), attemptsPerIpInLastHour - 1))
+                .thenReturn(Mono.just(now - Duration.ofMinutes(50).toMillis()));
+        when(repository.findNthNewestCreatedAt(ipPlan, List.of("ip"), attemptsPerIpInLastMinute - 1))
+                .thenReturn(Mono.just(now - Duration.ofSeconds(30).toMillis()));
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).blockedUntil(ipPlan, List.of("ip")))
+                .expectNext(now + Duration.ofMinutes(10).toMillis())
+                .verifyComplete();
+    }
+
+    @Test
+    void blockedUntil_fewerAttemptsThanThreshold_empty() {
+        when(repository.findNthNewestCreatedAt(usernamePlan, List.of("username"), attemptsPerUsernameInLastHour - 1))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).blockedUntil(usernamePlan, List.of("username")))
+                .verifyComplete();
+    }
+
+    @Test
+    void check_whenMoreThanThresholdInLastHour_returnFalse() {
+        when(repository.countWindows(any(), any(), anyLong()))
+                .thenReturn(Mono.just(new long[] {attemptsPerIpInLastHour + 1, 0}));
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).check(ipPlan, List.of("ip"), clock.millis(),
+                        new HashMap<>()))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    void check_whenMoreThanThresholdInLastMinute_returnFalse() {
+        when(repository.countWindows(any(), any(), anyLong()))
+                .thenReturn(Mono.just(new long[] {attemptsPerIpInLastMinute + 1, attemptsPerIpInLastMinute + 1}));
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).check(ipPlan, List.of("ip"), clock.millis(),
+                        new HashMap<>()))
                 .expectNext(false)
                 .verifyComplete();
     }
 
     @Test
-    void checkByUsername_whenNoMoreThanThresholdInLastHour_returnTrue() {
-        var attempts = new ArrayList<LoginAttempt>();
-        for (int i = 0; i < attemptsPerUsernameInLastHour; i++){
-            attempts.add(LoginAttempt.builder().build());
-        }
-        when(repository.findAllByUsernameAndCreatedAtAfter(any(), any())).thenReturn(Flux.fromIterable(attempts));
+    void check_whenNoMoreThanThreshold_returnTrue() {
+        when(repository.countWindows(any(), any(), anyLong()))
+                .thenReturn(Mono.just(new long[] {attemptsPerIpInLastHour, attemptsPerIpInLastMinute}));
+
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).check(ipPlan, List.of("ip"), clock.millis(),
+                        new HashMap<>()))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void check_queriesDimensionKeyAtNow() {
+        var now = clock.millis();
+        when(repository.countWindows(usernamePlan, List.of("username"), now)).thenReturn(Mono.just(new long[] {0}));
 
-        StepVerifier.create(service.checkByUsername("username", LocalDateTime.now()))
+        StepVerifier.create(service(EvaluationStrategy.PARALLEL).check(usernamePlan, List.of("username"), now,
+                        new HashMap<>()))
                 .expectNext(true)
                 .verifyComplete();
     }
-}
\ No newline at end of file
+
+    private void stubSave() {
+        when(repository.insert(any()))
+                .thenReturn(Mono.just(LoginAttempt.builder().createdAt(LocalDateTime.now(clock)).build()));
+    }
+
+    private void stubZeroCounts() {
+        when(repository.countWindows(any(), any(), anyLong()))
+                .thenAnswer(invocation -> Mono.just(new long[((DimensionPlan) invocation.getArgument(0)).windowCount()]));
+    }
+
+    // Checks of the given dimensions return the given results, the others allow.
+    private void stubChecks(DefaultRateLimiterService spyService, Map<RuleDimension, Mono<Boolean>> results) {
+        doAnswer(invocation -> results.getOrDefault(((DimensionPlan) invocation.getArgument(0)).getDimension(),
+                Mono.just(true)))
+                .when(spyService).check(any(), any(), anyLong(), any());
+    }
+
+    // Counts in plan order: cookie-id in ten seconds, ip in an hour and a minute, username in an hour.
+    private static List<long[]> combinedCounts(long cookieIdLastTenSeconds, long ipLastHour, long ipLastMinute,
+            long usernameLastHour) {
+        return List.of(new long[] {cookieIdLastTenSeconds}, new long[] {ipLastHour, ipLastMinute},
+                new long[] {usernameLastHour});
+    }
+
+    private DefaultRateLimiterService combinedQueryService() {
+        return service(DatabaseQueryMode.COMBINED, EvaluationStrategy.PARALLEL, Optional.empty());
+    }
+
+    private DefaultRateLimiterService service(EvaluationStrategy evaluationStrategy) {
+        return service(DatabaseQueryMode.PER_DIMENSION, evaluationStrategy, Optional.empty());
+    }
+
+    private DefaultRateLimiterService service(DatabaseQueryMode queryMode, EvaluationStrategy evaluationStrategy,
+            Optional<BlockedKeyCache> blockedKeyCache) {
+        return new DefaultRateLimiterService(policyHolder, queryMode, evaluationStrategy, repository, timeSource,
+                new RateLimiterMetrics(meterRegistry), blockedKeyCache);
+    }
+
+    private double decisions(String result, String dimension) {
+        return meterRegistry.get("ratelimiter.login.decisions")
+                .tag("result", result)
+                .tag("dimension", dimension)
+                .counter()
+                .count();
+    }
+
+    private long stageCount(String stage, String dimension) {
+        return meterRegistry.get("ratelimiter.login.stage")
+                .tag("stage", stage)
+                .tag("dimension", dimension)
+                .timer()
+                .count();
+    }
+
+    private static LoginAttempt attempt(String ip, String username) {
+        return attempt(ip, null, username);
+    }
+
+    private static LoginAttempt attempt(String ip, String cookieId, String username) {
+        return LoginAttempt.builder().ip(ip).cookieId(cookieId).username(username).build();
+    }
+}
@@ -0,0 +1,31 @@
+package wildme.org.ratelimiter.service;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FixedWindowPlanValidatorTest {
+
+    private final FixedWindowPlanValidator validator = new FixedWindowPlanValidator();
+
+    @Test
+    void validate_fixedWindowsOnly_accepted() {
+        assertDoesNotThrow(() -> validator.validate(plan("ip/1h/15", "ip/1m/5", "username/1h/10")));
+        assertDoesNotThrow(() -> validator.validate(plan("cookie-id/10s/2")));
+    }
+
+    @Test
+    void validate_otherWindowOrDimension_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(plan("ip/1h/15", "ip/5m/3")));
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(plan("ip+username/1h/3")));
+        assertThrows(IllegalArgumentException.class, () -> validator.validate(plan("cookie-id/1h/20")));
+    }
+
+    private static EvaluationPlan plan(String... rules) {
+        return EvaluationPlan.compile(Arrays.stream(rules).map(RateLimitRule::parse).toList());
+    }
+}
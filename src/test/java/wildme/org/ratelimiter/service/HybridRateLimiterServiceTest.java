@@ -0,0 +1,235 @@
+package wildme.org.ratelimiter.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import wildme.org.ratelimiter.MutableClock;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.rule.DimensionPlan;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+import wildme.org.ratelimiter.service.DefaultRateLimiterService.CountedDecision;
+import wildme.org.ratelimiter.time.MonotonicTimeSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class HybridRateLimiterServiceTest {
+
+    private final int attemptsPerUsernameInLastHour = 10;
+    private final MutableClock clock = new MutableClock();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RateLimiterPolicyHolder policyHolder = RateLimiterPolicyHolderTest.defaultPolicyHolder();
+    @Mock
+    private DefaultRateLimiterService rateLimiterService;
+    private HybridRateLimiterService service;
+
+    @BeforeEach
+    void setUp() {
+        service = service(Optional.of(rateLimiterService), Duration.ofSeconds(10));
+    }
+
+    private HybridRateLimiterService service(Optional<DefaultRateLimiterService> rateLimiterService,
+            Duration shutdownTimeout) {
+        return new HybridRateLimiterService(policyHolder, 0.5, Duration.ofSeconds(1), 100, 4, shutdownTimeout,
+                rateLimiterService, new MonotonicTimeSource(clock, clock::nanoTime), meterRegistry);
+    }
+
+    @Test
+    void loginRateLimiter_unknownKeys_decidedRemotely() {
+        when(rateLimiterService.countedDecision("ip", null, "username")).thenReturn(decision(true, 1, 1, 1));
+
+        StepVerifier.create(service.loginRateLimiter("ip", null, "username"))
+                .expectNext(true)
+                .verifyComplete();
+
+        assertEquals(1, decisions("remote"));
+        assertEquals(0, decisions("local"));
+    }
+
+    @Test
+    void loginRateLimiter_keysFarBelowThreshold_decidedLocally() {
+        when(rateLimiterService.countedDecision(any(), any(), any())).thenReturn(decision(true, 1, 1, 1));
+        service.loginRateLimiter("ip", null, "username").block();
+
+        StepVerifier.create(service.loginRateLimiter("ip", null, "username"))
+                .expectNext(true)
+                .verifyComplete();
+
+        verify(rateLimiterService, times(1)).countedDecision(any(), any(), any());
+        assertEquals(1, decisions("remote"));
+        assertEquals(1, decisions("local"));
+    }
+
+    @Test
+    void loginRateLimiter_keyNearThreshold_decidedRemotely() {
+        when(rateLimiterService.countedDecision(any(), any(), any()))
+                .thenReturn(decision(true, 1, 1, attemptsPerUsernameInLastHour / 2),
+                        decision(false, 2, 2, attemptsPerUsernameInLastHour + 1));
+        service.loginRateLimiter("ip", null, "username").block();
+
+        StepVerifier.create(service.loginRateLimiter("ip", null, "username"))
+                .expectNext(false)
+                .verifyComplete();
+
+        assertEquals(2, decisions("remote"));
+        assertEquals(0, decisions("local"));
+    }
+
+    @Test
+    void loginRateLimiter_localBudgetUsedUp_decidedRemotely() {
+        when(rateLimiterService.countedDecision(any(), any(), any())).thenReturn(decision(true, 1, 1, 1));
+        service.loginRateLimiter("ip", null, "username").block();
+        // The ip per minute budget is floor(5 * 0.5) = 2, one is already taken by the remote count.
+        service.loginRateLimiter("ip", null, "username").block();
+
+        service.loginRateLimiter("ip", null, "username").block();
+
+        assertEquals(2, decisions("remote"));
+        assertEquals(1, decisions("local"));
+    }
+
+    @Test
+    void loginRateLimiter_staleRemoteCount_decidedRemotely() {
+        when(rateLimiterService.countedDecision(any(), any(), any())).thenReturn(decision(true, 1, 1, 1));
+        service.loginRateLimiter("ip", null, "username").block();
+
+        clock.advance(Duration.ofSeconds(5));
+        service.loginRateLimiter("ip", null, "username").block();
+
+        assertEquals(2, decisions("remote"));
+    }
+
+    @Test
+    void loginRateLimiter_ruleOfCombinedDimension_budgetedLocallyWithThePlan() {
+        policyHolder.update(List.of(RateLimitRule.parse("ip+username/5m/4")));
+        var ipUsernamePlan = policyHolder.current().plan().getDimensions().get(0);
+        when(rateLimiterService.countedDecision(any(), any(), any()))
+                .thenReturn(Mono.just(new CountedDecision(policyHolder.current().plan(), true,
+                        Map.of(ipUsernamePlan, new long[] {1}))));
+        service.loginRateLimiter("ip", null, "username").block();
+        // The ip+username budget is floor(4 * 0.5) = 2, one is already taken by the remote count.
+        service.loginRateLimiter("ip", null, "username").block();
+
+        service.loginRateLimiter("ip", null, "username").block();
+
+        assertEquals(2, decisions("remote"));
+        assertEquals(1, decisions("local"));
+    }
+
+    @Test
+    void loginRateLimiter_policyReloaded_localBudgetFollowsNewLimits() {
+        when(rateLimiterService.countedDecision(any(), any(), any())).thenReturn(decision(true, 1, 1, 1));
+        service.loginRateLimiter("ip", null, "username").block();
+
+        // The ip per minute budget is now floor(2 * 0.5) = 1, already taken by the remote count.
+        policyHolder.update(List.of(RateLimitRule.parse("ip/1h/15"), RateLimitRule.parse("ip/1m/2"),
+                RateLimitRule.parse("username/1h/10")));
+        service.loginRateLimiter("ip", null, "username").block();
+
+        assertEquals(2, decisions("remote"));
+        assertEquals(0, decisions("local"));
+    }
+
+    @Test
+    void loginRateLimiter_syncFails_localBudgetGivenBack() {
+        when(rateLimiterService.countedDecision(any(), any(), any())).thenReturn(decision(true, 1, 1, 1));
+        when(rateLimiterService.record(any(), any(), any(), any(), anyLong()))
+                .thenReturn(Mono.error(new IllegalStateException("database down")));
+        service.start();
+        service.loginRateLimiter("ip", null, "username").block();
+        service.loginRateLimiter("ip", null, "username").block();
+
+        // Without the failed sync given back, the ip per minute budget of 2 would be used up.
+        service.loginRateLimiter("ip", null, "username").block();
+
+        assertEquals(1, decisions("remote"));
+        assertEquals(2, decisions("local"));
+        service.stop();
+    }
+
+    @Test
+    void loginRateLimiterBatch_decidedRemotely() {
+        var attempts = List.of(attempt("ip", "username1"), attempt("ip", "username2"));
+        when(rateLimiterService.loginRateLimiter(attempts)).thenReturn(Mono.just(List.of(true, false)));
+
+        StepVerifier.create(service.loginRateLimiter(attempts))
+                .expectNext(List.of(true, false))
+                .verifyComplete();
+
+        assertEquals(2, decisions("remote"));
+    }
+
+    @Test
+    void stop_syncInFlight_waitsForIt() {
+        var synced = new AtomicBoolean();
+        when(rateLimiterService.countedDecision(any(), any(), any())).thenReturn(decision(true, 1, 1, 1));
+        when(rateLimiterService.record(any(), any(), any(), any(), anyLong()))
+                .thenReturn(decision(true, 2, 2, 2)
+                        .map(CountedDecision::counts)
+                        .delayElement(Duration.ofMillis(200))
+                        .doOnNext(counts -> synced.set(true)));
+        service.start();
+        service.loginRateLimiter("ip", null, "username").block();
+        service.loginRateLimiter("ip", null, "username").block();
+
+        service.stop();
+
+        assertEquals(1, decisions("local"));
+        assertTrue(synced.get());
+    }
+
+    @Test
+    void stop_syncNeverCompleting_givesUpAfterShutdownTimeout() {
+        service = service(Optional.of(rateLimiterService), Duration.ofMillis(100));
+        when(rateLimiterService.countedDecision(any(), any(), any())).thenReturn(decision(true, 1, 1, 1));
+        when(rateLimiterService.record(any(), any(), any(), any(), anyLong())).thenReturn(Mono.never());
+        service.start();
+        service.loginRateLimiter("ip", null, "username").block();
+        service.loginRateLimiter("ip", null, "username").block();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), service::stop);
+    }
+
+    @Test
+    void constructor_noDefaultRateLimiterService_failsClearly() {
+        var e = assertThrows(IllegalStateException.class, () -> service(Optional.empty(), Duration.ofSeconds(10)));
+
+        assertEquals("rate-limiter.hybrid.enabled needs rate-limiter.storage: database", e.getMessage());
+    }
+
+    // Counts of the default plan, cookie-id not counted: ip in an hour and a minute, username in an hour.
+    private Mono<CountedDecision> decision(boolean allowed, long ipLastHour, long ipLastMinute,
+            long usernameLastHour) {
+        var plan = policyHolder.current().plan();
+        Map<DimensionPlan, long[]> counts = Map.of(
+                plan.getDimensions().get(1), new long[] {ipLastHour, ipLastMinute},
+                plan.getDimensions().get(2), new long[] {usernameLastHour});
+        return Mono.just(new CountedDecision(plan, allowed, counts));
+    }
+
+    private static LoginAttempt attempt(String ip, String username) {
+        return LoginAttempt.builder().ip(ip).username(username).build();
+    }
+
+    private double decisions(String tier) {
+        return meterRegistry.get("ratelimiter.hybrid.decisions").tag("tier", tier).counter().count();
+    }
+}
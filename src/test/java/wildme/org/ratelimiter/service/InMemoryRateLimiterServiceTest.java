@@ -0,0 +1,210 @@
+package wildme.org.ratelimiter.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import wildme.org.ratelimiter.MutableClock;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+import wildme.org.ratelimiter.rule.RateLimitRules;
+import wildme.org.ratelimiter.time.MonotonicTimeSource;
+import wildme.org.ratelimiter.window.KeyStoreType;
+import wildme.org.ratelimiter.window.SlidingWindowAlgorithm;
+import wildme.org.ratelimiter.window.WindowCounterFactory;
+import wildme.org.ratelimiter.writebehind.LoginAttemptWriteBehindQueue;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InMemoryRateLimiterServiceTest {
+
+    private final int attemptsPerIpInLastHour = 15;
+    private final int attemptsPerIpInLastMinute = 5;
+    private final int attemptsPerCookieInLastTenSeconds = 2;
+    private final int attemptsPerUsernameInLastHour = 10;
+    private final MutableClock clock = new MutableClock();
+    private final RateLimiterPolicyHolder policyHolder = RateLimiterPolicyHolderTest.defaultPolicyHolder();
+
+    static Stream<WindowCounterFactory> windowCounterFactories() {
+        return Stream.of(
+                windowCounterFactory(SlidingWindowAlgorithm.SLIDING_LOG, KeyStoreType.CONCURRENT_MAP, false),
+                windowCounterFactory(SlidingWindowAlgorithm.BUCKETED, KeyStoreType.CONCURRENT_MAP, false),
+                windowCounterFactory(SlidingWindowAlgorithm.BUCKETED, KeyStoreType.STRIPED, false),
+                windowCounterFactory(SlidingWindowAlgorithm.SLIDING_LOG, KeyStoreType.CONCURRENT_MAP, true));
+    }
+
+    private static WindowCounterFactory windowCounterFactory(SlidingWindowAlgorithm algorithm, KeyStoreType keyStore,
+            boolean sketchEnabled) {
+        return new WindowCounterFactory(algorithm, 60, keyStore, 1000, 4, sketchEnabled, 12, 0.001, 0.01, 0.5, 1000);
+    }
+
+    private InMemoryRateLimiterService service(WindowCounterFactory windowCounterFactory) {
+        return new InMemoryRateLimiterService(policyHolder, windowCounterFactory, 1000, Optional.empty(),
+                Optional.empty(), new MonotonicTimeSource(clock, clock::nanoTime), new SimpleMeterRegistry());
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiter_noThresholdReached_returnTrue(WindowCounterFactory windowCounterFactory) {
+        StepVerifier.create(service(windowCounterFactory).loginRateLimiter("ip", "cookie", "username"))
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiter_moreSameIpInLastHourThanThreshold_returnFalse(WindowCounterFactory windowCounterFactory) {
+        var service = service(windowCounterFactory);
+        for (int i = 0; i < attemptsPerIpInLastHour; i++) {
+            expect(service, "ip", null, "username" + i, true);
+            clock.advance(Duration.ofMinutes(2));
+        }
+
+        expect(service, "ip", null, "username", false);
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiter_moreSameIpInLastMinuteThanThreshold_returnFalse(WindowCounterFactory windowCounterFactory) {
+        var service = service(windowCounterFactory);
+        for (int i = 0; i < attemptsPerIpInLastMinute; i++) {
+            expect(service, "ip", null, "username" + i, true);
+        }
+
+        expect(service, "ip", null, "username", false);
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiter_moreSameCookieInLastTenSecondsThanThreshold_returnFalse(WindowCounterFactory windowCounterFactory) {
+        var service = service(windowCounterFactory);
+        for (int i = 0; i < attemptsPerCookieInLastTenSeconds; i++) {
+            expect(service, "ip" + i, "cookie", "username" + i, true);
+        }
+
+        expect(service, "ip", "cookie", "username", false);
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiter_noCookieId_cookieThresholdIgnored(WindowCounterFactory windowCounterFactory) {
+        var service = service(windowCounterFactory);
+        for (int i = 0; i <= attemptsPerCookieInLastTenSeconds; i++) {
+            expect(service, "ip" + i, null, "username" + i, true);
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiter_moreUsernamesInLastHourThanThreshold_returnFalse(WindowCounterFactory windowCounterFactory) {
+        var service = service(windowCounterFactory);
+        for (int i = 0; i < attemptsPerUsernameInLastHour; i++) {
+            expect(service, "ip" + i, null, "username", true);
+            clock.advance(Duration.ofMinutes(2));
+        }
+
+        expect(service, "ip", null, "username", false);
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiter_windowElapsed_returnTrue(WindowCounterFactory windowCounterFactory) {
+        var service = service(windowCounterFactory);
+        for (int i = 0; i <= attemptsPerUsernameInLastHour; i++) {
+            service.loginRateLimiter("ip" + i, null, "username").block();
+        }
+        expect(service, "ip", null, "username", false);
+
+        clock.advance(Duration.ofHours(2));
+
+        expect(service, "ip", null, "username", true);
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiterBatch_sameCookie_appliedInOrder(WindowCounterFactory windowCounterFactory) {
+        var attempts = List.of(
+                LoginAttempt.builder().ip("ip1").cookieId("cookie").username("username1").build(),
+                LoginAttempt.builder().ip("ip2").cookieId("cookie").username("username2").build(),
+                LoginAttempt.builder().ip("ip3").cookieId("cookie").username("username3").build());
+
+        StepVerifier.create(service(windowCounterFactory).loginRateLimiter(attempts))
+                .expectNext(List.of(true, true, false))
+                .verifyComplete();
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiter_limitRaisedAndLowered_countsKept(WindowCounterFactory windowCounterFactory) {
+        var service = service(windowCounterFactory);
+        for (int i = 0; i < attemptsPerIpInLastMinute; i++) {
+            expect(service, "ip", null, "username" + i, true);
+        }
+        expect(service, "ip", null, "username", false);
+
+        policyHolder.update(RateLimitRules.defaults(attemptsPerIpInLastHour, 10, attemptsPerCookieInLastTenSeconds,
+                attemptsPerUsernameInLastHour));
+        for (int i = attemptsPerIpInLastMinute + 2; i <= 10; i++) {
+            expect(service, "ip", null, "username" + i, true);
+        }
+        expect(service, "ip", null, "username", false);
+
+        policyHolder.update(RateLimitRules.defaults(attemptsPerIpInLastHour, 3, attemptsPerCookieInLastTenSeconds,
+                attemptsPerUsernameInLastHour));
+        expect(service, "other-ip", null, "other-username", true);
+        expect(service, "ip", null, "other-username", false);
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiter_ruleRemovedThenAddedBack_windowKeptCounting(WindowCounterFactory windowCounterFactory) {
+        var service = service(windowCounterFactory);
+        for (int i = 0; i < 3; i++) {
+            expect(service, "ip", null, "username" + i, true);
+        }
+
+        policyHolder.update(List.of(RateLimitRule.parse("ip/1h/" + attemptsPerIpInLastHour),
+                RateLimitRule.parse("cookie-id/10s/" + attemptsPerCookieInLastTenSeconds),
+                RateLimitRule.parse("username/1h/" + attemptsPerUsernameInLastHour)));
+        for (int i = 3; i < 6; i++) {
+            expect(service, "ip", null, "username" + i, true);
+        }
+
+        policyHolder.update(RateLimitRules.defaults(attemptsPerIpInLastHour, attemptsPerIpInLastMinute,
+                attemptsPerCookieInLastTenSeconds, attemptsPerUsernameInLastHour));
+        expect(service, "ip", null, "username", false);
+    }
+
+    @ParameterizedTest
+    @MethodSource("windowCounterFactories")
+    void loginRateLimiter_writeBehindEnabled_queuesAttempt(WindowCounterFactory windowCounterFactory) {
+        var queue = mock(LoginAttemptWriteBehindQueue.class);
+        when(queue.enqueue(any())).thenReturn(Mono.empty());
+        var service = new InMemoryRateLimiterService(policyHolder, windowCounterFactory, 1000, Optional.of(queue),
+                Optional.empty(), new MonotonicTimeSource(clock, clock::nanoTime), new SimpleMeterRegistry());
+
+        expect(service, "ip", "cookie", "username", true);
+
+        verify(queue).enqueue(LoginAttempt.builder()
+                .ip("ip")
+                .cookieId("cookie")
+                .username("username")
+                .createdAt(LocalDateTime.ofInstant(clock.instant(), clock.getZone()))
+                .build());
+    }
+
+    private void expect(IRateLimiterService service, String ip, String cookieId, String username, boolean allowed) {
+        StepVerifier.create(service.loginRateLimiter(ip, cookieId, username))
+                .expectNext(allowed)
+                .verifyComplete();
+    }
+}
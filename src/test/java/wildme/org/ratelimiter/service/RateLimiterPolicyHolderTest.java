@@ -0,0 +1,154 @@
+package wildme.org.ratelimiter.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import wildme.org.ratelimiter.rule.EvaluationPlan;
+import wildme.org.ratelimiter.rule.RateLimitRule;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RateLimiterPolicyHolderTest {
+
+    @TempDir
+    Path directory;
+    private final List<Object> events = new ArrayList<>();
+
+    static RateLimiterPolicyHolder defaultPolicyHolder() {
+        return new RateLimiterPolicyHolder(new MockEnvironment(), "", Duration.ofSeconds(5), event -> {
+        }, List.of());
+    }
+
+    @Test
+    void current_noRules_thresholdsAsRules() {
+        var environment = new MockEnvironment()
+                .withProperty("rate-limiter.thresholds.attempts-per-ip-in-last-minute", "7");
+
+        var policy = holder(environment, "").current();
+
+        assertEquals(1, policy.version());
+        assertEquals(List.of("ip/1h/15", "ip/1m/7", "cookie-id/10s/2", "username/1h/10"), rules(policy));
+        assertEquals(7, policy.thresholds().getAttemptsPerIpInLastMinute());
+    }
+
+    @Test
+    void update_swapsSnapshotAndPublishesIt() {
+        var holder = holder(new MockEnvironment(), "");
+        var previous = holder.current();
+
+        var next = holder.update(List.of(RateLimitRule.parse("ip/1m/3"), RateLimitRule.parse("ip+username/5m/3")));
+
+        assertSame(next, holder.current());
+        assertEquals(2, next.version());
+        assertEquals(List.of(next), events);
+        assertEquals(3, next.thresholds().getAttemptsPerIpInLastMinute());
+        // The fixed windows without a rule are no longer limited.
+        assertEquals(Integer.MAX_VALUE, next.thresholds().getAttemptsPerUsernameInLastHour());
+        assertEquals(List.of("ip/1h/15", "ip/1m/5", "cookie-id/10s/2", "username/1h/10"), rules(previous));
+    }
+
+    @Test
+    void reloadIfModified_fileChanged_fileRulesApplied() throws IOException {
+        var file = directory.resolve("policy.yml");
+        Files.writeString(file, "rate-limiter:\n  rules:\n    - ip/1m/5\n");
+        var holder = holder(new MockEnvironment().withProperty("rate-limiter.rules[0]", "username/1h/10"),
+                file.toString());
+        assertEquals(List.of("ip/1m/5"), rules(holder.current()));
+
+        Files.writeString(file, "rate-limiter:\n  rules:\n    - ip/1m/3\n    - ip+username/5m/2\n");
+        touch(file);
+        holder.reloadIfModified();
+
+        assertEquals(2, holder.current().version());
+        assertEquals(List.of("ip/1m/3", "ip+username/5m/2"), rules(holder.current()));
+
+        holder.reloadIfModified();
+
+        assertEquals(2, holder.current().version());
+    }
+
+    @Test
+    void reloadIfModified_propertiesFileOverridesOneThreshold() throws IOException {
+        var file = directory.resolve("policy.properties");
+        Files.writeString(file, "");
+        var holder = holder(new MockEnvironment()
+                .withProperty("rate-limiter.thresholds.attempts-per-username-in-last-hour", "20"), file.toString());
+
+        Files.writeString(file, "rate-limiter.thresholds.attempts-per-ip-in-last-hour=30\n");
+        touch(file);
+        holder.reloadIfModified();
+
+        assertEquals(30, holder.current().thresholds().getAttemptsPerIpInLastHour());
+        assertEquals(20, holder.current().thresholds().getAttemptsPerUsernameInLastHour());
+    }
+
+    @Test
+    void reloadIfModified_invalidRules_currentPolicyKept() throws IOException {
+        var file = directory.resolve("policy.yml");
+        Files.writeString(file, "rate-limiter:\n  rules:\n    - ip/1m/5\n");
+        var holder = holder(new MockEnvironment(), file.toString());
+        var current = holder.current();
+
+        Files.writeString(file, "rate-limiter:\n  rules:\n    - ip/every-minute/5\n");
+        touch(file);
+        holder.reloadIfModified();
+
+        assertSame(current, holder.current());
+        assertEquals(List.of(), events);
+    }
+
+    @Test
+    void update_invalidRules_throws() {
+        var holder = holder(new MockEnvironment(), "");
+
+        assertThrows(IllegalArgumentException.class, () -> holder.update(List.of()));
+        assertEquals(1, holder.current().version());
+    }
+
+    @Test
+    void new_rulesRejectedByValidator_throws() {
+        var environment = new MockEnvironment().withProperty("rate-limiter.rules[0]", "ip/1d/100");
+
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiterPolicyHolder(environment, "",
+                Duration.ofSeconds(5), events::add, List.of(RateLimiterPolicyHolderTest::atMostOneHour)));
+    }
+
+    @Test
+    void update_rulesRejectedByValidator_currentPolicyKept() {
+        var holder = new RateLimiterPolicyHolder(new MockEnvironment(), "", Duration.ofSeconds(5), events::add,
+                List.of(RateLimiterPolicyHolderTest::atMostOneHour));
+        var current = holder.current();
+
+        assertThrows(IllegalArgumentException.class, () -> holder.update(List.of(RateLimitRule.parse("ip/1d/100"))));
+        assertSame(current, holder.current());
+        assertEquals(List.of(), events);
+    }
+
+    private static void atMostOneHour(EvaluationPlan plan) {
+        if (plan.widestWindow().compareTo(Duration.ofHours(1)) > 0) {
+            throw new IllegalArgumentException("Window too wide");
+        }
+    }
+
+    private RateLimiterPolicyHolder holder(MockEnvironment environment, String file) {
+        return new RateLimiterPolicyHolder(environment, file, Duration.ofSeconds(5), events::add, List.of());
+    }
+
+    private static List<String> rules(RateLimiterPolicy policy) {
+        return policy.plan().getRules().stream().map(RateLimitRule::toString).toList();
+    }
+
+    // File systems with a coarse modification time could otherwise miss a rewrite within the same tick.
+    private static void touch(Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.from(Files.getLastModifiedTime(file).toInstant().plusSeconds(2)));
+    }
+}
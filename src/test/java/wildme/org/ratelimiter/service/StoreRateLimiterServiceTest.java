@@ -0,0 +1,76 @@
+package wildme.org.ratelimiter.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import wildme.org.ratelimiter.model.LoginAttemptCounts;
+import wildme.org.ratelimiter.store.LoginAttemptStore;
+import wildme.org.ratelimiter.time.MonotonicTimeSource;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StoreRateLimiterServiceTest {
+
+    private final int attemptsPerIpInLastHour = 15;
+    private final int attemptsPerIpInLastMinute = 5;
+    private final int attemptsPerCookieInLastTenSeconds = 2;
+    private final int attemptsPerUsernameInLastHour = 10;
+    private final Clock clock = Clock.fixed(Instant.parse("2022-12-01T10:00:00Z"), ZoneOffset.UTC);
+    @Mock
+    private LoginAttemptStore store;
+    private StoreRateLimiterService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new StoreRateLimiterService(RateLimiterPolicyHolderTest.defaultPolicyHolder(), store,
+                new MonotonicTimeSource(clock, () -> 0L));
+    }
+
+    @Test
+    void loginRateLimiter_noThresholdReached_returnTrue() {
+        when(store.recordAndCount(any(), any(), any(), anyLong(), any()))
+                .thenReturn(Mono.just(new LoginAttemptCounts(attemptsPerIpInLastHour, attemptsPerIpInLastMinute,
+                        attemptsPerCookieInLastTenSeconds, attemptsPerUsernameInLastHour)));
+
+        StepVerifier.create(service.loginRateLimiter("ip", "cookie", "username"))
+                .expectNext(true)
+                .verifyComplete();
+
+        verify(store).recordAndCount(eq("ip"), eq("cookie"), eq("username"), eq(clock.millis()),
+                argThat(thresholds -> thresholds.getAttemptsPerIpInLastHour() == attemptsPerIpInLastHour));
+    }
+
+    @Test
+    void loginRateLimiter_ipThresholdInLastMinuteReached_returnFalse() {
+        when(store.recordAndCount(any(), any(), any(), anyLong(), any()))
+                .thenReturn(Mono.just(new LoginAttemptCounts(attemptsPerIpInLastMinute + 1,
+                        attemptsPerIpInLastMinute + 1, 0, 1)));
+
+        StepVerifier.create(service.loginRateLimiter("ip", null, "username"))
+                .expectNext(false)
+                .verifyComplete();
+    }
+
+    @Test
+    void loginRateLimiter_usernameThresholdReached_returnFalse() {
+        when(store.recordAndCount(any(), any(), any(), anyLong(), any()))
+                .thenReturn(Mono.just(new LoginAttemptCounts(1, 1, 1, attemptsPerUsernameInLastHour + 1)));
+
+        StepVerifier.create(service.loginRateLimiter("ip", "cookie", "username"))
+                .expectNext(false)
+                .verifyComplete();
+    }
+}
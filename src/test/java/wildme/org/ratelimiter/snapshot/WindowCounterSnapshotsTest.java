@@ -0,0 +1,145 @@
+package wildme.org.ratelimiter.snapshot;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import wildme.org.ratelimiter.time.MonotonicTimeSource;
+import wildme.org.ratelimiter.time.TimeSource;
+import wildme.org.ratelimiter.window.ConcurrentMapWindowCounter;
+import wildme.org.ratelimiter.window.SlidingWindowAlgorithm;
+import wildme.org.ratelimiter.window.StripedWindowCounter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class WindowCounterSnapshotsTest {
+
+    private static final long NOW = 1_669_888_800_000L;
+    private static final long MINUTE = 60_000L;
+    private static final int LIMIT = 10;
+
+    @TempDir
+    Path directory;
+    private final TimeSource timeSource = new MonotonicTimeSource(Clock.fixed(Instant.ofEpochMilli(NOW),
+            ZoneId.of("UTC")), () -> 0L);
+
+    @Test
+    void register_afterWrite_countsContinue() throws IOException {
+        var path = directory.resolve("snapshot.bin");
+        var striped = new StripedWindowCounter(Duration.ofHours(1), 60, 1000, 4);
+        var slidingLog = new ConcurrentMapWindowCounter(Duration.ofMinutes(1), SlidingWindowAlgorithm.SLIDING_LOG, 60);
+        var bucketed = new ConcurrentMapWindowCounter(Duration.ofHours(1), SlidingWindowAlgorithm.BUCKETED, 60);
+        for (int i = 0; i < 3; i++) {
+            striped.incrementAndCount("ip", NOW + i * MINUTE, LIMIT);
+            slidingLog.incrementAndCount("ip", NOW + i * 1000, LIMIT);
+            bucketed.incrementAndCount("username", NOW + i * MINUTE, LIMIT);
+        }
+        var snapshots = new WindowCounterSnapshots(path, Duration.ofSeconds(30), timeSource);
+        snapshots.register(Map.of("striped", striped, "sliding-log", slidingLog, "bucketed", bucketed));
+        snapshots.write();
+
+        var restoredStriped = new StripedWindowCounter(Duration.ofHours(1), 60, 1000, 4);
+        var restoredSlidingLog = new ConcurrentMapWindowCounter(Duration.ofMinutes(1),
+                SlidingWindowAlgorithm.SLIDING_LOG, 60);
+        var restoredBucketed = new ConcurrentMapWindowCounter(Duration.ofHours(1), SlidingWindowAlgorithm.BUCKETED, 60);
+        new WindowCounterSnapshots(path, Duration.ofSeconds(30), timeSource).register(Map.of(
+                "striped", restoredStriped, "sliding-log", restoredSlidingLog, "bucketed", restoredBucketed));
+
+        assertEquals(4, restoredStriped.incrementAndCount("ip", NOW + 10 * MINUTE, LIMIT));
+        assertEquals(1, restoredStriped.incrementAndCount("other", NOW + 10 * MINUTE, LIMIT));
+        assertEquals(4, restoredBucketed.incrementAndCount("username", NOW + 10 * MINUTE, LIMIT));
+        // Expired timestamps are dropped lazily, on the first use after the restore.
+        assertEquals(2, restoredSlidingLog.incrementAndCount("ip", NOW + 61_500, LIMIT));
+        assertFalse(Files.exists(directory.resolve("snapshot.bin.tmp")));
+    }
+
+    @Test
+    void register_differentConfiguration_sectionSkipped() throws IOException {
+        var path = directory.resolve("snapshot.bin");
+        var oneHour = new StripedWindowCounter(Duration.ofHours(1), 60, 1000, 4);
+        var oneMinute = new StripedWindowCounter(Duration.ofMinutes(1), 60, 1000, 4);
+        oneHour.incrementAndCount("ip", NOW, LIMIT);
+        oneMinute.incrementAndCount("ip", NOW, LIMIT);
+        var snapshots = new WindowCounterSnapshots(path, Duration.ofSeconds(30), timeSource);
+        snapshots.register(Map.of("ip-last-hour", oneHour, "ip-last-minute", oneMinute));
+        snapshots.write();
+
+        var resized = new StripedWindowCounter(Duration.ofHours(1), 12, 1000, 4);
+        var restoredOneMinute = new StripedWindowCounter(Duration.ofMinutes(1), 60, 1000, 4);
+        new WindowCounterSnapshots(path, Duration.ofSeconds(30), timeSource)
+                .register(Map.of("ip-last-hour", resized, "ip-last-minute", restoredOneMinute));
+
+        assertEquals(1, resized.incrementAndCount("ip", NOW, LIMIT));
+        assertEquals(2, restoredOneMinute.incrementAndCount("ip", NOW, LIMIT));
+    }
+
+    @Test
+    void register_noSnapshotOrCorrupted_startsEmpty() throws IOException {
+        var counter = new StripedWindowCounter(Duration.ofHours(1), 60, 1000, 4);
+        new WindowCounterSnapshots(directory.resolve("missing.bin"), Duration.ofSeconds(30), timeSource)
+                .register(Map.of("ip-last-hour", counter));
+        var corrupted = directory.resolve("corrupted.bin");
+        Files.write(corrupted, new byte[] {1, 2, 3});
+        new WindowCounterSnapshots(corrupted, Duration.ofSeconds(30), timeSource)
+                .register(Map.of("ip-last-hour", counter));
+
+        assertEquals(1, counter.incrementAndCount("ip", NOW, LIMIT));
+    }
+
+    @Test
+    void register_truncatedStripedSection_counterLeftAsItWas() throws IOException {
+        var path = directory.resolve("snapshot.bin");
+        var counter = new StripedWindowCounter(Duration.ofHours(1), 60, 1000, 4);
+        for (int i = 0; i < 20; i++) {
+            counter.incrementAndCount("ip" + i, NOW, LIMIT);
+        }
+        var snapshots = new WindowCounterSnapshots(path, Duration.ofSeconds(30), timeSource);
+        snapshots.register(Map.of("ip-last-hour", counter));
+        snapshots.write();
+        truncate(path, Integer.BYTES);
+
+        var restored = new StripedWindowCounter(Duration.ofHours(1), 60, 1000, 4);
+        new WindowCounterSnapshots(path, Duration.ofSeconds(30), timeSource)
+                .register(Map.of("ip-last-hour", restored));
+
+        // The last stripe is cut short, so none of the stripes before it is restored either.
+        for (int i = 0; i < 20; i++) {
+            assertEquals(1, restored.incrementAndCount("ip" + i, NOW, LIMIT));
+        }
+    }
+
+    @Test
+    void register_truncatedConcurrentMapSection_counterLeftAsItWas() throws IOException {
+        var path = directory.resolve("snapshot.bin");
+        var counter = new ConcurrentMapWindowCounter(Duration.ofHours(1), SlidingWindowAlgorithm.BUCKETED, 60);
+        counter.incrementAndCount("username", NOW, LIMIT);
+        counter.incrementAndCount("other", NOW, LIMIT);
+        var snapshots = new WindowCounterSnapshots(path, Duration.ofSeconds(30), timeSource);
+        snapshots.register(Map.of("username-last-hour", counter));
+        snapshots.write();
+        truncate(path, Long.BYTES);
+
+        var restored = new ConcurrentMapWindowCounter(Duration.ofHours(1), SlidingWindowAlgorithm.BUCKETED, 60);
+        restored.incrementAndCount("existing", NOW, LIMIT);
+        new WindowCounterSnapshots(path, Duration.ofSeconds(30), timeSource)
+                .register(Map.of("username-last-hour", restored));
+
+        assertEquals(2, restored.incrementAndCount("existing", NOW, LIMIT));
+        assertEquals(1, restored.incrementAndCount("username", NOW, LIMIT));
+    }
+
+    private static void truncate(Path path, int bytes) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+}
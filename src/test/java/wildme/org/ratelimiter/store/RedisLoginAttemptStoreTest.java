@@ -0,0 +1,118 @@
+package wildme.org.ratelimiter.store;
+
+import java.io.IOException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import reactor.test.StepVerifier;
+import redis.embedded.RedisServer;
+import wildme.org.ratelimiter.model.LoginAttemptCounts;
+import wildme.org.ratelimiter.service.RateLimiterThresholds;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class RedisLoginAttemptStoreTest {
+
+    private static final int PORT = 6380;
+    private static final long NOW = 1_669_888_800_000L;
+    private static final RateLimiterThresholds THRESHOLDS = new RateLimiterThresholds(15, 5, 2, 10);
+
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private ReactiveStringRedisTemplate redisTemplate;
+    private RedisLoginAttemptStore store;
+
+    @BeforeAll
+    void startRedis() throws IOException {
+        redisServer = new RedisServer(PORT);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory("localhost", PORT);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+        store = new RedisLoginAttemptStore(redisTemplate, "test:", 1000);
+    }
+
+    @AfterEach
+    void flush() {
+        StepVerifier.create(redisTemplate.execute(connection -> connection.serverCommands().flushAll()))
+                .expectNext("OK")
+                .verifyComplete();
+    }
+
+    @AfterAll
+    void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    void recordAndCount_firstAttempt_countsOne() {
+        StepVerifier.create(store.recordAndCount("ip", "cookie", "username", NOW, THRESHOLDS))
+                .expectNext(new LoginAttemptCounts(1, 1, 1, 1))
+                .verifyComplete();
+    }
+
+    @Test
+    void recordAndCount_countsEachWindowSeparately() {
+        seed("{test:}ip:ip", NOW - 30 * 60_000, NOW - 30_000);
+        seed("{test:}cookie:cookie", NOW - 30 * 60_000, NOW - 30_000);
+        seed("{test:}username:username", NOW - 30 * 60_000);
+
+        StepVerifier.create(store.recordAndCount("ip", "cookie", "username", NOW, THRESHOLDS))
+                .expectNext(new LoginAttemptCounts(3, 2, 1, 2))
+                .verifyComplete();
+    }
+
+    @Test
+    void recordAndCount_noCookieId_cookieCountZero() {
+        StepVerifier.create(store.recordAndCount("ip", null, "username", NOW, THRESHOLDS))
+                .expectNext(new LoginAttemptCounts(1, 1, 0, 1))
+                .verifyComplete();
+    }
+
+    @Test
+    void recordAndCount_attemptsOutsideWindowIgnored() {
+        seed("{test:}ip:ip", NOW - 2 * 3_600_000);
+        seed("{test:}username:username", NOW - 2 * 3_600_000);
+
+        StepVerifier.create(store.recordAndCount("ip", "cookie", "username", NOW, THRESHOLDS))
+                .expectNext(new LoginAttemptCounts(1, 1, 1, 1))
+                .verifyComplete();
+    }
+
+    @Test
+    void recordAndCount_callerClockUsed() {
+        store.recordAndCount("ip", "cookie", "username", NOW - 2 * 3_600_000, THRESHOLDS).block();
+        store.recordAndCount("ip", "cookie", "username", NOW - 30_000, THRESHOLDS).block();
+
+        StepVerifier.create(store.recordAndCount("ip", "cookie", "username", NOW, THRESHOLDS))
+                .expectNext(new LoginAttemptCounts(2, 2, 1, 2))
+                .verifyComplete();
+    }
+
+    @Test
+    void recordAndCount_keyUnderAttack_keepsLimitPlusOneAttempts() {
+        var thresholds = new RateLimiterThresholds(3, 2, 2, 10);
+        for (int i = 0; i < 20; i++) {
+            store.recordAndCount("ip", null, "username" + i, NOW, thresholds).block();
+        }
+
+        StepVerifier.create(store.recordAndCount("ip", null, "username", NOW, thresholds))
+                .expectNext(new LoginAttemptCounts(4, 4, 0, 1))
+                .verifyComplete();
+        StepVerifier.create(redisTemplate.opsForZSet().size("{test:}ip:ip"))
+                .expectNext(4L)
+                .verifyComplete();
+    }
+
+    private void seed(String key, long... times) {
+        for (var time : times) {
+            StepVerifier.create(redisTemplate.opsForZSet().add(key, "seed:" + time, time))
+                    .expectNext(true)
+                    .verifyComplete();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package wildme.org.ratelimiter.time;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.Test;
+import wildme.org.ratelimiter.MutableClock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MonotonicTimeSourceTest {
+
+    private final MutableClock clock = new MutableClock();
+    private final MonotonicTimeSource timeSource = new MonotonicTimeSource(clock, clock::nanoTime);
+
+    @Test
+    void currentTimeMillis_clockAdvanced_followsClock() {
+        var start = timeSource.currentTimeMillis();
+        clock.advance(Duration.ofHours(2));
+
+        assertEquals(clock.millis(), timeSource.currentTimeMillis());
+        assertEquals(Duration.ofHours(2).toMillis(), timeSource.currentTimeMillis() - start);
+    }
+
+    @Test
+    void currentTimeMillis_clockSetBack_neverGoesBackAndSlewsTowardsClock() {
+        clock.advance(Duration.ofSeconds(10));
+        var latest = timeSource.currentTimeMillis();
+        clock.jump(Duration.ofSeconds(-5));
+
+        assertEquals(latest, timeSource.currentTimeMillis());
+
+        clock.advance(Duration.ofSeconds(1));
+
+        assertEquals(latest + 950, timeSource.currentTimeMillis());
+
+        for (int second = 0; second < 100; second++) {
+            clock.advance(Duration.ofSeconds(1));
+            assertTrue(timeSource.currentTimeMillis() > latest + 950 + second * 900L);
+        }
+
+        assertEquals(clock.millis(), timeSource.currentTimeMillis());
+    }
+
+    @Test
+    void currentTimeMillis_clockJumpedForward_keepsRunningInsteadOfFreezingAfterCorrection() {
+        var start = timeSource.currentTimeMillis();
+        clock.jump(Duration.ofDays(1));
+        clock.advance(Duration.ofMinutes(1));
+
+        assertEquals(start + 60_050, timeSource.currentTimeMillis());
+
+        // NTP sets the clock right again: time neither goes back nor stands still, so windows keep expiring.
+        clock.jump(Duration.ofDays(-1));
+        clock.advance(Duration.ofMinutes(1));
+
+        assertEquals(start + 120_000, timeSource.currentTimeMillis());
+        assertEquals(clock.millis(), timeSource.currentTimeMillis());
+    }
+
+    @Test
+    void toLocalDateTime_inClockZone_roundTrips() {
+        var now = timeSource.currentTimeMillis();
+        var dateTime = timeSource.toLocalDateTime(now);
+
+        assertEquals(ZoneOffset.UTC, timeSource.zone());
+        assertEquals(LocalDateTime.parse("2022-12-01T10:00:00"), dateTime);
+        assertEquals(now, timeSource.toEpochMillis(dateTime));
+    }
+}
@@ -0,0 +1,71 @@
+package wildme.org.ratelimiter.window;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrentMapWindowCounterTest {
+
+    private static final long NOW = 1_669_888_800_000L;
+    private static final long MINUTE = 60_000L;
+    private static final int LIMIT = 10;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void incrementAndCount_keysIdleForAWindow_sweptOut() {
+        var counter = new ConcurrentMapWindowCounter(Duration.ofMinutes(1), SlidingWindowAlgorithm.SLIDING_LOG, 60);
+        for (int i = 0; i < 1000; i++) {
+            counter.incrementAndCount("key" + i, NOW, LIMIT);
+        }
+        counter.incrementAndCount("live", NOW + 50_000, LIMIT);
+
+        // The sweep at NOW + 100s drops the keys idle since NOW, not the one seen at NOW + 50s.
+        assertEquals(2, counter.incrementAndCount("live", NOW + 100_000, LIMIT));
+        assertEquals(1, counter.size());
+        assertEquals(1, counter.incrementAndCount("key0", NOW + 100_000, LIMIT));
+    }
+
+    @Test
+    void incrementAndCount_bucketedKeyStillCountedInItsExtraBucket_kept() {
+        var counter = new ConcurrentMapWindowCounter(Duration.ofMinutes(1), SlidingWindowAlgorithm.BUCKETED, 6);
+        counter.incrementAndCount("a", NOW + 9_000, LIMIT);
+        counter.incrementAndCount("b", NOW + MINUTE, LIMIT);
+
+        // A window later the bucket of "a" is the partially elapsed oldest one, which the bucketed counter still counts.
+        assertEquals(2, counter.incrementAndCount("a", NOW + MINUTE + 9_000, LIMIT));
+        assertEquals(2, counter.size());
+    }
+
+    @Test
+    void readSnapshot_restoredKeys_keptUntilASweepSeesThemIdle() throws Exception {
+        var counter = new ConcurrentMapWindowCounter(Duration.ofMinutes(1), SlidingWindowAlgorithm.SLIDING_LOG, 60);
+        counter.incrementAndCount("restored", NOW, LIMIT);
+        var restored = new ConcurrentMapWindowCounter(Duration.ofMinutes(1), SlidingWindowAlgorithm.SLIDING_LOG, 60);
+        restore(restored, counter);
+
+        restored.incrementAndCount("other", NOW + 2 * MINUTE, LIMIT);
+        assertEquals(2, restored.size());
+
+        restored.incrementAndCount("other", NOW + 4 * MINUTE, LIMIT);
+        assertEquals(1, restored.size());
+    }
+
+    private void restore(ConcurrentMapWindowCounter target, ConcurrentMapWindowCounter source) throws Exception {
+        var file = directory.resolve("counters.snapshot");
+        try (var channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            var writer = new SnapshotWriter(channel);
+            source.writeSnapshot(writer);
+            writer.flush();
+        }
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            target.readSnapshot(new SnapshotReader(channel));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package wildme.org.ratelimiter.window;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinSketchTest {
+
+    private static final double EPSILON = 0.001;
+    private static final double DELTA = 0.01;
+
+    @Test
+    void constructor_sizesFromErrorBounds() {
+        var sketch = new CountMinSketch(EPSILON, DELTA);
+
+        assertEquals(2719, sketch.width());
+        assertEquals(5, sketch.depth());
+    }
+
+    @Test
+    void estimate_neverUnderCountsAndExceedsErrorBoundAtMostDeltaOfTheTime() {
+        var sketch = new CountMinSketch(EPSILON, DELTA);
+        var keys = 20_000;
+        var events = 200_000;
+        var trueCounts = new int[keys];
+        var random = new Random(42);
+        for (int i = 0; i < events; i++) {
+            // Skewed towards low key numbers, like an attack concentrated on a few ips.
+            var key = (int) (keys * Math.pow(random.nextDouble(), 3));
+            trueCounts[key]++;
+            sketch.add(KeyHash.hash64("key" + key));
+        }
+
+        var maxError = EPSILON * events;
+        var overErrorBound = 0;
+        for (int key = 0; key < keys; key++) {
+            var estimate = sketch.estimate(KeyHash.hash64("key" + key));
+            assertTrue(estimate >= trueCounts[key], "under-counted key" + key);
+            if (estimate - trueCounts[key] > maxError) {
+                overErrorBound++;
+            }
+        }
+        assertTrue((double) overErrorBound / keys <= DELTA,
+                overErrorBound + " keys exceeded the error bound of " + maxError);
+    }
+
+    @Test
+    void add_concurrentAddsOfOneKey_noneLost() throws Exception {
+        var sketch = new CountMinSketch(EPSILON, DELTA);
+        var threads = 4;
+        var perThread = 100_000;
+        var pool = Executors.newFixedThreadPool(threads);
+        try {
+            var tasks = new ArrayList<Callable<Object>>();
+            for (int t = 0; t < threads; t++) {
+                tasks.add(Executors.callable(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        sketch.add(1L);
+                    }
+                }));
+            }
+            for (var future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(threads * perThread, sketch.estimate(1L));
+    }
+
+    @Test
+    void clear_resetsEstimates() {
+        var sketch = new CountMinSketch(EPSILON, DELTA);
+        sketch.add(1L);
+        sketch.add(1L);
+
+        sketch.clear();
+
+        assertEquals(0, sketch.estimate(1L));
+    }
+}
@@ -0,0 +1,137 @@
+package wildme.org.ratelimiter.window;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SketchPrefilteredWindowCounterTest {
+
+    private static final long NOW = 1_669_888_800_000L;
+    private static final long MINUTE = 60_000L;
+    private static final int LIMIT = 10;
+
+    private SketchPrefilteredWindowCounter counter(int maxTrackedKeys) {
+        return new SketchPrefilteredWindowCounter(Duration.ofHours(1), 12, 0.001, 0.01, 0.5, maxTrackedKeys);
+    }
+
+    @Test
+    void incrementAndCount_belowTrackingThreshold_keyNotTracked() {
+        var counter = counter(100);
+        for (int i = 1; i <= LIMIT / 2; i++) {
+            assertEquals(i, counter.incrementAndCount("ip", NOW, LIMIT));
+        }
+
+        assertEquals(0, counter.trackedKeys());
+    }
+
+    @Test
+    void incrementAndCount_nearThreshold_keyTrackedAndNeverUnderCounted() {
+        var counter = counter(100);
+        for (int i = 1; i <= LIMIT + 1; i++) {
+            assertTrue(counter.incrementAndCount("ip", NOW + i * MINUTE, LIMIT) >= i);
+        }
+
+        assertEquals(1, counter.trackedKeys());
+    }
+
+    @Test
+    void incrementAndCount_trackedForWholeWindow_returnsExactCount() {
+        var counter = counter(100);
+        for (int i = 0; i <= LIMIT / 2; i++) {
+            counter.incrementAndCount("ip", NOW, LIMIT);
+        }
+
+        // The sketch still over-counts the last hour by a whole bucket, the tracked sliding log does not.
+        assertEquals(1, counter.incrementAndCount("ip", NOW + 62 * MINUTE, LIMIT));
+    }
+
+    @Test
+    void incrementAndCount_trackedWithinWindow_addsSketchBucketsBeforeTrackingOnly() {
+        // A single row of three counters, so the events of other keys collide with the tracked one.
+        var counter = new SketchPrefilteredWindowCounter(Duration.ofHours(1), 12, 1.0, 0.5, 0.5, 1);
+        for (int i = 0; i <= LIMIT / 2; i++) {
+            counter.incrementAndCount("ip", NOW, LIMIT);
+        }
+        for (int i = 0; i < 300; i++) {
+            counter.incrementAndCount("other" + i, NOW + 10 * MINUTE, LIMIT);
+        }
+
+        // Five events counted by the sketch before tracking started, plus the two in the log.
+        assertEquals(LIMIT / 2 + 2, counter.incrementAndCount("ip", NOW + 20 * MINUTE, LIMIT));
+    }
+
+    @Test
+    void incrementAndCount_trackedKeysFull_fallsBackToSketchEstimate() {
+        var counter = counter(1);
+        for (int i = 0; i <= LIMIT / 2; i++) {
+            counter.incrementAndCount("first", NOW, LIMIT);
+        }
+        for (int i = 1; i <= LIMIT / 2 + 1; i++) {
+            assertEquals(i, counter.incrementAndCount("second", NOW, LIMIT));
+        }
+
+        assertEquals(1, counter.trackedKeys());
+        assertEquals(1, counter.overflows());
+    }
+
+    @Test
+    void incrementAndCount_manyKeys_trackedKeysStayBounded() {
+        var counter = counter(100);
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(counter.incrementAndCount("username" + i, NOW, LIMIT) >= 1);
+        }
+
+        assertTrue(counter.trackedKeys() <= 100);
+    }
+
+    @Test
+    void incrementAndCount_trackedKeyGoneIdle_sweptToTrackANewKey() {
+        var counter = counter(1);
+        for (int i = 0; i <= LIMIT / 2; i++) {
+            counter.incrementAndCount("first", NOW, LIMIT);
+        }
+        for (int i = 0; i <= LIMIT / 2; i++) {
+            counter.incrementAndCount("second", NOW + 30 * MINUTE, LIMIT);
+        }
+        assertEquals(1, counter.overflows());
+
+        // Past the hour "first" was last seen in, the next sweep is due and frees its slot.
+        for (int i = 0; i <= LIMIT / 2; i++) {
+            counter.incrementAndCount("second", NOW + 61 * MINUTE, LIMIT);
+        }
+
+        assertEquals(1, counter.trackedKeys());
+        assertEquals(1, counter.overflows());
+    }
+
+    @Test
+    void incrementAndCount_concurrentThreads_noEventLost() throws Exception {
+        var counter = counter(100);
+        var threads = 4;
+        var perThread = 10_000;
+        var limit = threads * perThread;
+        var pool = Executors.newFixedThreadPool(threads);
+        try {
+            var tasks = new ArrayList<Callable<Object>>();
+            for (int t = 0; t < threads; t++) {
+                tasks.add(Executors.callable(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        counter.incrementAndCount("ip", NOW + i, limit);
+                    }
+                }));
+            }
+            for (var future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(limit + 1, counter.incrementAndCount("ip", NOW + perThread, limit));
+    }
+}
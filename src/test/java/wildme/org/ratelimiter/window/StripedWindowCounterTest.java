@@ -0,0 +1,110 @@
+package wildme.org.ratelimiter.window;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedWindowCounterTest {
+
+    private static final long NOW = 1_669_888_800_000L;
+    private static final long MINUTE = 60_000L;
+    private static final int LIMIT = 10;
+
+    @Test
+    void incrementAndCount_countsEventsPerKey() {
+        var counter = new StripedWindowCounter(Duration.ofHours(1), 60, 1000, 4);
+
+        assertEquals(1, counter.incrementAndCount("a", NOW, LIMIT));
+        assertEquals(2, counter.incrementAndCount("a", NOW + MINUTE, LIMIT));
+        assertEquals(1, counter.incrementAndCount("b", NOW + MINUTE, LIMIT));
+        assertEquals(3, counter.incrementAndCount("a", NOW + 30 * MINUTE, LIMIT));
+    }
+
+    @Test
+    void incrementAndCount_eventsOutsideWindowExpire() {
+        var counter = new StripedWindowCounter(Duration.ofMinutes(1), 60, 1000, 4);
+        counter.incrementAndCount("a", NOW, LIMIT);
+        counter.incrementAndCount("a", NOW + 30_000, LIMIT);
+
+        assertEquals(2, counter.incrementAndCount("a", NOW + 62_000, LIMIT));
+        assertEquals(1, counter.incrementAndCount("a", NOW + 5 * MINUTE, LIMIT));
+    }
+
+    @Test
+    void incrementAndCount_moreKeysThanCapacity_memoryStaysBounded() {
+        var counter = new StripedWindowCounter(Duration.ofHours(1), 12, 64, 1);
+        for (int i = 0; i < 64; i++) {
+            assertEquals(1, counter.incrementAndCount("key" + i, NOW + i, LIMIT));
+        }
+        var memory = counter.memoryBytes();
+
+        for (int i = 64; i < 10_000; i++) {
+            counter.incrementAndCount("key" + i, NOW + i, LIMIT);
+        }
+
+        assertEquals(64, counter.size());
+        assertEquals(10_000 - 64, counter.overflows());
+        assertEquals(memory, counter.memoryBytes());
+    }
+
+    @Test
+    void constructor_largeMaxKeys_tablesGrowLazily() {
+        var counter = new StripedWindowCounter(Duration.ofHours(1), 60, 1_000_000, 64);
+        var memory = counter.memoryBytes();
+
+        for (int i = 0; i < 100_000; i++) {
+            counter.incrementAndCount("key" + i, NOW, LIMIT);
+        }
+
+        assertTrue(memory < 2_000_000, "allocated " + memory + " bytes up front");
+        assertTrue(counter.memoryBytes() > memory);
+        assertEquals(100_000, counter.size());
+        assertEquals(0, counter.overflows());
+    }
+
+    @Test
+    void incrementAndCount_idleKeysSweptBeforeOverflowing() {
+        var counter = new StripedWindowCounter(Duration.ofMinutes(1), 12, 64, 1);
+        for (int i = 0; i < 64; i++) {
+            counter.incrementAndCount("old" + i, NOW, LIMIT);
+        }
+
+        for (int i = 0; i < 64; i++) {
+            counter.incrementAndCount("new" + i, NOW + 2 * MINUTE, LIMIT);
+        }
+
+        assertEquals(64, counter.size());
+        assertEquals(0, counter.overflows());
+    }
+
+    @Test
+    void incrementAndCount_fullOfLiveKeys_failsClosedWithoutDroppingCounts() {
+        var counter = new StripedWindowCounter(Duration.ofHours(1), 12, 256, 1);
+        for (int i = 0; i < 256; i++) {
+            counter.incrementAndCount("old" + i, NOW, LIMIT);
+        }
+
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i + 1, counter.incrementAndCount("new" + i, NOW + 1, LIMIT));
+        }
+
+        for (int i = 0; i < 256; i++) {
+            assertEquals(2, counter.incrementAndCount("old" + i, NOW + 2, LIMIT));
+        }
+        assertEquals(50, counter.overflows());
+    }
+
+    @Test
+    void incrementAndCount_keyGettingSlotAfterOverflowing_keepsOverflowCount() {
+        var counter = new StripedWindowCounter(Duration.ofMinutes(1), 12, 1, 1);
+        counter.incrementAndCount("a", NOW, LIMIT);
+        assertEquals(1, counter.incrementAndCount("b", NOW + 50_000, LIMIT));
+
+        // "a" has expired but the overflowed event of "b" is still within the window.
+        assertEquals(2, counter.incrementAndCount("b", NOW + 70_000, LIMIT));
+        assertEquals(1, counter.size());
+        assertEquals(1, counter.overflows());
+    }
+}
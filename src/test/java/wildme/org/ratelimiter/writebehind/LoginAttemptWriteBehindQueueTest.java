@@ -0,0 +1,97 @@
+package wildme.org.ratelimiter.writebehind;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import wildme.org.ratelimiter.model.LoginAttempt;
+import wildme.org.ratelimiter.repository.LoginAttemptRepository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class LoginAttemptWriteBehindQueueTest {
+
+    private final int batchSize = 2;
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    @Mock
+    private LoginAttemptRepository repository;
+
+    private LoginAttemptWriteBehindQueue queue(int capacity) {
+        return new LoginAttemptWriteBehindQueue(batchSize, Duration.ofHours(1), capacity, Duration.ofMillis(50),
+                Duration.ofSeconds(5), repository, meterRegistry);
+    }
+
+    @Test
+    void flush_writesQueuedAttemptsInBatches() {
+        when(repository.insertAll(any())).thenAnswer(invocation -> Mono.just((long) invocation.<List<?>>getArgument(0).size()));
+        var queue = queue(10);
+        for (int i = 0; i < 5; i++) {
+            StepVerifier.create(queue.enqueue(loginAttempt(i))).verifyComplete();
+        }
+
+        StepVerifier.create(queue.flush())
+                .expectNext(5L)
+                .verifyComplete();
+
+        verify(repository, times(3)).insertAll(any());
+        assertEquals(5, meterRegistry.get("ratelimiter.writebehind.flushed").counter().count());
+    }
+
+    @Test
+    void enqueue_whenQueueStaysFull_dropsAttempt() {
+        var queue = queue(1);
+        StepVerifier.create(queue.enqueue(loginAttempt(0))).verifyComplete();
+
+        StepVerifier.create(queue.enqueue(loginAttempt(1))).verifyComplete();
+
+        assertEquals(1, meterRegistry.get("ratelimiter.writebehind.dropped").counter().count());
+        assertEquals(1, meterRegistry.get("ratelimiter.writebehind.queue.size").gauge().value());
+    }
+
+    @Test
+    void flush_whenInsertFails_countsFailedAttempts() {
+        when(repository.insertAll(any())).thenReturn(Mono.error(new IllegalStateException("database down")));
+        var queue = queue(10);
+        StepVerifier.create(queue.enqueue(loginAttempt(0))).verifyComplete();
+
+        StepVerifier.create(queue.flush())
+                .expectNext(0L)
+                .verifyComplete();
+
+        assertEquals(1, meterRegistry.get("ratelimiter.writebehind.failed").counter().count());
+    }
+
+    @Test
+    void shutdown_flushesRemainingAttempts() {
+        when(repository.insertAll(any())).thenAnswer(invocation -> Mono.just((long) invocation.<List<?>>getArgument(0).size()));
+        var queue = queue(10);
+        queue.start();
+        for (int i = 0; i < 3; i++) {
+            StepVerifier.create(queue.enqueue(loginAttempt(i))).verifyComplete();
+        }
+
+        queue.shutdown();
+
+        assertEquals(3, meterRegistry.get("ratelimiter.writebehind.flushed").counter().count());
+        assertEquals(0, meterRegistry.get("ratelimiter.writebehind.queue.size").gauge().value());
+    }
+
+    private LoginAttempt loginAttempt(int i) {
+        return LoginAttempt.builder()
+                .ip("ip" + i)
+                .username("username" + i)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}